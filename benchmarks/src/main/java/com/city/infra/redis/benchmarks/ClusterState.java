@@ -0,0 +1,57 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.RedisClusterFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * 基准测试共享的主备集群替身和 RedisClusterFactory.
+ */
+@State(Scope.Benchmark)
+public class ClusterState {
+
+    @Param({"3"})
+    public int nodes;
+
+    @Param({"0", "200"})
+    public long latencyMicros;  // 每次网络往返注入的延迟
+
+    public FakeRedisCluster primary;
+
+    public FakeRedisCluster standby;
+
+    public RedisClusterFactory factory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        primary = new FakeRedisCluster(nodes, latencyMicros);
+        standby = new FakeRedisCluster(nodes, latencyMicros);
+        factory = new RedisClusterFactory();
+        factory.setJedisClusterNodes(primary.getHostAndPorts());
+        factory.setStandbyJedisClusterNodes(standby.getHostAndPorts());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.close();
+        primary.close();
+        standby.close();
+    }
+
+    /**
+     * 生成分布在所有 slot 上的 key.
+     */
+    public static String[] keys(int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = "key:" + i;
+        }
+        return keys;
+    }
+}
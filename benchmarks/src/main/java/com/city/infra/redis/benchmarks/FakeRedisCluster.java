@@ -0,0 +1,86 @@
+package com.city.infra.redis.benchmarks;
+
+import redis.clients.jedis.HostAndPort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 进程内的多节点 Redis 集群替身, 16384 个 slot 平均分配到各节点, 每个节点监听 127.0.0.1 上的随机端口.
+ * 注入的延迟对所有节点生效, 可以在基准测试运行中修改. 可以为每个主节点创建共享其数据的副本节点,
+ * 副本节点在连接执行 READONLY 后响应读命令, 写命令和未执行 READONLY 的读命令重定向到主节点.
+ */
+public class FakeRedisCluster {
+
+    static final String HOST = "127.0.0.1";
+
+    private static final int SLOT_COUNT = 16384;
+
+    private final List<FakeRedisNode> nodes;
+
+    private volatile long latencyMicros;
+
+    public FakeRedisCluster(int nodeCount, long latencyMicros) throws IOException {
+        this(nodeCount, latencyMicros, 0);
+    }
+
+    public FakeRedisCluster(int nodeCount, long latencyMicros, int replicasPerNode) throws IOException {
+        this.latencyMicros = latencyMicros;
+        List<FakeRedisNode> created = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            int start = SLOT_COUNT * i / nodeCount;
+            int end = SLOT_COUNT * (i + 1) / nodeCount - 1;
+            FakeRedisNode master = new FakeRedisNode(this, start, end, null);
+            for (int j = 0; j < replicasPerNode; j++) {
+                master.getReplicas().add(new FakeRedisNode(this, start, end, master));
+            }
+            created.add(master);
+        }
+        this.nodes = Collections.unmodifiableList(created);
+    }
+
+    public List<FakeRedisNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 返回负责 slot 的主节点, 与 CLUSTER SLOTS 返回的范围一致.
+     */
+    public FakeRedisNode getNode(int slot) {
+        for (FakeRedisNode node : nodes) {
+            if (slot >= node.getStartSlot() && slot <= node.getEndSlot()) {
+                return node;
+            }
+        }
+        throw new IllegalArgumentException("Illegal slot [" + slot + "]");
+    }
+
+    public Set<HostAndPort> getHostAndPorts() {
+        Set<HostAndPort> hostAndPorts = new HashSet<>();
+        for (FakeRedisNode node : nodes) {
+            hostAndPorts.add(new HostAndPort(HOST, node.getPort()));
+        }
+        return hostAndPorts;
+    }
+
+    public long getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    public void setLatencyMicros(long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+    }
+
+    public void close() {
+        for (FakeRedisNode node : nodes) {
+            for (FakeRedisNode replica : node.getReplicas()) {
+                replica.close();
+            }
+            node.close();
+        }
+    }
+}
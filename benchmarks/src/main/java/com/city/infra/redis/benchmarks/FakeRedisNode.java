@@ -0,0 +1,578 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.RedisScript;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的 Redis 集群节点替身, 通过 RESP 协议响应基准测试用到的命令, 数据保存在内存中.
+ * 每次读完客户端已发送的全部命令后等待 latencyMicros 再写出响应, 模拟一次网络往返的延迟.
+ * 不执行 Lua 脚本: GET_PTTL 和 COMPARE_AND_DELETE 按语义模拟 (key 没有过期时间), 其余 EVALSHA 只返回整数 1,
+ * 用于衡量客户端开销而不是服务端语义. SET 支持 NX, 忽略过期时间. SSCAN/HSCAN 的游标为按字典序排序后的下标,
+ * SCAN 只支持 "前缀*" 形式的 MATCH. DUMP 返回值的字符串形式而不是 RDB 格式.
+ * 副本节点与主节点共享数据, 没有复制延迟.
+ */
+public class FakeRedisNode {
+
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");  // 按字节一一映射, 二进制安全
+
+    private final FakeRedisCluster cluster;
+
+    private final ServerSocket serverSocket;
+
+    private static final Set<String> READ_COMMANDS = new HashSet<>(Arrays.asList("GET", "HGET", "HGETALL", "SMEMBERS",
+            "SSCAN", "HSCAN"));
+
+    private final ConcurrentMap<String, Object> data;
+
+    private final FakeRedisNode master;  // 主节点为 null
+
+    private final List<FakeRedisNode> replicas = new ArrayList<>();
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private final int startSlot;
+
+    private final int endSlot;
+
+    private volatile boolean running = true;
+
+    FakeRedisNode(FakeRedisCluster cluster, int startSlot, int endSlot, FakeRedisNode master) throws IOException {
+        this.cluster = cluster;
+        this.master = master;
+        this.data = master != null ? master.data : new ConcurrentHashMap<String, Object>();
+        this.startSlot = startSlot;
+        this.endSlot = endSlot;
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getByName(FakeRedisCluster.HOST));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "fake-redis-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getStartSlot() {
+        return startSlot;
+    }
+
+    public int getEndSlot() {
+        return endSlot;
+    }
+
+    public List<FakeRedisNode> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * 本节点执行过的命令数, 用于确认读请求的分布.
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "fake-redis-" + getPort() + "-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    throw new IllegalStateException("Fake redis node accept failure!", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            boolean readonly = false;
+            while (running) {
+                List<String> command = readCommand(in);
+                readonly |= "READONLY".equalsIgnoreCase(command.get(0));
+                try {
+                    execute(command, out, readonly);
+                } catch (ClassCastException e) {
+                    writeError(out, "WRONGTYPE Operation against a key holding the wrong kind of value");
+                }
+                if (in.available() == 0) {
+                    long latencyMicros = cluster.getLatencyMicros();
+                    if (latencyMicros > 0) {
+                        sleepMicros(latencyMicros);
+                    }
+                    out.flush();
+                }
+            }
+        } catch (EOFException ignored) {
+        } catch (IOException ignored) {
+            // 连接被客户端或 close() 关闭
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void execute(List<String> command, OutputStream out, boolean readonly) throws IOException {
+        String name = command.get(0).toUpperCase();
+        commandCount.incrementAndGet();
+        switch (name) {
+            case "PING":
+                writeSimple(out, "PONG");
+                return;
+            case "ASKING":
+            case "READONLY":
+            case "SELECT":
+                writeSimple(out, "OK");
+                return;
+            case "CLUSTER":
+                cluster(command, out);
+                return;
+            case "SCRIPT":
+                writeBulk(out, "0000000000000000000000000000000000000000");
+                return;
+            case "INFO":
+                writeBulk(out, replicationInfo());
+                return;
+            case "SCAN":
+                scan(command, out);
+                return;
+            default:
+        }
+
+        if (command.size() < 2) {
+            writeError(out, "ERR wrong number of arguments for '" + name + "' command");
+            return;
+        }
+        String key = "EVALSHA".equals(name) && command.size() > 3 ? command.get(3) : command.get(1);
+        int slot = JedisClusterCRC16.getSlot(key.getBytes(CHARSET));
+        if (slot < startSlot || slot > endSlot) {
+            FakeRedisNode owner = cluster.getNode(slot);
+            writeError(out, "MOVED " + slot + " " + FakeRedisCluster.HOST + ":" + owner.getPort());
+            return;
+        }
+        if (master != null && !(readonly && READ_COMMANDS.contains(name))) {
+            writeError(out, "MOVED " + slot + " " + FakeRedisCluster.HOST + ":" + master.getPort());
+            return;
+        }
+
+        switch (name) {
+            case "GET":
+                writeBulk(out, (String) data.get(key));
+                break;
+            case "SET":
+                if (command.size() > 3 && "NX".equalsIgnoreCase(command.get(3))) {
+                    if (data.putIfAbsent(key, command.get(2)) == null) {
+                        writeSimple(out, "OK");
+                    } else {
+                        writeBulk(out, null);
+                    }
+                    break;
+                }
+                data.put(key, command.get(2));
+                writeSimple(out, "OK");
+                break;
+            case "SETEX":
+                data.put(key, command.get(command.size() - 1));
+                writeSimple(out, "OK");
+                break;
+            case "DEL":
+                writeInteger(out, data.remove(key) != null ? 1 : 0);
+                break;
+            case "EXPIRE":
+                writeInteger(out, data.containsKey(key) ? 1 : 0);
+                break;
+            case "INCRBY":
+                writeInteger(out, incrBy(key, Long.parseLong(command.get(2))));
+                break;
+            case "HSET":
+                writeInteger(out, hash(key).put(command.get(2), command.get(3)) == null ? 1 : 0);
+                break;
+            case "HMSET":
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    hash(key).put(command.get(i), command.get(i + 1));
+                }
+                writeSimple(out, "OK");
+                break;
+            case "HGET":
+                writeBulk(out, hash(key).get(command.get(2)));
+                break;
+            case "HGETALL":
+                writeHash(out, hash(key));
+                break;
+            case "HINCRBY":
+                writeInteger(out, hincrBy(key, command.get(2), Long.parseLong(command.get(3))));
+                break;
+            case "SADD":
+                int added = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    added += set(key).add(command.get(i)) ? 1 : 0;
+                }
+                writeInteger(out, added);
+                break;
+            case "SMEMBERS":
+                writeSet(out, set(key));
+                break;
+            case "DUMP":
+                writeBulk(out, data.containsKey(key) ? String.valueOf(data.get(key)) : null);
+                break;
+            case "PTTL":
+                writeInteger(out, data.containsKey(key) ? -1 : -2);
+                break;
+            case "SSCAN":
+                writeScan(out, new ArrayList<>(new TreeSet<>(set(key))), command);
+                break;
+            case "HSCAN":
+                List<String> fieldValues = new ArrayList<>();
+                for (Map.Entry<String, String> entry : new TreeMap<>(hash(key)).entrySet()) {
+                    fieldValues.add(entry.getKey());
+                    fieldValues.add(entry.getValue());
+                }
+                writeScan(out, fieldValues, command);
+                break;
+            case "EVALSHA":
+                evalsha(command, key, out);
+                break;
+            default:
+                writeError(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void scan(List<String> command, OutputStream out) throws IOException {
+        String prefix = "";
+        int count = 10;
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            if ("MATCH".equalsIgnoreCase(command.get(i))) {
+                String pattern = command.get(i + 1);
+                prefix = pattern.substring(0, pattern.length() - 1).replace("\\", "");
+            } else if ("COUNT".equalsIgnoreCase(command.get(i))) {
+                count = Integer.parseInt(command.get(i + 1));
+            }
+        }
+        // 游标为上一页最后一个 key 的十六进制形式, 遍历期间删除 key 不会跳过其他 key
+        TreeSet<String> keys = new TreeSet<>(data.keySet());
+        String cursor = command.get(1);
+        Iterator<String> iterator = ("0".equals(cursor) ? keys : keys.tailSet(unhex(cursor), false)).iterator();
+        List<String> matched = new ArrayList<>();
+        String last = null;
+        for (int i = 0; i < count && iterator.hasNext(); i++) {
+            last = iterator.next();
+            if (last.startsWith(prefix)) {
+                matched.add(last);
+            }
+        }
+        writeArrayHeader(out, 2);
+        writeBulk(out, iterator.hasNext() ? hex(last) : "0");
+        writeArrayHeader(out, matched.size());
+        for (String key : matched) {
+            writeBulk(out, key);
+        }
+    }
+
+    private static String hex(String value) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : value.getBytes(CHARSET)) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static String unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+    private void evalsha(List<String> command, String key, OutputStream out) throws IOException {
+        String sha1 = command.get(1);
+        if (RedisScript.GET_PTTL.getSha1().equals(sha1)) {
+            Object value = data.get(key);
+            writeArrayHeader(out, 2);
+            writeBulk(out, (String) value);
+            writeInteger(out, value != null ? -1 : -2);
+        } else if (RedisScript.COMPARE_AND_DELETE.getSha1().equals(sha1)) {
+            writeInteger(out, data.remove(key, command.get(4)) ? 1 : 0);
+        } else {
+            writeInteger(out, 1);
+        }
+    }
+
+    /**
+     * JedisCluster 初始化和路由表刷新只用到 CLUSTER SLOTS 与 CLUSTER INFO.
+     */
+    private void cluster(List<String> command, OutputStream out) throws IOException {
+        String sub = command.size() > 1 ? command.get(1).toUpperCase() : "";
+        if ("SLOTS".equals(sub)) {
+            List<FakeRedisNode> nodes = cluster.getNodes();
+            writeArrayHeader(out, nodes.size());
+            for (FakeRedisNode node : nodes) {
+                writeArrayHeader(out, 3 + node.getReplicas().size());
+                writeInteger(out, node.getStartSlot());
+                writeInteger(out, node.getEndSlot());
+                writeNode(out, node);
+                for (FakeRedisNode replica : node.getReplicas()) {
+                    writeNode(out, replica);
+                }
+            }
+        } else if ("INFO".equals(sub)) {
+            writeBulk(out, "cluster_state:ok\r\ncluster_slots_assigned:16384\r\ncluster_known_nodes:"
+                    + cluster.getNodes().size() + "\r\ncluster_current_epoch:1\r\n");
+        } else {
+            writeError(out, "ERR unsupported CLUSTER subcommand");
+        }
+    }
+
+    private static void writeNode(OutputStream out, FakeRedisNode node) throws IOException {
+        writeArrayHeader(out, 3);
+        writeBulk(out, FakeRedisCluster.HOST);
+        writeInteger(out, node.getPort());
+        writeBulk(out, String.format("%040d", node.getPort()));
+    }
+
+    private String replicationInfo() {
+        StringBuilder info = new StringBuilder("# Replication\r\n");
+        info.append("role:").append(master == null ? "master" : "slave").append("\r\n");
+        info.append("connected_slaves:").append(replicas.size()).append("\r\n");
+        for (int i = 0; i < replicas.size(); i++) {
+            info.append("slave").append(i).append(":ip=").append(FakeRedisCluster.HOST).append(",port=")
+                    .append(replicas.get(i).getPort()).append(",state=online,offset=0,lag=0\r\n");
+        }
+        return info.append("master_repl_offset:0\r\n").toString();
+    }
+
+    private synchronized long incrBy(String key, long increment) {
+        Object value = data.get(key);
+        long result = (value == null ? 0 : Long.parseLong((String) value)) + increment;
+        data.put(key, String.valueOf(result));
+        return result;
+    }
+
+    private long hincrBy(String key, String field, long increment) {
+        Map<String, String> hash = hash(key);
+        synchronized (hash) {
+            String value = hash.get(field);
+            long result = (value == null ? 0 : Long.parseLong(value)) + increment;
+            hash.put(field, String.valueOf(result));
+            return result;
+        }
+    }
+
+    private Map<String, String> hash(String key) {
+        Object value = data.get(key);
+        if (value == null) {
+            Map<String, String> created = new ConcurrentHashMap<>();
+            value = data.putIfAbsent(key, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return (Map<String, String>) value;
+    }
+
+    private Set<String> set(String key) {
+        Object value = data.get(key);
+        if (value == null) {
+            Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            value = data.putIfAbsent(key, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return (Set<String>) value;
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException();
+        }
+        if (type != '*') {
+            throw new IOException("Unsupported RESP type " + (char) type);
+        }
+        int count = (int) readLong(in);
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Bulk string expected");
+            }
+            int length = (int) readLong(in);
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            in.read();  // \r
+            in.read();  // \n
+            command.add(new String(bytes, CHARSET));
+        }
+        return command;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();  // \n
+        return negative ? -value : value;
+    }
+
+    private static void writeSimple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(CHARSET));
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(CHARSET));
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(CHARSET));
+    }
+
+    private static void writeArrayHeader(OutputStream out, int size) throws IOException {
+        out.write(("*" + size + "\r\n").getBytes(CHARSET));
+    }
+
+    private static void writeBulk(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(CHARSET));
+            return;
+        }
+        byte[] bytes = value.getBytes(CHARSET);
+        out.write(("$" + bytes.length + "\r\n").getBytes(CHARSET));
+        out.write(bytes);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    private static void writeHash(OutputStream out, Map<String, String> hash) throws IOException {
+        Map<String, String> copy = new HashMap<>(hash);
+        writeArrayHeader(out, copy.size() * 2);
+        for (Map.Entry<String, String> entry : copy.entrySet()) {
+            writeBulk(out, entry.getKey());
+            writeBulk(out, entry.getValue());
+        }
+    }
+
+    /**
+     * SCAN 类命令的响应, command 为 [命令, key, cursor, COUNT, count]; hash 的 field 和 value 作为两个元素, 一次返回 2 * count 个.
+     */
+    private static void writeScan(OutputStream out, List<String> elements, List<String> command) throws IOException {
+        int step = "HSCAN".equalsIgnoreCase(command.get(0)) ? 2 : 1;
+        int count = 10;
+        for (int i = 3; i + 1 < command.size(); i += 2) {
+            if ("COUNT".equalsIgnoreCase(command.get(i))) {
+                count = Integer.parseInt(command.get(i + 1));
+            }
+        }
+        int from = Math.min(Integer.parseInt(command.get(2)) * step, elements.size());
+        int to = Math.min(from + count * step, elements.size());
+        writeArrayHeader(out, 2);
+        writeBulk(out, to < elements.size() ? String.valueOf(to / step) : "0");
+        writeArrayHeader(out, to - from);
+        for (String element : elements.subList(from, to)) {
+            writeBulk(out, element);
+        }
+    }
+
+    private static void writeSet(OutputStream out, Set<String> set) throws IOException {
+        Set<String> copy = new HashSet<>(set);
+        writeArrayHeader(out, copy.size());
+        for (String member : copy) {
+            writeBulk(out, member);
+        }
+    }
+
+    private static void sleepMicros(long micros) {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (System.nanoTime() < deadline) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 100000) {
+                try {
+                    Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.pipeline.ClusterSlot;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * slot 计算与 slot 到连接池的路由查询, 与 Jedis 自带的 CRC16 实现对比.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JedisPoolAccessorBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private JedisCluster client;
+
+    private JedisPoolAccessor jedisPoolAccessor;
+
+    private String[] keys;
+
+    private int index;
+
+    @Setup
+    public void setUp(ClusterState cluster) {
+        client = new JedisCluster(cluster.primary.getHostAndPorts());
+        jedisPoolAccessor = new JedisPoolAccessor(client);
+        keys = ClusterState.keys(KEY_COUNT);
+        jedisPoolAccessor.refresh();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        jedisPoolAccessor.close();
+        client.close();
+    }
+
+    @Benchmark
+    public JedisPool getJedisPool() {
+        return jedisPoolAccessor.getJedisPool(nextKey());
+    }
+
+    @Benchmark
+    public int clusterSlot() {
+        return ClusterSlot.getSlot(nextKey());
+    }
+
+    @Benchmark
+    public int jedisClusterCRC16() {
+        return JedisClusterCRC16.getSlot(nextKey());
+    }
+
+    private String nextKey() {
+        index = (index + 1) & (KEY_COUNT - 1);
+        return keys[index];
+    }
+}
@@ -0,0 +1,64 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.RedisAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisAccessor 单 key 读写的延迟, 每次写入主备两个集群.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisAccessorBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private RedisAccessor redisAccessor;
+
+    private String[] keys;
+
+    private int index;
+
+    @Setup
+    public void setUp(ClusterState cluster) {
+        redisAccessor = cluster.factory.createRedisAccessor("bench:");
+        keys = ClusterState.keys(KEY_COUNT);
+        for (String key : keys) {
+            redisAccessor.set(key, "value", 3600);
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        return redisAccessor.get(nextKey(), null);
+    }
+
+    @Benchmark
+    public boolean set() {
+        return redisAccessor.set(nextKey(), "value", 3600);
+    }
+
+    @Benchmark
+    public boolean hset() {
+        return redisAccessor.hset("hash:" + nextKey(), "field", "value", 3600);
+    }
+
+    private String nextKey() {
+        index = (index + 1) & (KEY_COUNT - 1);
+        return keys[index];
+    }
+}
@@ -0,0 +1,56 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.pipeline.RedisPipelineAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisPipelineAccessor 不同批次大小下每条命令的平均耗时.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisPipelineAccessorBenchmark {
+
+    private static final int OPERATIONS = 1000;
+
+    @Param({"10", "100", "1000"})
+    public int batchSize;
+
+    private RedisPipelineAccessor redisPipelineAccessor;
+
+    private String[] keys;
+
+    @Setup
+    public void setUp(ClusterState cluster) {
+        redisPipelineAccessor = cluster.factory.createRedisPipelineAccessor();
+        keys = ClusterState.keys(OPERATIONS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void set() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            redisPipelineAccessor.set("pipe:", keys[i], "value", 3600);
+            if ((i + 1) % batchSize == 0) {
+                redisPipelineAccessor.sync();
+            }
+        }
+        redisPipelineAccessor.sync();
+    }
+}
@@ -0,0 +1,78 @@
+package com.city.infra.redis.benchmarks;
+
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import com.city.infra.redis.pipeline.RedisCommand;
+import com.city.infra.redis.pipeline.RedisPipelineExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一批命令按节点分组 pipeline 后 sync 的耗时, 对比各节点依次 sync 与并发 sync.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisPipelineExecutorBenchmark {
+
+    @Param({"100", "1000"})
+    public int commands;
+
+    @Param({"false", "true"})
+    public boolean concurrentSync;
+
+    private JedisCluster client;
+
+    private JedisPoolAccessor jedisPoolAccessor;
+
+    private ExecutorService executorService;
+
+    private List<RedisCommand> batch;
+
+    @Setup
+    public void setUp(ClusterState cluster) {
+        client = new JedisCluster(cluster.primary.getHostAndPorts());
+        jedisPoolAccessor = new JedisPoolAccessor(client);
+        jedisPoolAccessor.refresh();
+        executorService = concurrentSync ? Executors.newCachedThreadPool() : null;
+        batch = new ArrayList<>(commands);
+        for (String key : ClusterState.keys(commands)) {
+            batch.add(new RedisCommand<String>(Protocol.Command.SETEX, key, "value", 3600));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        jedisPoolAccessor.close();
+        client.close();
+    }
+
+    @Benchmark
+    public Object sync() {
+        return new RedisPipelineExecutor(jedisPoolAccessor, executorService, null).execute(batch);
+    }
+}
@@ -0,0 +1,179 @@
+package com.city.infra.redis;
+
+import com.city.infra.redis.pipeline.RedisCommand;
+import com.city.infra.redis.pipeline.RedisFuture;
+import com.city.infra.redis.pipeline.StandbyReplicator;
+import org.apache.commons.collections.SetUtils;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.Protocol;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 非阻塞的 RedisAccessor, 方法立即返回 RedisFuture, 与 RedisAccessor 有相同的主备集群回退和默认值语义.
+ * 命令提交到主备集群共享的 RedisPipelineBatcher, 由后台线程按节点 pipeline 批量执行, 大量并发请求共用少量连接.
+ * 回调在后台 flush 线程中执行, 不应在 RedisFuture 的监听器中执行阻塞操作.
+ * 开启 expireOnCreate 时 hset/hmset/incrby/hincrby/sadd 在 pipeline 中以 EVALSHA 执行与 RedisAccessor 相同的脚本.
+ */
+public class AsyncRedisAccessor extends RedisAccessorBase {
+
+    public AsyncRedisAccessor(String prefix, RedisClusterContext context) {
+        super(prefix, context);
+    }
+
+    public RedisFuture<String> get(String key, String defaultValue) {
+        return read(key, RedisCommand.get(getPrefix() + key).codec(getValueCodec()), defaultValue);
+    }
+
+    public RedisFuture<String> hget(String key, String field, String defaultValue) {
+        return read(key, RedisCommand.hget(getPrefix() + key, field).codec(getValueCodec()), defaultValue);
+    }
+
+    public RedisFuture<Map<String, String>> hgetAll(String key) {
+        return read(key, RedisCommand.hgetAll(getPrefix() + key).codec(getValueCodec()), Collections.<String, String>emptyMap());
+    }
+
+    public RedisFuture<Set<String>> smembers(String key) {
+        return read(key, RedisCommand.smembers(getPrefix() + key), (Set<String>) SetUtils.EMPTY_SET);
+    }
+
+    public RedisFuture<Boolean> set(String key, String value, int expireSeconds) {
+        return succeeded(key, value,
+                new RedisCommand<String>(Protocol.Command.SETEX, getPrefix() + key, value, adjustExpireTime(expireSeconds))
+                        .codec(getValueCodec()));
+    }
+
+    public RedisFuture<Boolean> delete(String key) {
+        return succeeded(key, StringUtils.EMPTY, new RedisCommand<Long>(Protocol.Command.DEL, getPrefix() + key, null, 0));
+    }
+
+    public RedisFuture<Boolean> expire(String key, int expireSeconds) {
+        return succeeded(key, null, RedisCommand.expire(getPrefix() + key, adjustExpireTime(expireSeconds)));
+    }
+
+    public RedisFuture<Long> incrby(String key, int increment, long defaultValue, int expireSeconds) {
+        return write(key, String.valueOf(increment),
+                RedisCommand.incrby(getPrefix() + key, increment, adjustExpireTime(expireSeconds))
+                        .expireOnCreate(getConfig().isExpireOnCreate()), defaultValue);
+    }
+
+    public RedisFuture<Boolean> hset(String key, String field, String value, int expireSeconds) {
+        return succeeded(key, value,
+                RedisCommand.hset(getPrefix() + key, field, value, adjustExpireTime(expireSeconds)).codec(getValueCodec())
+                        .expireOnCreate(getConfig().isExpireOnCreate()));
+    }
+
+    public RedisFuture<Boolean> hmset(String key, Map<String, String> hash, int expireSeconds) {
+        return succeeded(key, null,
+                RedisCommand.hmset(getPrefix() + key, hash, adjustExpireTime(expireSeconds)).codec(getValueCodec())
+                        .expireOnCreate(getConfig().isExpireOnCreate()));
+    }
+
+    public RedisFuture<Long> hincrby(String key, String field, int increment, long defaultValue, int expireSeconds) {
+        return write(key, String.valueOf(increment),
+                RedisCommand.hincrby(getPrefix() + key, field, increment, adjustExpireTime(expireSeconds))
+                        .expireOnCreate(getConfig().isExpireOnCreate()), defaultValue);
+    }
+
+    public RedisFuture<Long> sadd(String key, int expireSeconds, String... members) {
+        return write(key, null, RedisCommand.sadd(getPrefix() + key, adjustExpireTime(expireSeconds), members)
+                .expireOnCreate(getConfig().isExpireOnCreate()), -1L);
+    }
+
+    /**
+     * 先读主集群, 未命中或读取失败时再读备份集群, 均未命中时返回默认值.
+     */
+    private <T> RedisFuture<T> read(final String key, final RedisCommand<T> command, final T defaultValue) {
+        logRead(getPrefix(), key);
+        final RedisFuture<T> result = new RedisFuture<>();
+        final RedisClusterContext context = getRedisClusterContext();
+        context.getPipelineBatcher().submit(command).addListener(new RedisFuture.Listener<T>() {
+            @Override
+            public void onComplete(RedisFuture<T> primary) {
+                if (primary.getError() == null && !command.isMissing(primary.getNow())) {
+                    result.complete(primary.getNow());
+                    return;
+                }
+                if (primary.getError() != null) {
+                    logReadError(getPrefix(), key, primary.getError());
+                }
+                if (context.getStandbyPipelineBatcher() == null) {
+                    result.complete(defaultValue);
+                    return;
+                }
+                context.getStandbyPipelineBatcher().submit(command).addListener(new RedisFuture.Listener<T>() {
+                    @Override
+                    public void onComplete(RedisFuture<T> standby) {
+                        if (standby.getError() != null) {
+                            logReadError(getPrefix(), key, standby.getError());
+                        }
+                        T value = standby.getNow();
+                        result.complete(command.isMissing(value) ? defaultValue : value);
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 写主集群, 写入失败时返回默认值. 备份集群的写入不影响返回结果.
+     */
+    private <T> RedisFuture<T> write(final String key, String value, RedisCommand<T> command, final T defaultValue) {
+        final RedisFuture<T> result = new RedisFuture<>();
+        submitWrite(key, value, command).addListener(new RedisFuture.Listener<T>() {
+            @Override
+            public void onComplete(RedisFuture<T> primary) {
+                result.complete(primary.getError() == null ? primary.getNow() : defaultValue);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 写主集群, 返回是否写入成功.
+     */
+    private <T> RedisFuture<Boolean> succeeded(final String key, String value, RedisCommand<T> command) {
+        final RedisFuture<Boolean> result = new RedisFuture<>();
+        submitWrite(key, value, command).addListener(new RedisFuture.Listener<T>() {
+            @Override
+            public void onComplete(RedisFuture<T> primary) {
+                result.complete(primary.getError() == null);
+            }
+        });
+        return result;
+    }
+
+    private <T> RedisFuture<T> submitWrite(final String key, String value, RedisCommand<T> command) {
+        logWrite(getPrefix(), key, value);
+        RedisClusterContext context = getRedisClusterContext();
+        RedisFuture.Listener<T> errorLogger = new RedisFuture.Listener<T>() {
+            @Override
+            public void onComplete(RedisFuture<T> future) {
+                if (future.getError() != null) {
+                    logWriteError(getPrefix(), key, future.getError());
+                }
+            }
+        };
+
+        RedisFuture<T> primary = context.getPipelineBatcher().submit(command);
+        primary.addListener(errorLogger);
+        StandbyReplicator standbyReplicator = context.getStandbyReplicator();
+        if (standbyReplicator != null) {
+            standbyReplicator.replicate(getPrefix(), key, command);
+        } else if (context.getStandbyPipelineBatcher() != null) {
+            context.getStandbyPipelineBatcher().submit(command).addListener(errorLogger);
+        }
+
+        String redisKey = getPrefix() + key;
+        if (getNegativeLookupCache() != null) {
+            getNegativeLookupCache().invalidate(redisKey);
+        }
+        if (getNearCache() != null) {
+            getNearCache().invalidate(redisKey);
+        }
+        return primary;
+    }
+}
@@ -0,0 +1,181 @@
+package com.city.infra.redis;
+
+import com.city.infra.redis.metrics.OperationType;
+import com.city.infra.redis.pipeline.ClusterSlot;
+import com.city.infra.redis.pipeline.StandbyReplicator;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制 key 和 value 的 RedisAccessor, 适合 protobuf 等二进制数据.
+ * 前缀在构造时编码一次, 每次访问只分配一个完整 key 的数组, 不经过 String 拼接和 UTF-8 编码,
+ * 也不创建命令模板对象. 主备集群的读写语义与 RedisAccessor 相同, 但不使用未命中缓存和近端缓存.
+ */
+public class BinaryRedisAccessor extends RedisAccessorBase {
+
+    private static final byte[] EXPIRE_ALWAYS = SafeEncoder.encode("0");
+
+    private static final byte[] EXPIRE_ON_CREATE = SafeEncoder.encode("1");
+
+    private final byte[] prefixBytes;
+
+    public BinaryRedisAccessor(String prefix, RedisClusterContext context) {
+        super(prefix, context);
+        this.prefixBytes = SafeEncoder.encode(prefix);
+    }
+
+    public byte[] get(byte[] key, byte[] defaultValue) {
+        return read(Protocol.Command.GET, key, redisKey(key), null, defaultValue);
+    }
+
+    public byte[] get(ByteBuffer key, byte[] defaultValue) {
+        return read(Protocol.Command.GET, null, redisKey(key), null, defaultValue);
+    }
+
+    public byte[] hget(byte[] key, byte[] field, byte[] defaultValue) {
+        return read(Protocol.Command.HGET, key, redisKey(key), field, defaultValue);
+    }
+
+    public boolean set(byte[] key, byte[] value, int expireSeconds) {
+        return write(Protocol.Command.SETEX, redisKey(key), null, value, expireSeconds);
+    }
+
+    /**
+     * 写入 buffer 中 position 到 limit 之间的数据, 不改变 buffer 的 position.
+     */
+    public boolean set(ByteBuffer key, ByteBuffer value, int expireSeconds) {
+        return write(Protocol.Command.SETEX, redisKey(key), null, toArray(value), expireSeconds);
+    }
+
+    public boolean delete(byte[] key) {
+        return write(Protocol.Command.DEL, redisKey(key), null, null, 0);
+    }
+
+    public boolean hset(byte[] key, byte[] field, byte[] value, int expireSeconds) {
+        return write(Protocol.Command.HSET, redisKey(key), field, value, expireSeconds);
+    }
+
+    private byte[] read(Protocol.Command op, byte[] key, byte[] redisKey, byte[] field, byte[] defaultValue) {
+        RedisMonitor monitor = getRedisClusterContext().getMonitor();
+        if (monitor != null) {
+            monitor.onRead(getPrefix(), SafeEncoder.encode(key != null ? key : stripPrefix(redisKey)));
+        }
+        byte[] value = read(getRedisClusterContext().getJedisCluster(), op, redisKey, field);
+        if (value == null) {
+            value = read(getRedisClusterContext().getStandyJedisCluster(), op, redisKey, field);
+        }
+        return value == null ? defaultValue : value;
+    }
+
+    private byte[] read(JedisCluster client, Protocol.Command op, byte[] redisKey, byte[] field) {
+        if (client == null || !isAvailable(client, ClusterSlot.getSlot(redisKey))) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] value = op == Protocol.Command.HGET ? client.hget(redisKey, field) : client.get(redisKey);
+            logOperation(OperationType.READ, client, redisKey, start, value != null ? value.length : 0, true);
+            return value;
+        } catch (Exception e) {
+            logOperation(OperationType.READ, client, redisKey, start, 0, false);
+            logReadError(getPrefix(), SafeEncoder.encode(stripPrefix(redisKey)), e);
+            return null;
+        }
+    }
+
+    private boolean write(final Protocol.Command op, final byte[] redisKey, final byte[] field, final byte[] value,
+                          int expireSeconds) {
+        final int seconds = adjustExpireTime(expireSeconds);
+        RedisMonitor monitor = getRedisClusterContext().getMonitor();
+        if (monitor != null) {
+            monitor.onWrite(getPrefix(), SafeEncoder.encode(stripPrefix(redisKey)), value != null ? SafeEncoder.encode(value) : null);
+        }
+
+        boolean result = write(getRedisClusterContext().getJedisCluster(), op, redisKey, field, value, seconds);
+        StandbyReplicator replicator = getRedisClusterContext().getStandbyReplicator();
+        if (replicator == null) {
+            write(getRedisClusterContext().getStandyJedisCluster(), op, redisKey, field, value, seconds);
+        } else {
+            replicator.replicate(getPrefix(), null, new Runnable() {
+                @Override
+                public void run() {
+                    write(getRedisClusterContext().getStandyJedisCluster(), op, redisKey, field, value, seconds);
+                }
+            });
+        }
+        return result;
+    }
+
+    private boolean write(JedisCluster client, Protocol.Command op, byte[] redisKey, byte[] field, byte[] value, int seconds) {
+        if (client == null || !isAvailable(client, ClusterSlot.getSlot(redisKey))) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            switch (op) {
+                case SETEX:
+                    client.setex(redisKey, seconds, value);
+                    break;
+                case DEL:
+                    client.del(redisKey);
+                    break;
+                case HSET:
+                    RedisScript.HSET_EXPIRE.eval(client, redisKey, Protocol.toByteArray(seconds),
+                            getConfig().isExpireOnCreate() ? EXPIRE_ON_CREATE : EXPIRE_ALWAYS, field, value);
+                    break;
+                default:
+                    throw new RuntimeException("Unsupported Redis command = [!" + op + "]");
+            }
+            logOperation(OperationType.WRITE, client, redisKey, start, value != null ? value.length : 0, true);
+            return true;
+        } catch (Exception e) {
+            logOperation(OperationType.WRITE, client, redisKey, start, 0, false);
+            logWriteError(getPrefix(), SafeEncoder.encode(stripPrefix(redisKey)), e);
+            return false;
+        }
+    }
+
+    private byte[] redisKey(byte[] key) {
+        byte[] redisKey = new byte[prefixBytes.length + key.length];
+        System.arraycopy(prefixBytes, 0, redisKey, 0, prefixBytes.length);
+        System.arraycopy(key, 0, redisKey, prefixBytes.length, key.length);
+        return redisKey;
+    }
+
+    private byte[] redisKey(ByteBuffer key) {
+        byte[] redisKey = new byte[prefixBytes.length + key.remaining()];
+        System.arraycopy(prefixBytes, 0, redisKey, 0, prefixBytes.length);
+        copy(key, redisKey, prefixBytes.length);
+        return redisKey;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        // 恰好覆盖整个数组的 heap buffer 直接使用其数组, 不再复制
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        copy(buffer, bytes, 0);
+        return bytes;
+    }
+
+    private static void copy(ByteBuffer buffer, byte[] dest, int offset) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position(), dest, offset, buffer.remaining());
+        } else {
+            int position = buffer.position();
+            buffer.get(dest, offset, buffer.remaining());
+            buffer.position(position);
+        }
+    }
+
+    private byte[] stripPrefix(byte[] redisKey) {
+        byte[] key = new byte[redisKey.length - prefixBytes.length];
+        System.arraycopy(redisKey, prefixBytes.length, key, 0, key.length);
+        return key;
+    }
+}
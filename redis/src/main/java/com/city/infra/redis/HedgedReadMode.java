@@ -0,0 +1,22 @@
+package com.city.infra.redis;
+
+/**
+ * 读主集群与备份集群的方式.
+ */
+public enum HedgedReadMode {
+
+    /**
+     * 先读主集群, 未命中或失败后再读备份集群.
+     */
+    NONE,
+
+    /**
+     * 先读主集群, 超过按主集群读延迟分位数计算出的等待时间仍未返回时, 同时读备份集群, 取先返回的非空结果.
+     */
+    DELAYED,
+
+    /**
+     * 同时读主集群与备份集群, 取先返回的非空结果.
+     */
+    PARALLEL
+}
@@ -0,0 +1,53 @@
+package com.city.infra.redis;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录最近若干次请求延迟的环形缓冲区, 用于估算延迟分位数.
+ * 分位数每记录 RECOMPUTE_INTERVAL 次才重新计算一次, 读取分位数无需加锁.
+ */
+public class LatencyTracker {
+
+    private static final int CAPACITY = 1024;
+
+    private static final int RECOMPUTE_INTERVAL = 256;
+
+    private final AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final double percentile;
+
+    private volatile long percentileNanos = -1;
+
+    public LatencyTracker(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public void record(long nanos) {
+        int n = count.getAndIncrement() & Integer.MAX_VALUE;
+        samples.set(n & (CAPACITY - 1), nanos);
+        if ((n + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute(n + 1 < CAPACITY ? n + 1 : CAPACITY);
+        }
+    }
+
+    /**
+     * 返回最近一次计算出的延迟分位数, 样本不足时返回 -1.
+     */
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+    private void recompute(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * size) - 1;
+        percentileNanos = sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+}
@@ -0,0 +1,171 @@
+package com.city.infra.redis;
+
+import com.city.infra.redis.pipeline.BatchReadCommand;
+import com.city.infra.redis.serializer.BufferInput;
+import com.city.infra.redis.serializer.BufferOutput;
+import com.city.infra.redis.serializer.Serializer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 Serializer 读写对象的 RedisAccessor, value 直接序列化到线程复用的缓冲区, 读取时直接从响应的字节数组反序列化,
+ * 不经过 String 中转. 主备集群回退, 未命中缓存和 ValueCodec 与 RedisAccessor 相同; 对象可能可变, 不使用近端缓存.
+ */
+public class ObjectRedisAccessor<T> extends RedisAccessorBase {
+
+    private final Serializer<T> serializer;
+
+    public ObjectRedisAccessor(String prefix, RedisClusterContext context, Serializer<T> serializer) {
+        super(prefix, context);
+        this.serializer = serializer;
+    }
+
+    public T get(String key, T defaultValue) {
+        return new ReplicaReadCommandTemplate<T>(key, defaultValue) {
+            @Override
+            public T read(JedisCluster client, String redisKey) {
+                return deserialize(client.get(SafeEncoder.encode(redisKey)));
+            }
+
+            @Override
+            public T read(Jedis jedis, String redisKey) {
+                return deserialize(jedis.get(SafeEncoder.encode(redisKey)));
+            }
+        }.run();
+    }
+
+    public List<T> mget(List<String> keys, T defaultValue) {
+        List<byte[]> values = batchRead(keys, null, new BatchReadCommand<byte[]>() {
+            @Override
+            public Response<byte[]> read(Pipeline pipeline, String redisKey) {
+                return pipeline.get(SafeEncoder.encode(redisKey));
+            }
+
+            @Override
+            public byte[] read(JedisCluster client, String redisKey) {
+                return client.get(SafeEncoder.encode(redisKey));
+            }
+        });
+        List<T> results = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            results.add(value == null ? defaultValue : deserialize(value));
+        }
+        return results;
+    }
+
+    public boolean set(String key, T value, int expireSeconds) {
+        final byte[] bytes = serialize(value);
+        return new WriteCommandTemplateBoolean(key, null, expireSeconds) {
+            @Override
+            public Boolean write(JedisCluster client, String redisKey, int seconds) {
+                client.setex(SafeEncoder.encode(redisKey), seconds, bytes);
+                return true;
+            }
+        }.run();
+    }
+
+    public boolean delete(String key) {
+        return new DeleteCommandTemplate(key) {
+            @Override
+            public Boolean write(JedisCluster client, String redisKey, int seconds) {
+                return client.del(redisKey) > 0;
+            }
+        }.run();
+    }
+
+    public T hget(String key, final String field, T defaultValue) {
+        return new ReplicaReadCommandTemplate<T>(key, field, defaultValue) {
+            @Override
+            public T read(JedisCluster client, String redisKey) {
+                return deserialize(client.hget(SafeEncoder.encode(redisKey), SafeEncoder.encode(field)));
+            }
+
+            @Override
+            public T read(Jedis jedis, String redisKey) {
+                return deserialize(jedis.hget(SafeEncoder.encode(redisKey), SafeEncoder.encode(field)));
+            }
+        }.run();
+    }
+
+    public Map<String, T> hgetAll(String key) {
+        return new ReplicaReadCommandTemplate<Map<String, T>>(key, Collections.<String, T>emptyMap()) {
+            @Override
+            public Map<String, T> read(JedisCluster client, String redisKey) {
+                return deserialize(client.hgetAll(SafeEncoder.encode(redisKey)));
+            }
+
+            @Override
+            public Map<String, T> read(Jedis jedis, String redisKey) {
+                return deserialize(jedis.hgetAll(SafeEncoder.encode(redisKey)));
+            }
+        }.run();
+    }
+
+    public boolean hset(String key, final String field, T value, int expireSeconds) {
+        final byte[] bytes = serialize(value);
+        return new WriteCommandTemplateBoolean(key, null, expireSeconds) {
+            @Override
+            public Boolean write(JedisCluster client, String redisKey, int seconds) {
+                RedisScript.HSET_EXPIRE.eval(client, SafeEncoder.encode(redisKey), scriptArgs(seconds, SafeEncoder.encode(field), bytes));
+                return true;
+            }
+        }.run();
+    }
+
+    public boolean hmset(String key, Map<String, T> hash, int expireSeconds) {
+        final byte[][] fieldValues = new byte[hash.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, T> entry : hash.entrySet()) {
+            fieldValues[i++] = SafeEncoder.encode(entry.getKey());
+            fieldValues[i++] = serialize(entry.getValue());
+        }
+        return new WriteCommandTemplateBoolean(key, null, expireSeconds) {
+            @Override
+            public Boolean write(JedisCluster client, String redisKey, int seconds) {
+                RedisScript.HMSET_EXPIRE.eval(client, SafeEncoder.encode(redisKey), scriptArgs(seconds, fieldValues));
+                return true;
+            }
+        }.run();
+    }
+
+    public Serializer<T> getSerializer() {
+        return serializer;
+    }
+
+    private byte[] serialize(T value) {
+        BufferOutput out = BufferOutput.local();
+        serializer.write(value, out);
+        byte[] bytes = out.toByteArray();
+        return getValueCodec() != null ? getValueCodec().encode(bytes) : bytes;
+    }
+
+    private T deserialize(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (getValueCodec() != null) {
+            bytes = getValueCodec().decode(bytes);
+        }
+        return serializer.read(new BufferInput(bytes));
+    }
+
+    private Map<String, T> deserialize(Map<byte[], byte[]> hash) {
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+        Map<String, T> result = new HashMap<>(hash.size() * 2);
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            result.put(SafeEncoder.encode(entry.getKey()), deserialize(entry.getValue()));
+        }
+        return result;
+    }
+}
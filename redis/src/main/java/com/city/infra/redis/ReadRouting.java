@@ -0,0 +1,22 @@
+package com.city.infra.redis;
+
+/**
+ * 单 key 读命令在主节点与其副本节点之间的路由方式.
+ */
+public enum ReadRouting {
+
+    /**
+     * 只读 slot 所在的主节点.
+     */
+    MASTER,
+
+    /**
+     * 优先读复制延迟在阈值内的副本节点, 没有可用副本时读主节点.
+     */
+    PREFER_REPLICA,
+
+    /**
+     * 在主节点和可用的副本节点中读最近平均 (EWMA) 延迟最低的节点.
+     */
+    LOWEST_LATENCY
+}
@@ -1,50 +1,170 @@
 package com.city.infra.redis;
 
+import com.city.infra.redis.cache.EarlyRefresh;
+import com.city.infra.redis.cache.SingleFlight;
+import com.city.infra.redis.cache.ValueLoader;
+import com.city.infra.redis.pipeline.BatchReadCommand;
+import com.city.infra.redis.pipeline.ClusterSlot;
+import com.city.infra.redis.pipeline.RedisCommand;
+import com.city.infra.redis.scan.ScanIterator;
 import org.apache.commons.collections.SetUtils;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by sky on 2016/9/20.
+ *
+ * 开启 ValueCodec 时, get/set 和 hash 的 value 以编码后的二进制读写, 计数器和集合成员不编码.
  */
 public class RedisAccessor extends RedisAccessorBase {
 
+    private static final String LEASE_SUFFIX = "#lease";
+
+    private static final String NO_LEASE = "";  // 主集群不可用时不加锁直接加载
+
+    private final SingleFlight loadFlight = new SingleFlight();  // 进程内同一 key 进行中的 getOrLoad 加载
+
+    private final EarlyRefresh earlyRefresh;
+
     public RedisAccessor(String prefix, RedisClusterContext context) {
         super(prefix, context);
+        this.earlyRefresh = new EarlyRefresh(getConfig().getEarlyRefreshBeta(), getConfig().getEarlyRefreshDeltaMillis());
+    }
+
+    @Override
+    protected boolean usesNearCache() {
+        return true;
     }
 
     public String get(final String key, final String defaultValue) {
-        return new ReadCommandTemplate<String>(key, defaultValue) {
+        return new ReplicaReadCommandTemplate<String>(key, defaultValue) {
             @Override
             public String read(JedisCluster client, String redisKey) {
-                String value = client.get(redisKey);
-                if (value == null) {
-                    return defaultValue;
-                } else {
-                    return value;
+                if (getValueCodec() != null) {
+                    return decodeValue(client.get(SafeEncoder.encode(redisKey)));
+                }
+                return client.get(redisKey);
+            }
+
+            @Override
+            public String read(Jedis jedis, String redisKey) {
+                if (getValueCodec() != null) {
+                    return decodeValue(jedis.get(SafeEncoder.encode(redisKey)));
                 }
+                return jedis.get(redisKey);
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
             }
         }.run();
     }
 
+    public List<String> mget(List<String> keys, String defaultValue) {
+        if (getValueCodec() != null) {
+            List<byte[]> values = batchRead(keys, null, new BatchReadCommand<byte[]>() {
+                @Override
+                public Response<byte[]> read(Pipeline pipeline, String redisKey) {
+                    return pipeline.get(SafeEncoder.encode(redisKey));
+                }
+
+                @Override
+                public byte[] read(JedisCluster client, String redisKey) {
+                    return client.get(SafeEncoder.encode(redisKey));
+                }
+            });
+            List<String> results = new ArrayList<>(values.size());
+            for (byte[] value : values) {
+                results.add(value == null ? defaultValue : decodeValue(value));
+            }
+            return results;
+        }
+        return batchRead(keys, defaultValue, new BatchReadCommand<String>() {
+            @Override
+            public Response<String> read(Pipeline pipeline, String redisKey) {
+                return pipeline.get(redisKey);
+            }
+
+            @Override
+            public String read(JedisCluster client, String redisKey) {
+                return client.get(redisKey);
+            }
+        });
+    }
+
     public boolean set(final String key, final String value, final int expireSeconds) {
+        // 主备集群写入同一份编码结果, 只编码一次
+        final byte[] encoded = getValueCodec() != null ? encodeValue(value) : null;
         return new WriteCommandTemplateBoolean(key, value, expireSeconds) {
             @Override
             public Boolean write(JedisCluster client, String redisKey, int seconds) {
-                client.setex(redisKey, seconds, value);
+                if (encoded != null) {
+                    client.setex(SafeEncoder.encode(redisKey), seconds, encoded);
+                } else {
+                    client.setex(redisKey, seconds, value);
+                }
                 return true;
             }
+
+            @Override
+            public RedisCommand command(String redisKey, int seconds) {
+                return encoded != null ? null : new RedisCommand<String>(Protocol.Command.SETEX, redisKey, value, seconds);
+            }
+
+            @Override
+            public String cacheValue() {
+                return value;
+            }
         }.run();
     }
 
+    /**
+     * 读取 key, 主备集群均未命中时调用 loader 加载并以 expireSeconds 写入. 同一 key 同时只有一个加载:
+     * 进程内的并发请求共享一次加载, 进程之间通过主集群上的租约 (SET NX PX) 互斥, 未取得租约的请求轮询等待写入结果,
+     * 租约到期仍未读到时自行加载. 命中时按 XFetch 以随剩余过期时间减少而增大的概率在后台提前刷新.
+     * loader 返回 null 时不写入并返回 null, loader 抛出的异常直接抛给调用方.
+     */
+    public String getOrLoad(final String key, final ValueLoader<String> loader, final int expireSeconds) {
+        final Entry entry = readEntry(key);
+        if (entry == null) {
+            return load(key, loader, expireSeconds);
+        }
+        if (earlyRefresh.shouldRefresh(entry.ttlMillis)) {
+            refreshInBackground(key, loader, expireSeconds, entry.value);
+        }
+        return entry.value;
+    }
+
     public boolean delete(final String key) {
         return new DeleteCommandTemplate(key) {
             @Override
             public Boolean write(JedisCluster client, String redisKey, int seconds) {
                 return client.del(redisKey) > 0;
             }
+
+            @Override
+            public RedisCommand command(String redisKey, int seconds) {
+                return new RedisCommand<Long>(Protocol.Command.DEL, redisKey, null, 0);
+            }
         }.run();
     }
 
@@ -52,44 +172,123 @@ public class RedisAccessor extends RedisAccessorBase {
         return new WriteCommandTemplate<Long>(key, null, expireSeconds, defaultValue) {
             @Override
             public Long write(JedisCluster client, String redisKey, int seconds) {
-                long value = client.incrBy(redisKey, increment);
-                client.expire(redisKey, seconds);
-                return value;
+                return (Long) RedisScript.INCRBY_EXPIRE.eval(client, redisKey, scriptArgs(seconds, String.valueOf(increment)));
             }
         }.run();
     }
 
     public String hget(final String key, final String field, final String defaultValue) {
-        return new ReadCommandTemplate<String>(key, defaultValue) {
+        return new ReplicaReadCommandTemplate<String>(key, field, defaultValue) {
             @Override
             public String read(JedisCluster client, String redisKey) {
-                String value = client.hget(redisKey, field);
-                if (value == null) {
-                    return defaultValue;
-                } else {
-                    return value;
+                if (getValueCodec() != null) {
+                    return decodeValue(client.hget(SafeEncoder.encode(redisKey), SafeEncoder.encode(field)));
+                }
+                return client.hget(redisKey, field);
+            }
+
+            @Override
+            public String read(Jedis jedis, String redisKey) {
+                if (getValueCodec() != null) {
+                    return decodeValue(jedis.hget(SafeEncoder.encode(redisKey), SafeEncoder.encode(field)));
                 }
+                return jedis.hget(redisKey, field);
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
             }
         }.run();
     }
 
+    /**
+     * 批量读取多个 hash 的相同 field, 结果按 keys 的顺序返回, 每个 hash 的值按 fields 的顺序排列.
+     */
+    public List<List<String>> hmget(List<String> keys, final String... fields) {
+        if (getValueCodec() != null) {
+            return hmgetEncoded(keys, fields);
+        }
+        return batchRead(keys, Collections.<String>nCopies(fields.length, null), new BatchReadCommand<List<String>>() {
+            @Override
+            public Response<List<String>> read(Pipeline pipeline, String redisKey) {
+                return pipeline.hmget(redisKey, fields);
+            }
+
+            @Override
+            public List<String> read(JedisCluster client, String redisKey) {
+                return client.hmget(redisKey, fields);
+            }
+
+            @Override
+            public boolean isMissing(List<String> value) {
+                if (value == null) {
+                    return true;
+                }
+                for (String fieldValue : value) {
+                    if (fieldValue != null) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    public List<Map<String, String>> hgetAll(List<String> keys) {
+        if (getValueCodec() != null) {
+            return hgetAllEncoded(keys);
+        }
+        return batchRead(keys, Collections.<String, String>emptyMap(), new BatchReadCommand<Map<String, String>>() {
+            @Override
+            public Response<Map<String, String>> read(Pipeline pipeline, String redisKey) {
+                return pipeline.hgetAll(redisKey);
+            }
+
+            @Override
+            public Map<String, String> read(JedisCluster client, String redisKey) {
+                return client.hgetAll(redisKey);
+            }
+
+            @Override
+            public boolean isMissing(Map<String, String> value) {
+                return value == null || value.isEmpty();
+            }
+        });
+    }
+
     public boolean hset(final String key, final String field, final String value, final int expireSeconds) {
+        final byte[] encoded = getValueCodec() != null ? encodeValue(value) : null;
         return new WriteCommandTemplateBoolean(key, value, expireSeconds) {
             @Override
             public Boolean write(JedisCluster client, String redisKey, int seconds) {
-                client.hset(redisKey, field, value);
-                client.expire(redisKey, seconds);
+                if (encoded != null) {
+                    RedisScript.HSET_EXPIRE.eval(client, SafeEncoder.encode(redisKey),
+                            scriptArgs(seconds, SafeEncoder.encode(field), encoded));
+                } else {
+                    RedisScript.HSET_EXPIRE.eval(client, redisKey, scriptArgs(seconds, field, value));
+                }
                 return true;
             }
         }.run();
     }
 
     public boolean hmset(final String key, final Map<String, String> hash, final int expireSeconds) {
+        final byte[][] encoded = getValueCodec() != null ? encodeHash(hash) : null;
         return new WriteCommandTemplateBoolean(key, null, expireSeconds) {
             @Override
             public Boolean write(JedisCluster client, String redisKey, int seconds) {
-                client.hmset(redisKey, hash);
-                client.expire(redisKey, seconds);
+                if (encoded != null) {
+                    RedisScript.HMSET_EXPIRE.eval(client, SafeEncoder.encode(redisKey), scriptArgs(seconds, encoded));
+                    return true;
+                }
+                String[] fieldValues = new String[hash.size() * 2];
+                int i = 0;
+                for (Map.Entry<String, String> entry : hash.entrySet()) {
+                    fieldValues[i++] = entry.getKey();
+                    fieldValues[i++] = entry.getValue();
+                }
+                RedisScript.HMSET_EXPIRE.eval(client, redisKey, scriptArgs(seconds, fieldValues));
                 return true;
             }
         }.run();
@@ -108,19 +307,78 @@ public class RedisAccessor extends RedisAccessorBase {
         return new WriteCommandTemplate<Long>(key, String.valueOf(increment), expireSeconds, defaultValue) {
             @Override
             public Long write(JedisCluster client, String redisKey, int seconds) {
-                long value = client.hincrBy(redisKey, field, increment);
-                client.expire(redisKey, seconds);
-                return value;
+                return (Long) RedisScript.HINCRBY_EXPIRE.eval(client, redisKey, scriptArgs(seconds, field, String.valueOf(increment)));
             }
         }.run();
     }
 
     public Set<String> smembers(final String key) {
-        return new ReadCommandTemplate<Set<String>>(key, SetUtils.EMPTY_SET) {
+        return new ReplicaReadCommandTemplate<Set<String>>(key, SetUtils.EMPTY_SET) {
             @Override
             public Set<String> read(JedisCluster client, String redisKey) {
                 return client.smembers(redisKey);
             }
+
+            @Override
+            public Set<String> read(Jedis jedis, String redisKey) {
+                return jedis.smembers(redisKey);
+            }
+        }.run();
+    }
+
+    /**
+     * 以 SSCAN 分页遍历集合, 每页 COUNT 为 RedisAccessorConfig 的 scanCount. 适合 smembers 一次读取过大的集合.
+     */
+    public ScanIterator<String> sscan(String key) {
+        return sscan(key, getConfig().getScanCount());
+    }
+
+    public ScanIterator<String> sscan(String key, int count) {
+        return new ScanCommandTemplate<String>(key, count) {
+            @Override
+            public ScanResult<String> scan(JedisCluster client, String redisKey, String cursor, ScanParams params) {
+                return client.sscan(redisKey, cursor, params);
+            }
+        }.run();
+    }
+
+    /**
+     * 以 HSCAN 分页遍历 hash 的 field 和 value, 开启 ValueCodec 时 value 已解码.
+     */
+    public ScanIterator<Map.Entry<String, String>> hscan(String key) {
+        return hscan(key, getConfig().getScanCount());
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscan(String key, int count) {
+        return new ScanCommandTemplate<Map.Entry<String, String>>(key, count) {
+            @Override
+            public ScanResult<Map.Entry<String, String>> scan(JedisCluster client, String redisKey, String cursor, ScanParams params) {
+                if (getValueCodec() == null) {
+                    return client.hscan(redisKey, cursor, params);
+                }
+                ScanResult<Map.Entry<byte[], byte[]>> result = client.hscan(SafeEncoder.encode(redisKey), SafeEncoder.encode(cursor), params);
+                List<Map.Entry<String, String>> entries = new ArrayList<>(result.getResult().size());
+                for (Map.Entry<byte[], byte[]> entry : result.getResult()) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(SafeEncoder.encode(entry.getKey()), decodeValue(entry.getValue())));
+                }
+                return new ScanResult<>(result.getCursorAsBytes(), entries);
+            }
+        }.run();
+    }
+
+    /**
+     * 以 ZSCAN 分页遍历有序集合的成员和分数, 不按分数排序.
+     */
+    public ScanIterator<Tuple> zscan(String key) {
+        return zscan(key, getConfig().getScanCount());
+    }
+
+    public ScanIterator<Tuple> zscan(String key, int count) {
+        return new ScanCommandTemplate<Tuple>(key, count) {
+            @Override
+            public ScanResult<Tuple> scan(JedisCluster client, String redisKey, String cursor, ScanParams params) {
+                return client.zscan(redisKey, cursor, params);
+            }
         }.run();
     }
 
@@ -128,11 +386,262 @@ public class RedisAccessor extends RedisAccessorBase {
         return new WriteCommandTemplate<Long>(key, null, expireSeconds, -1L) {
             @Override
             public Long write(JedisCluster client, String redisKey, int seconds) {
-                long ret = client.sadd(redisKey, members);
-                client.expire(redisKey, seconds);
-                return ret;
+                return (Long) RedisScript.SADD_EXPIRE.eval(client, redisKey, scriptArgs(seconds, members));
             }
         }.run();
     }
 
+    public EarlyRefresh getEarlyRefresh() {
+        return earlyRefresh;
+    }
+
+    /**
+     * 读取 value 和剩余过期时间, 与 get 相同地回退到备份集群, 不使用近端缓存.
+     */
+    private Entry readEntry(String key) {
+        return new ReadCommandTemplate<Entry>(key, null) {
+            @Override
+            public Entry read(JedisCluster client, String redisKey) {
+                List<Object> reply = (List<Object>) RedisScript.GET_PTTL.eval(client, SafeEncoder.encode(redisKey));
+                byte[] value = (byte[]) reply.get(0);
+                if (value == null) {
+                    return null;
+                }
+                return new Entry(getValueCodec() != null ? decodeValue(value) : SafeEncoder.encode(value), (Long) reply.get(1));
+            }
+        }.run();
+    }
+
+    private String load(String key, ValueLoader<String> loader, int expireSeconds) {
+        SingleFlight.Call<String> call = loadFlight.join(getPrefix() + key);
+        if (!call.isLeader()) {
+            try {
+                return call.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loadWithLease(key, loader, expireSeconds);
+            }
+        }
+
+        boolean completed = false;
+        try {
+            String value = loadWithLease(key, loader, expireSeconds);
+            call.complete(value);
+            completed = true;
+            return value;
+        } catch (RuntimeException e) {
+            call.fail(e);
+            completed = true;
+            throw e;
+        } finally {
+            if (!completed) {
+                call.fail(new IllegalStateException("Load redis value failed, key=[" + getPrefix() + key + "]"));
+            }
+        }
+    }
+
+    private String loadWithLease(String key, ValueLoader<String> loader, int expireSeconds) {
+        long deadline = System.currentTimeMillis() + getConfig().getLoadLeaseMillis();
+        while (true) {
+            String token = acquireLease(key);
+            if (token != null) {
+                try {
+                    // 取得租约前其他进程可能刚写入并释放了租约
+                    Entry entry = token.isEmpty() ? null : readEntry(key);
+                    return entry != null ? entry.value : loadAndSet(key, loader, expireSeconds);
+                } finally {
+                    releaseLease(key, token);
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                // 持有租约的进程加载超时或已退出, 不再等待
+                return loadAndSet(key, loader, expireSeconds);
+            }
+            try {
+                Thread.sleep(getConfig().getLoadPollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loadAndSet(key, loader, expireSeconds);
+            }
+            Entry entry = readEntry(key);
+            if (entry != null) {
+                return entry.value;
+            }
+        }
+    }
+
+    /**
+     * 在有界的刷新线程池中刷新即将过期的 key, 进程内已有进行中的加载、其他进程持有租约或线程池已满时跳过.
+     * 刷新期间到达的未命中请求等待刷新结果, 未取得租约时以当前值作为结果.
+     */
+    private void refreshInBackground(final String key, final ValueLoader<String> loader, final int expireSeconds,
+                                     final String current) {
+        final SingleFlight.Call<String> call = loadFlight.join(getPrefix() + key);
+        if (!call.isLeader()) {
+            return;
+        }
+        ExecutorService executorService = getRedisClusterContext().getRefreshExecutorService();
+        if (executorService == null) {
+            call.complete(current);
+            return;
+        }
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String value = current;
+                    try {
+                        String token = acquireLease(key);
+                        if (token != null) {
+                            try {
+                                value = loadAndSet(key, loader, expireSeconds);
+                            } finally {
+                                releaseLease(key, token);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        logWriteError(getPrefix(), key, e);
+                    } finally {
+                        call.complete(value);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            call.complete(current);
+        }
+    }
+
+    private String loadAndSet(String key, ValueLoader<String> loader, int expireSeconds) {
+        long start = System.nanoTime();
+        String value = loader.load(key);
+        earlyRefresh.recordLoad(System.nanoTime() - start);
+        if (value != null) {
+            set(key, value, expireSeconds);
+        }
+        return value;
+    }
+
+    /**
+     * 在主集群上获取 key 的加载租约, 返回租约 token; 租约被其他调用持有时返回 null, 主集群不可用时返回 NO_LEASE.
+     */
+    private String acquireLease(String key) {
+        JedisCluster client = getRedisClusterContext().getJedisCluster();
+        String leaseKey = getPrefix() + key + LEASE_SUFFIX;
+        if (client == null || !isAvailable(client, ClusterSlot.getSlot(leaseKey))) {
+            return NO_LEASE;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            return "OK".equals(client.set(leaseKey, token, "NX", "PX", getConfig().getLoadLeaseMillis())) ? token : null;
+        } catch (Exception e) {
+            logWriteError(getPrefix(), key, e);
+            return NO_LEASE;
+        }
+    }
+
+    private void releaseLease(String key, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+        try {
+            RedisScript.COMPARE_AND_DELETE.eval(getRedisClusterContext().getJedisCluster(), getPrefix() + key + LEASE_SUFFIX, token);
+        } catch (Exception e) {
+            // 释放失败时租约到期后自动失效
+            logWriteError(getPrefix(), key, e);
+        }
+    }
+
+    private List<List<String>> hmgetEncoded(List<String> keys, String... fields) {
+        final byte[][] binaryFields = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            binaryFields[i] = SafeEncoder.encode(fields[i]);
+        }
+        List<List<byte[]>> values = batchRead(keys, null, new BatchReadCommand<List<byte[]>>() {
+            @Override
+            public Response<List<byte[]>> read(Pipeline pipeline, String redisKey) {
+                return pipeline.hmget(SafeEncoder.encode(redisKey), binaryFields);
+            }
+
+            @Override
+            public List<byte[]> read(JedisCluster client, String redisKey) {
+                return client.hmget(SafeEncoder.encode(redisKey), binaryFields);
+            }
+
+            @Override
+            public boolean isMissing(List<byte[]> value) {
+                if (value == null) {
+                    return true;
+                }
+                for (byte[] fieldValue : value) {
+                    if (fieldValue != null) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        List<List<String>> results = new ArrayList<>(values.size());
+        for (List<byte[]> value : values) {
+            List<String> decoded = new ArrayList<>(fields.length);
+            for (int i = 0; i < fields.length; i++) {
+                decoded.add(value == null ? null : decodeValue(value.get(i)));
+            }
+            results.add(decoded);
+        }
+        return results;
+    }
+
+    private List<Map<String, String>> hgetAllEncoded(List<String> keys) {
+        List<Map<byte[], byte[]>> values = batchRead(keys, null, new BatchReadCommand<Map<byte[], byte[]>>() {
+            @Override
+            public Response<Map<byte[], byte[]>> read(Pipeline pipeline, String redisKey) {
+                return pipeline.hgetAll(SafeEncoder.encode(redisKey));
+            }
+
+            @Override
+            public Map<byte[], byte[]> read(JedisCluster client, String redisKey) {
+                return client.hgetAll(SafeEncoder.encode(redisKey));
+            }
+
+            @Override
+            public boolean isMissing(Map<byte[], byte[]> value) {
+                return value == null || value.isEmpty();
+            }
+        });
+        List<Map<String, String>> results = new ArrayList<>(values.size());
+        for (Map<byte[], byte[]> value : values) {
+            if (value == null) {
+                results.add(Collections.<String, String>emptyMap());
+                continue;
+            }
+            Map<String, String> decoded = new HashMap<>(value.size() * 2);
+            for (Map.Entry<byte[], byte[]> entry : value.entrySet()) {
+                decoded.put(SafeEncoder.encode(entry.getKey()), decodeValue(entry.getValue()));
+            }
+            results.add(decoded);
+        }
+        return results;
+    }
+
+    private byte[][] encodeHash(Map<String, String> hash) {
+        byte[][] fieldValues = new byte[hash.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            fieldValues[i++] = SafeEncoder.encode(entry.getKey());
+            fieldValues[i++] = encodeValue(entry.getValue());
+        }
+        return fieldValues;
+    }
+
+    private static class Entry {
+
+        private final String value;
+
+        private final long ttlMillis;
+
+        Entry(String value, long ttlMillis) {
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+        }
+    }
 }
@@ -1,7 +1,43 @@
 package com.city.infra.redis;
 
+import com.city.infra.redis.cache.NearCache;
+import com.city.infra.redis.cache.NegativeLookupCache;
+import com.city.infra.redis.cache.SingleFlight;
+import com.city.infra.redis.codec.MonitoredValueCodec;
+import com.city.infra.redis.codec.ValueCodec;
+import com.city.infra.redis.health.ClusterHealth;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.metrics.OperationType;
+import com.city.infra.redis.pipeline.BatchReadCommand;
+import com.city.infra.redis.pipeline.ClusterNode;
+import com.city.infra.redis.pipeline.ClusterSlot;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import com.city.infra.redis.pipeline.RedisBatchReader;
+import com.city.infra.redis.pipeline.RedisCommand;
+import com.city.infra.redis.pipeline.StandbyReplicator;
+import com.city.infra.redis.routing.ReplicaReadRouter;
+import com.city.infra.redis.scan.ScanIterator;
+import com.city.infra.redis.scan.ScanSource;
 import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by sky on 2016/9/22.
@@ -12,35 +48,229 @@ public class RedisAccessorBase {
 
     private RedisClusterContext redisClusterContext;
 
+    private LatencyTracker readLatencyTracker;  // 主集群读延迟, 用于计算 hedged read 的等待时间
+
+    private NegativeLookupCache negativeLookupCache;  // 近期主备集群均未命中的 key, 为 null 时不开启
+
+    private NearCache nearCache;  // 近端缓存, 为 null 时不开启
+
+    private ValueCodec valueCodec;  // 字符串 value 的编码, 为 null 时以 UTF-8 字符串读写
+
+    private SingleFlight singleFlight;  // 合并并发的相同读请求, 为 null 时不开启
+
     protected abstract class ReadCommandTemplate<T> {
 
         private String key;
 
+        private String field;
+
         private T defaultValue;
 
+        private volatile boolean failed;  // 本次读取是否有集群访问出错
+
         public ReadCommandTemplate(String key, T defaultValue) {
+            this(key, null, defaultValue);
+        }
+
+        public ReadCommandTemplate(String key, String field, T defaultValue) {
             this.key = key;
+            this.field = field;
             this.defaultValue = defaultValue;
         }
 
         public abstract T read(JedisCluster client, String redisKey);
 
+        /**
+         * 读取结果是否可以保存在近端缓存中或在合并的并发读请求之间共享, 只有返回不可变值的读命令才应返回 true.
+         */
+        public boolean cacheable() {
+            return false;
+        }
+
         public T run() {
             String redisKey = prefix + key;
 
             logRead(prefix, key);
-            T value = doRead(getCluster(), redisKey);
-            if (value == null) {
-                value = doRead(getStandbyCluster(), redisKey);
+            NearCache cache = cacheable() ? nearCache : null;
+            long cacheVersion = 0;
+            if (cache != null) {
+                T cached = (T) cache.get(redisKey, field);
+                if (cached != null) {
+                    return cached;
+                }
+                cacheVersion = cache.getVersion();
+            }
+
+            T value = singleFlight != null && cacheable() ? readCoalesced(redisKey) : readClusters(redisKey);
+            if (cache != null && value != null) {
+                cache.put(redisKey, field, value, getConfig().getNearCacheTtlMillis(), cacheVersion);
             }
             return value == null ? defaultValue : value;
         }
 
+        /**
+         * 同一 key 和 field 的并发读请求只由第一个请求访问主备集群, 其余请求等待并共享其结果.
+         */
+        private T readCoalesced(String redisKey) {
+            // 不同读命令的模板类不同, 同一 key 的 get 与 hgetAll 不会互相合并
+            SingleFlight.Call<T> call = singleFlight.join(Arrays.asList(getClass(), redisKey, field));
+            if (!call.isLeader()) {
+                logCoalescedRead(prefix, key, true);
+                try {
+                    return call.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return readClusters(redisKey);
+                }
+            }
+
+            logCoalescedRead(prefix, key, false);
+            boolean completed = false;
+            try {
+                T value = readClusters(redisKey);
+                call.complete(value);
+                completed = true;
+                return value;
+            } catch (RuntimeException e) {
+                call.fail(e);
+                completed = true;
+                throw e;
+            } finally {
+                if (!completed) {
+                    call.fail(new IllegalStateException("Coalesced redis read failed, key=[" + redisKey + "]"));
+                }
+            }
+        }
+
+        private T readClusters(String redisKey) {
+            T value;
+            if (negativeLookupCache != null && negativeLookupCache.contains(redisKey, field)) {
+                // 近期已确认主备集群均不存在, 只读主集群, 不再回退到备份集群
+                value = doRead(getCluster(), redisKey);
+            } else {
+                if (getConfig().getHedgedReadMode() != HedgedReadMode.NONE && getStandbyCluster() != null) {
+                    value = hedgedRead(redisKey);
+                } else {
+                    value = doRead(getCluster(), redisKey);
+                    if (value == null) {
+                        value = doRead(getStandbyCluster(), redisKey);
+                    }
+                }
+                if (value == null && !failed && negativeLookupCache != null) {
+                    negativeLookupCache.put(redisKey, field);
+                }
+            }
+            return value;
+        }
+
+        private T hedgedRead(final String redisKey) {
+            CompletionService<T> completionService = new ExecutorCompletionService<>(redisClusterContext.getExecutorService());
+            Future<T> primary = completionService.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long start = System.nanoTime();
+                    T value = doRead(getCluster(), redisKey);
+                    readLatencyTracker.record(System.nanoTime() - start);
+                    return value;
+                }
+            });
+            Callable<T> standbyRead = new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return doRead(getStandbyCluster(), redisKey);
+                }
+            };
+
+            Future<T> standby = null;
+            boolean hedged = false;
+            int pending = 1;
+            try {
+                if (getConfig().getHedgedReadMode() == HedgedReadMode.PARALLEL) {
+                    standby = completionService.submit(standbyRead);
+                    hedged = true;
+                    pending++;
+                } else {
+                    Future<T> done = completionService.poll(getHedgeDelayMicros(), TimeUnit.MICROSECONDS);
+                    if (done != null) {
+                        pending--;
+                        T value = done.get();
+                        if (value != null) {
+                            logHedgedRead(prefix, key, false, false);
+                            return value;
+                        }
+                    } else {
+                        hedged = true;
+                    }
+                    standby = completionService.submit(standbyRead);
+                    pending++;
+                }
+
+                // 取先返回的非空结果, 另一方的结果被忽略.
+                while (pending > 0) {
+                    Future<T> done = completionService.take();
+                    pending--;
+                    T value = done.get();
+                    if (value != null) {
+                        logHedgedRead(prefix, key, hedged, done == standby);
+                        return value;
+                    }
+                }
+                logHedgedRead(prefix, key, hedged, false);
+            } catch (InterruptedException e) {
+                failed = true;
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                failed = true;
+                logReadError(prefix, key, e);
+            } finally {
+                primary.cancel(false);
+                if (standby != null) {
+                    standby.cancel(false);
+                }
+            }
+            return null;
+        }
+
         private T doRead(JedisCluster client, String redisKey) {
-            if (client != null) {
+            if (client != null && !isAvailable(client, ClusterSlot.getSlot(redisKey))) {
+                failed = true;  // 熔断跳过的集群不能确认 key 不存在
+            } else if (client != null) {
+                ReplicaReadRouter router = getConfig().getReadRouting() != ReadRouting.MASTER
+                        && this instanceof ReplicaReadCommandTemplate ? redisClusterContext.getReadRouter(client) : null;
+                ClusterNode master = router != null ? router.getMaster(ClusterSlot.getSlot(redisKey)) : null;
+                String replica = master != null
+                        ? router.choose(master, getConfig().getReadRouting(), getConfig().getReplicaMaxLagBytes()) : null;
+                if (replica != null) {
+                    long start = System.nanoTime();
+                    Jedis jedis = null;
+                    try {
+                        jedis = router.getResource(replica);
+                        T value = ((ReplicaReadCommandTemplate<T>) this).read(jedis, redisKey);
+                        router.record(replica, System.nanoTime() - start, true);
+                        logReplicaOperation(client, replica, start, payloadSize(value), true);
+                        return value;
+                    } catch (Exception e) {
+                        // 副本出错时暂停向其路由, 本次改读主节点
+                        router.record(replica, System.nanoTime() - start, false);
+                        logReplicaOperation(client, replica, start, 0, false);
+                    } finally {
+                        if (jedis != null) {
+                            jedis.close();
+                        }
+                    }
+                }
+
+                long start = System.nanoTime();
                 try {
-                    return read(client, redisKey);
+                    T value = read(client, redisKey);
+                    logOperation(OperationType.READ, client, redisKey, start, payloadSize(value), true);
+                    if (master != null) {
+                        router.record(master.getName(), System.nanoTime() - start, true);
+                    }
+                    return value;
                 } catch (Exception e) {
+                    failed = true;
+                    logOperation(OperationType.READ, client, redisKey, start, 0, false);
                     logReadError(prefix, key, e);
                 }
             }
@@ -48,6 +278,88 @@ public class RedisAccessorBase {
         }
     }
 
+    /**
+     * 可以在副本节点上执行的读命令, 开启 ReadRouting 时按路由策略读副本节点, 副本出错时改读主节点.
+     */
+    protected abstract class ReplicaReadCommandTemplate<T> extends ReadCommandTemplate<T> {
+
+        public ReplicaReadCommandTemplate(String key, T defaultValue) {
+            super(key, defaultValue);
+        }
+
+        public ReplicaReadCommandTemplate(String key, String field, T defaultValue) {
+            super(key, field, defaultValue);
+        }
+
+        /**
+         * 在 key 所在 slot 的副本节点上读取, 语义应与 read(JedisCluster, String) 相同.
+         */
+        public abstract T read(Jedis jedis, String redisKey);
+    }
+
+    /**
+     * 按游标分页读取一个 key 的元素, 每页最多约 count 个. 与 ReadCommandTemplate 相同地在主集群出错或 key 不存在时回退到备份集群:
+     * 遍历中途出错时从头改读备份集群, 已返回的元素可能重复返回, 与 SCAN 本身的语义一致.
+     * 主备集群均出错或被熔断跳过时抛出 IllegalStateException, 由 ScanIterator 的 hasNext 抛给调用方, 不会当作遍历结束.
+     */
+    protected abstract class ScanCommandTemplate<T> implements ScanSource<T> {
+
+        private String key;
+
+        private String redisKey;
+
+        private ScanParams params;
+
+        private volatile JedisCluster client = getCluster();  // 当前遍历的集群
+
+        private volatile Exception lastError;  // 最近一次读取出错的异常
+
+        public ScanCommandTemplate(String key, int count) {
+            this.key = key;
+            this.redisKey = prefix + key;
+            this.params = new ScanParams().count(count);
+        }
+
+        public abstract ScanResult<T> scan(JedisCluster client, String redisKey, String cursor, ScanParams params);
+
+        public ScanIterator<T> run() {
+            logRead(prefix, key);
+            return new ScanIterator<>(this, redisClusterContext.getExecutorService());
+        }
+
+        @Override
+        public ScanResult<T> fetch(String cursor) {
+            ScanResult<T> result = doScan(client, cursor);
+            boolean missing = result != null && ScanParams.SCAN_POINTER_START.equals(cursor)
+                    && ScanParams.SCAN_POINTER_START.equals(result.getStringCursor()) && result.getResult().isEmpty();
+            if ((result == null || missing) && client == getCluster() && getStandbyCluster() != null) {
+                client = getStandbyCluster();
+                result = doScan(client, ScanParams.SCAN_POINTER_START);
+            }
+            if (result == null) {
+                throw new IllegalStateException("Scan redis failed! prefix=[" + prefix + "], key=[" + key + "]", lastError);
+            }
+            return result;
+        }
+
+        private ScanResult<T> doScan(JedisCluster client, String cursor) {
+            if (client == null || !isAvailable(client, ClusterSlot.getSlot(redisKey))) {
+                return null;
+            }
+            long start = System.nanoTime();
+            try {
+                ScanResult<T> result = scan(client, redisKey, cursor, params);
+                logOperation(OperationType.READ, client, redisKey, start, payloadSize(result.getResult()), true);
+                return result;
+            } catch (Exception e) {
+                lastError = e;
+                logOperation(OperationType.READ, client, redisKey, start, 0, false);
+                logReadError(prefix, key, e);
+                return null;
+            }
+        }
+    }
+
     protected abstract class WriteCommandTemplate<T> {
 
         private String key;
@@ -67,22 +379,133 @@ public class RedisAccessorBase {
 
         public abstract T write(JedisCluster client, String redisKey, int seconds);
 
+        /**
+         * 返回与 write 等价的 pipeline 命令, 异步复制到备份集群时可按节点批量写入; 返回 null 时由复制线程直接调用 write.
+         */
+        public RedisCommand command(String redisKey, int seconds) {
+            return null;
+        }
+
+        /**
+         * 是否与主集群并发写备份集群, 适合耗时较长的批量写入. 开启异步写备份集群时不生效.
+         */
+        public boolean writeStandbyConcurrently() {
+            return false;
+        }
+
+        /**
+         * 是否为涉及多个 slot 的批量写入, 如 pipeline sync. 批量写入只检查集群级熔断器, 不按 key 所在 slot 检查和记录,
+         * 由 write 自行按节点检查和记录访问结果.
+         */
+        public boolean multiSlot() {
+            return false;
+        }
+
+        /**
+         * 写入成功后 key 的完整字符串值, 用于直接更新近端缓存; 返回 null 时只使近端缓存失效.
+         */
+        public String cacheValue() {
+            return null;
+        }
+
         public T run() {
             String redisKey = prefix + key;
             int seconds = adjustExpireTime(expireSeconds);
 
             logWrite(prefix, key, this.value);
+            long cacheVersion = nearCache != null ? nearCache.getVersion() : 0;
+            Future<?> standby = submitStandbyWrite(redisKey, seconds);
             T value = doWrite(getCluster(), redisKey, seconds);
-            doWrite(getStandbyCluster(), redisKey, seconds);
+            if (standby != null) {
+                waitStandbyWrite(standby);
+            } else {
+                writeStandby(redisKey, seconds);
+            }
+            if (negativeLookupCache != null) {
+                negativeLookupCache.invalidate(redisKey);
+            }
+            if (nearCache != null) {
+                updateNearCache(redisKey, seconds, value != null, cacheVersion);
+            }
             return value == null ? defaultValue : value;
         }
 
+        private void updateNearCache(String redisKey, int seconds, boolean succeeded, long cacheVersion) {
+            String cacheValue = cacheValue();
+            // 开启 CLIENT TRACKING 时服务端随后会发送本次写入的失效通知, 无需更新缓存
+            if (succeeded && cacheValue != null && !getConfig().isNearCacheTracking()) {
+                long ttlMillis = Math.min(getConfig().getNearCacheTtlMillis(), seconds * 1000L);
+                nearCache.replace(redisKey, null, cacheValue, ttlMillis, cacheVersion);
+            } else {
+                nearCache.invalidate(redisKey);
+            }
+        }
+
+        private Future<?> submitStandbyWrite(final String redisKey, final int seconds) {
+            ExecutorService executorService = redisClusterContext.getExecutorService();
+            if (!writeStandbyConcurrently() || executorService == null || getStandbyCluster() == null
+                    || redisClusterContext.getStandbyReplicator() != null) {
+                return null;
+            }
+            return executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    doWrite(getStandbyCluster(), redisKey, seconds);
+                }
+            });
+        }
+
+        private void waitStandbyWrite(Future<?> standby) {
+            try {
+                standby.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logWriteError(prefix, key, e);
+            }
+        }
+
+        private void writeStandby(final String redisKey, final int seconds) {
+            StandbyReplicator replicator = redisClusterContext.getStandbyReplicator();
+            if (replicator == null) {
+                doWrite(getStandbyCluster(), redisKey, seconds);
+                return;
+            }
+
+            RedisCommand command = command(redisKey, seconds);
+            if (command != null) {
+                replicator.replicate(prefix, key, command);
+            } else {
+                replicator.replicate(prefix, key, new Runnable() {
+                    @Override
+                    public void run() {
+                        doWrite(getStandbyCluster(), redisKey, seconds);
+                    }
+                });
+            }
+        }
+
         private T doWrite(JedisCluster client, String redisKey, int seconds) {
-            if (client != null) {
+            if (client != null && multiSlot()) {
+                if (!isAvailable(client)) {
+                    return null;
+                }
                 try {
                     return write(client, redisKey, seconds);
                 } catch (Exception e) {
                     logWriteError(prefix, key, e);
+                    return null;
+                }
+            }
+            if (client != null && isAvailable(client, ClusterSlot.getSlot(redisKey))) {
+                long start = System.nanoTime();
+                try {
+                    T result = write(client, redisKey, seconds);
+                    logOperation(OperationType.WRITE, client, redisKey, start, payloadSize(value), true);
+                    return result;
+                } catch (Exception e) {
+                    logOperation(OperationType.WRITE, client, redisKey, start, 0, false);
+                    logWriteError(prefix, key, e);
                 }
             }
             return null;
@@ -104,6 +527,55 @@ public class RedisAccessorBase {
     protected RedisAccessorBase(String prefix, RedisClusterContext redisClusterContext) {
         this.prefix = prefix;
         this.redisClusterContext = redisClusterContext;
+        this.readLatencyTracker = new LatencyTracker(getConfig().getHedgedReadPercentile());
+        this.valueCodec = getValueCodec(prefix);
+        if (getConfig().isCoalesceReads()) {
+            this.singleFlight = new SingleFlight();
+        }
+        if (getConfig().getNegativeCacheTtlMillis() > 0) {
+            this.negativeLookupCache = new NegativeLookupCache(getConfig().getNegativeCacheSize(), getConfig().getNegativeCacheTtlMillis());
+        }
+        if (getConfig().getNearCacheSize() > 0 && usesNearCache()) {
+            this.nearCache = new NearCache(getConfig().getNearCacheSize());
+            if (getConfig().isNearCacheTracking() && redisClusterContext.getClientTracking() != null) {
+                redisClusterContext.getClientTracking().register(prefix, nearCache);
+            }
+        }
+    }
+
+    /**
+     * 批量读取, 结果按 keys 的顺序返回. 先并发读主集群各节点, 不存在或读取失败的 key 再批量读一次备份集群.
+     */
+    protected <T> List<T> batchRead(List<String> keys, T defaultValue, BatchReadCommand<T> command) {
+        List<String> redisKeys = new ArrayList<>(keys.size());
+        List<Integer> indexes = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            logRead(prefix, key);
+            indexes.add(redisKeys.size());
+            redisKeys.add(prefix + key);
+        }
+
+        Object[] results = new Object[keys.size()];
+        if (getCluster() != null && isAvailable(getCluster())) {
+            new RedisBatchReader(getCluster(), redisClusterContext.getJedisPoolAccessor(getCluster()),
+                    redisClusterContext.getExecutorService(), prefix, redisClusterContext.getMonitor()).read(redisKeys, indexes, command, results);
+        }
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                missingIndexes.add(i);
+            }
+        }
+        if (!missingIndexes.isEmpty() && getStandbyCluster() != null && isAvailable(getStandbyCluster())) {
+            new RedisBatchReader(getStandbyCluster(), redisClusterContext.getJedisPoolAccessor(getStandbyCluster()),
+                    redisClusterContext.getExecutorService(), prefix, redisClusterContext.getMonitor()).read(redisKeys, missingIndexes, command, results);
+        }
+
+        List<T> values = new ArrayList<>(results.length);
+        for (Object result : results) {
+            values.add(result == null ? defaultValue : (T) result);
+        }
+        return values;
     }
 
     protected void logRead(String prefix, String key) {
@@ -134,10 +606,184 @@ public class RedisAccessorBase {
         }
     }
 
+    protected void logCoalescedRead(String prefix, String key, boolean shared) {
+        RedisEventListener listener = redisClusterContext.getEventListener();
+        if (listener != null) {
+            listener.onCoalescedRead(prefix, key, shared);
+        }
+    }
+
+    protected void logHedgedRead(String prefix, String key, boolean hedged, boolean standbyWon) {
+        RedisEventListener listener = redisClusterContext.getEventListener();
+        if (listener != null) {
+            listener.onHedgedRead(prefix, key, hedged, standbyWon);
+        }
+    }
+
+    /**
+     * 集群级熔断器是否关闭, 未开启熔断时总是返回 true.
+     */
+    protected boolean isAvailable(JedisCluster client) {
+        ClusterHealth health = redisClusterContext.getClusterHealth(client);
+        return health == null || health.allowRequest();
+    }
+
+    /**
+     * slot 所在的集群和节点是否均未熔断, 未开启熔断时总是返回 true.
+     */
+    protected boolean isAvailable(JedisCluster client, int slot) {
+        ClusterHealth health = redisClusterContext.getClusterHealth(client);
+        return health == null || health.allowRequest(slot);
+    }
+
+    private void logOperation(OperationType type, JedisCluster client, String redisKey, long startNanos, int bytes,
+                              boolean success) {
+        if (redisClusterContext.getEventListener() != null || redisClusterContext.getClusterHealth(client) != null) {
+            logOperation(type, client, ClusterSlot.getSlot(redisKey), startNanos, bytes, success);
+        }
+    }
+
+    protected void logOperation(OperationType type, JedisCluster client, byte[] redisKey, long startNanos, int bytes,
+                                boolean success) {
+        if (redisClusterContext.getEventListener() != null || redisClusterContext.getClusterHealth(client) != null) {
+            logOperation(type, client, ClusterSlot.getSlot(redisKey), startNanos, bytes, success);
+        }
+    }
+
+    private void logOperation(OperationType type, JedisCluster client, int slot, long startNanos, int bytes,
+                              boolean success) {
+        long nanos = System.nanoTime() - startNanos;
+        boolean primary = client == getCluster();
+        JedisPoolAccessor jedisPoolAccessor = primary ? redisClusterContext.getJedisPoolAccessor()
+                : redisClusterContext.getStandbyJedisPoolAccessor();
+        ClusterNode node = jedisPoolAccessor != null ? jedisPoolAccessor.getNode(slot) : null;
+        String nodeName = node != null ? node.getName() : null;
+        RedisEventListener listener = redisClusterContext.getEventListener();
+        if (listener != null) {
+            listener.onOperation(type, prefix, primary ? ClusterRole.PRIMARY : ClusterRole.STANDBY, nodeName, nanos, bytes, success);
+        }
+        ClusterHealth health = redisClusterContext.getClusterHealth(client);
+        if (health != null) {
+            health.record(nodeName, nanos, success);
+        }
+    }
+
+    private void logReplicaOperation(JedisCluster client, String replica, long startNanos, int bytes, boolean success) {
+        RedisEventListener listener = redisClusterContext.getEventListener();
+        if (listener != null) {
+            listener.onOperation(OperationType.READ, prefix, client == getCluster() ? ClusterRole.PRIMARY : ClusterRole.STANDBY,
+                    replica, System.nanoTime() - startNanos, bytes, success);
+        }
+    }
+
+    private static int payloadSize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        int size = 0;
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += payloadSize(entry.getKey()) + payloadSize(entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                size += payloadSize(element);
+            }
+        } else if (value instanceof Map.Entry) {
+            size = payloadSize(((Map.Entry<?, ?>) value).getKey()) + payloadSize(((Map.Entry<?, ?>) value).getValue());
+        }
+        return size;
+    }
+
+    /**
+     * 返回本访问对象的 ValueCodec, 未开启编码时为 null. 开启编码时字符串 value 通过二进制命令读写.
+     */
+    protected ValueCodec getValueCodec() {
+        return valueCodec;
+    }
+
+    /**
+     * 返回指定前缀的 ValueCodec, RedisMonitor 实现了 RedisEventListener 时编解码的长度和耗时按该前缀上报.
+     */
+    protected ValueCodec getValueCodec(String prefix) {
+        ValueCodec codec = getConfig().getValueCodec() != null ? getConfig().getValueCodec() : redisClusterContext.getValueCodec();
+        if (codec != null && redisClusterContext.getEventListener() != null) {
+            codec = new MonitoredValueCodec(codec, prefix, redisClusterContext.getEventListener());
+        }
+        return codec;
+    }
+
+    protected byte[] encodeValue(String value) {
+        return value == null ? null : valueCodec.encode(SafeEncoder.encode(value));
+    }
+
+    protected String decodeValue(byte[] value) {
+        return value == null ? null : SafeEncoder.encode(valueCodec.decode(value));
+    }
+
     protected int adjustExpireTime(int seconds) {
         return Math.min(seconds, redisClusterContext.getMaxExpireTime());
     }
 
+    /**
+     * 组装 RedisScript 写命令脚本的参数: 过期秒数, 是否只在首次创建时设置过期时间, 以及命令参数.
+     */
+    protected String[] scriptArgs(int seconds, String... args) {
+        String[] scriptArgs = new String[args.length + 2];
+        scriptArgs[0] = String.valueOf(seconds);
+        scriptArgs[1] = getConfig().isExpireOnCreate() ? "1" : "0";
+        System.arraycopy(args, 0, scriptArgs, 2, args.length);
+        return scriptArgs;
+    }
+
+    /**
+     * 二进制参数版本的 scriptArgs.
+     */
+    protected byte[][] scriptArgs(int seconds, byte[]... args) {
+        byte[][] scriptArgs = new byte[args.length + 2][];
+        scriptArgs[0] = Protocol.toByteArray(seconds);
+        scriptArgs[1] = SafeEncoder.encode(getConfig().isExpireOnCreate() ? "1" : "0");
+        System.arraycopy(args, 0, scriptArgs, 2, args.length);
+        return scriptArgs;
+    }
+
+    protected String getPrefix() {
+        return prefix;
+    }
+
+    protected RedisClusterContext getRedisClusterContext() {
+        return redisClusterContext;
+    }
+
+    public NegativeLookupCache getNegativeLookupCache() {
+        return negativeLookupCache;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    protected RedisAccessorConfig getConfig() {
+        return redisClusterContext.getAccessorConfig();
+    }
+
+    /**
+     * 读取是否经过近端缓存, 不经过时不创建近端缓存, 也不订阅失效通知. 在构造函数中调用, 实现不能依赖子类的字段.
+     */
+    protected boolean usesNearCache() {
+        return false;
+    }
+
+    private long getHedgeDelayMicros() {
+        RedisAccessorConfig config = getConfig();
+        long percentileNanos = readLatencyTracker.getPercentileNanos();
+        if (percentileNanos < 0) {
+            return config.getHedgedReadMaxDelayMicros();
+        }
+        long delay = TimeUnit.NANOSECONDS.toMicros(percentileNanos);
+        return Math.max(config.getHedgedReadMinDelayMicros(), Math.min(delay, config.getHedgedReadMaxDelayMicros()));
+    }
+
     private JedisCluster getCluster() {
         return redisClusterContext.getJedisCluster();
     }
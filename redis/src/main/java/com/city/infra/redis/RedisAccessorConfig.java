@@ -0,0 +1,199 @@
+package com.city.infra.redis;
+
+import com.city.infra.redis.codec.ValueCodec;
+
+/**
+ * 按 key 前缀区分的 RedisAccessor 配置, 默认关闭所有可选特性.
+ */
+public class RedisAccessorConfig {
+
+    private HedgedReadMode hedgedReadMode = HedgedReadMode.NONE;
+
+    private double hedgedReadPercentile = 0.95;  // 以主集群读延迟的该分位数作为 DELAYED 模式的等待时间
+
+    private long hedgedReadMinDelayMicros = 1000;
+
+    private long hedgedReadMaxDelayMicros = 50 * 1000;
+
+    private boolean expireOnCreate = false;  // 为 true 时 hset/hmset/incrby/hincrby/sadd 只在 key 首次创建时设置过期时间
+
+    private long negativeCacheTtlMillis = 0;  // 大于 0 时开启未命中缓存, 主备集群均未命中的 key 在该时间内不再读备份集群
+
+    private int negativeCacheSize = 65536;
+
+    private long nearCacheSize = 0;  // 大于 0 时开启近端缓存, 最多缓存的值个数
+
+    private long nearCacheTtlMillis = 1000;
+
+    private boolean nearCacheTracking = true;  // 是否通过 CLIENT TRACKING 接收服务端的失效通知, 需要 Redis 6 以上
+
+    private ValueCodec valueCodec;  // 字符串 value 的编码 (如压缩), 为 null 时使用 RedisClusterFactory 的默认值
+
+    private ReadRouting readRouting = ReadRouting.MASTER;
+
+    private boolean coalesceReads = false;  // 为 true 时 get/hget 对同一 key 的并发请求只访问一次 Redis
+
+    private long replicaMaxLagBytes = 1024 * 1024;  // 复制偏移量落后主节点超过该值的副本不参与读路由
+
+    private int scanCount = 1000;  // sscan/hscan/zscan 每页读取的元素个数, 即 SCAN 命令的 COUNT
+
+    private long loadLeaseMillis = 3000;  // getOrLoad 加载租约的有效期, 未取得租约的请求最多等待该时间
+
+    private long loadPollMillis = 20;  // getOrLoad 未取得租约时轮询加载结果的间隔
+
+    private double earlyRefreshBeta = 1.0;  // getOrLoad 提前刷新的系数, 越大刷新越早, 为 0 时不提前刷新
+
+    private long earlyRefreshDeltaMillis = 100;  // 本地还没有加载耗时样本时使用的加载耗时估计
+
+    public HedgedReadMode getHedgedReadMode() {
+        return hedgedReadMode;
+    }
+
+    public void setHedgedReadMode(HedgedReadMode hedgedReadMode) {
+        this.hedgedReadMode = hedgedReadMode;
+    }
+
+    public double getHedgedReadPercentile() {
+        return hedgedReadPercentile;
+    }
+
+    public void setHedgedReadPercentile(double hedgedReadPercentile) {
+        this.hedgedReadPercentile = hedgedReadPercentile;
+    }
+
+    public long getHedgedReadMinDelayMicros() {
+        return hedgedReadMinDelayMicros;
+    }
+
+    public void setHedgedReadMinDelayMicros(long hedgedReadMinDelayMicros) {
+        this.hedgedReadMinDelayMicros = hedgedReadMinDelayMicros;
+    }
+
+    public long getHedgedReadMaxDelayMicros() {
+        return hedgedReadMaxDelayMicros;
+    }
+
+    public void setHedgedReadMaxDelayMicros(long hedgedReadMaxDelayMicros) {
+        this.hedgedReadMaxDelayMicros = hedgedReadMaxDelayMicros;
+    }
+
+    public boolean isExpireOnCreate() {
+        return expireOnCreate;
+    }
+
+    public void setExpireOnCreate(boolean expireOnCreate) {
+        this.expireOnCreate = expireOnCreate;
+    }
+
+    public long getNegativeCacheTtlMillis() {
+        return negativeCacheTtlMillis;
+    }
+
+    public void setNegativeCacheTtlMillis(long negativeCacheTtlMillis) {
+        this.negativeCacheTtlMillis = negativeCacheTtlMillis;
+    }
+
+    public int getNegativeCacheSize() {
+        return negativeCacheSize;
+    }
+
+    public void setNegativeCacheSize(int negativeCacheSize) {
+        this.negativeCacheSize = negativeCacheSize;
+    }
+
+    public long getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    public void setNearCacheSize(long nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    public long getNearCacheTtlMillis() {
+        return nearCacheTtlMillis;
+    }
+
+    public void setNearCacheTtlMillis(long nearCacheTtlMillis) {
+        this.nearCacheTtlMillis = nearCacheTtlMillis;
+    }
+
+    public boolean isNearCacheTracking() {
+        return nearCacheTracking;
+    }
+
+    public void setNearCacheTracking(boolean nearCacheTracking) {
+        this.nearCacheTracking = nearCacheTracking;
+    }
+
+    public ValueCodec getValueCodec() {
+        return valueCodec;
+    }
+
+    public void setValueCodec(ValueCodec valueCodec) {
+        this.valueCodec = valueCodec;
+    }
+
+    public boolean isCoalesceReads() {
+        return coalesceReads;
+    }
+
+    public void setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+    }
+
+    public ReadRouting getReadRouting() {
+        return readRouting;
+    }
+
+    public void setReadRouting(ReadRouting readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    public long getReplicaMaxLagBytes() {
+        return replicaMaxLagBytes;
+    }
+
+    public void setReplicaMaxLagBytes(long replicaMaxLagBytes) {
+        this.replicaMaxLagBytes = replicaMaxLagBytes;
+    }
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    public void setScanCount(int scanCount) {
+        this.scanCount = scanCount;
+    }
+
+    public long getLoadLeaseMillis() {
+        return loadLeaseMillis;
+    }
+
+    public void setLoadLeaseMillis(long loadLeaseMillis) {
+        this.loadLeaseMillis = loadLeaseMillis;
+    }
+
+    public long getLoadPollMillis() {
+        return loadPollMillis;
+    }
+
+    public void setLoadPollMillis(long loadPollMillis) {
+        this.loadPollMillis = loadPollMillis;
+    }
+
+    public double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    public long getEarlyRefreshDeltaMillis() {
+        return earlyRefreshDeltaMillis;
+    }
+
+    public void setEarlyRefreshDeltaMillis(long earlyRefreshDeltaMillis) {
+        this.earlyRefreshDeltaMillis = earlyRefreshDeltaMillis;
+    }
+}
@@ -1,7 +1,16 @@
 package com.city.infra.redis;
 
+import com.city.infra.redis.cache.ClientTracking;
+import com.city.infra.redis.codec.ValueCodec;
+import com.city.infra.redis.health.ClusterHealth;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import com.city.infra.redis.pipeline.RedisPipelineBatcher;
+import com.city.infra.redis.pipeline.StandbyReplicator;
+import com.city.infra.redis.routing.ReplicaReadRouter;
 import redis.clients.jedis.JedisCluster;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Created by sky on 2016/9/20.
  */
@@ -11,10 +20,38 @@ public class RedisClusterContext {
 
     private JedisCluster standyJedisCluster;
 
+    private JedisPoolAccessor jedisPoolAccessor;  // 主集群 slot 路由表
+
+    private JedisPoolAccessor standbyJedisPoolAccessor;  // 备份集群 slot 路由表
+
     private int maxExpireTime = 30 * 24 * 3600; // seconds
 
     private RedisMonitor monitor;
 
+    private StandbyReplicator standbyReplicator;  // 为 null 时同步写备份集群
+
+    private RedisAccessorConfig accessorConfig = new RedisAccessorConfig();
+
+    private ExecutorService executorService;  // 并发访问主备集群时使用的共享线程池
+
+    private ExecutorService refreshExecutorService;  // 提前刷新缓存使用的线程池, 饱和时拒绝而不是由调用线程执行
+
+    private RedisPipelineBatcher pipelineBatcher;  // 主集群自动 flush 的 pipeline 批处理器
+
+    private RedisPipelineBatcher standbyPipelineBatcher;  // 备份集群自动 flush 的 pipeline 批处理器
+
+    private ValueCodec valueCodec;  // RedisAccessorConfig 未设置 ValueCodec 时使用的默认编码
+
+    private ClusterHealth clusterHealth;  // 主集群熔断状态, 为 null 时不熔断
+
+    private ClusterHealth standbyClusterHealth;  // 备份集群熔断状态, 为 null 时不熔断
+
+    private ReplicaReadRouter readRouter;  // 主集群副本读路由
+
+    private ReplicaReadRouter standbyReadRouter;  // 备份集群副本读路由
+
+    private ClientTracking clientTracking;  // 主集群近端缓存失效通知
+
     public JedisCluster getJedisCluster() {
         return jedisCluster;
     }
@@ -31,6 +68,117 @@ public class RedisClusterContext {
         this.standyJedisCluster = standyJedisCluster;
     }
 
+    public JedisPoolAccessor getJedisPoolAccessor() {
+        return jedisPoolAccessor;
+    }
+
+    public void setJedisPoolAccessor(JedisPoolAccessor jedisPoolAccessor) {
+        this.jedisPoolAccessor = jedisPoolAccessor;
+    }
+
+    public JedisPoolAccessor getStandbyJedisPoolAccessor() {
+        return standbyJedisPoolAccessor;
+    }
+
+    public void setStandbyJedisPoolAccessor(JedisPoolAccessor standbyJedisPoolAccessor) {
+        this.standbyJedisPoolAccessor = standbyJedisPoolAccessor;
+    }
+
+    public ClusterHealth getClusterHealth() {
+        return clusterHealth;
+    }
+
+    public void setClusterHealth(ClusterHealth clusterHealth) {
+        this.clusterHealth = clusterHealth;
+    }
+
+    public ClusterHealth getStandbyClusterHealth() {
+        return standbyClusterHealth;
+    }
+
+    public void setStandbyClusterHealth(ClusterHealth standbyClusterHealth) {
+        this.standbyClusterHealth = standbyClusterHealth;
+    }
+
+    /**
+     * 返回集群客户端对应的熔断状态, 未开启熔断或不是本上下文中的集群时为 null.
+     */
+    public ClusterHealth getClusterHealth(JedisCluster client) {
+        if (client == jedisCluster) {
+            return clusterHealth;
+        }
+        if (client == standyJedisCluster) {
+            return standbyClusterHealth;
+        }
+        return null;
+    }
+
+    public ReplicaReadRouter getReadRouter() {
+        return readRouter;
+    }
+
+    public void setReadRouter(ReplicaReadRouter readRouter) {
+        this.readRouter = readRouter;
+    }
+
+    public ClientTracking getClientTracking() {
+        return clientTracking;
+    }
+
+    public void setClientTracking(ClientTracking clientTracking) {
+        this.clientTracking = clientTracking;
+    }
+
+    public ReplicaReadRouter getStandbyReadRouter() {
+        return standbyReadRouter;
+    }
+
+    public void setStandbyReadRouter(ReplicaReadRouter standbyReadRouter) {
+        this.standbyReadRouter = standbyReadRouter;
+    }
+
+    /**
+     * 返回集群客户端对应的副本读路由, 不是本上下文中的集群时为 null.
+     */
+    public ReplicaReadRouter getReadRouter(JedisCluster client) {
+        if (client == jedisCluster) {
+            return readRouter;
+        }
+        if (client == standyJedisCluster) {
+            return standbyReadRouter;
+        }
+        return null;
+    }
+
+    /**
+     * 返回集群客户端对应的 slot 路由表, 不是本上下文中的集群时在当前线程加载一个不在后台刷新的路由表.
+     */
+    public JedisPoolAccessor getJedisPoolAccessor(JedisCluster client) {
+        if (client == jedisCluster && jedisPoolAccessor != null) {
+            return jedisPoolAccessor;
+        }
+        if (client == standyJedisCluster && standbyJedisPoolAccessor != null) {
+            return standbyJedisPoolAccessor;
+        }
+        return JedisPoolAccessor.load(client);
+    }
+
+    public RedisPipelineBatcher getPipelineBatcher() {
+        return pipelineBatcher;
+    }
+
+    public void setPipelineBatcher(RedisPipelineBatcher pipelineBatcher) {
+        this.pipelineBatcher = pipelineBatcher;
+    }
+
+    public RedisPipelineBatcher getStandbyPipelineBatcher() {
+        return standbyPipelineBatcher;
+    }
+
+    public void setStandbyPipelineBatcher(RedisPipelineBatcher standbyPipelineBatcher) {
+        this.standbyPipelineBatcher = standbyPipelineBatcher;
+    }
+
     public int getMaxExpireTime() {
         return maxExpireTime;
     }
@@ -46,4 +194,51 @@ public class RedisClusterContext {
     public void setMonitor(RedisMonitor monitor) {
         this.monitor = monitor;
     }
+
+    /**
+     * monitor 同时实现 {@link RedisEventListener} 时返回它, 否则返回 null.
+     */
+    public RedisEventListener getEventListener() {
+        return monitor instanceof RedisEventListener ? (RedisEventListener) monitor : null;
+    }
+
+    public StandbyReplicator getStandbyReplicator() {
+        return standbyReplicator;
+    }
+
+    public void setStandbyReplicator(StandbyReplicator standbyReplicator) {
+        this.standbyReplicator = standbyReplicator;
+    }
+
+    public RedisAccessorConfig getAccessorConfig() {
+        return accessorConfig;
+    }
+
+    public void setAccessorConfig(RedisAccessorConfig accessorConfig) {
+        this.accessorConfig = accessorConfig;
+    }
+
+    public ValueCodec getValueCodec() {
+        return valueCodec;
+    }
+
+    public void setValueCodec(ValueCodec valueCodec) {
+        this.valueCodec = valueCodec;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public ExecutorService getRefreshExecutorService() {
+        return refreshExecutorService;
+    }
+
+    public void setRefreshExecutorService(ExecutorService refreshExecutorService) {
+        this.refreshExecutorService = refreshExecutorService;
+    }
 }
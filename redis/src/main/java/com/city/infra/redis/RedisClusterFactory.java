@@ -1,11 +1,41 @@
 package com.city.infra.redis;
 
+import com.city.infra.redis.cache.ClientTracking;
+import com.city.infra.redis.codec.ValueCodec;
+import com.city.infra.redis.health.CircuitBreakerConfig;
+import com.city.infra.redis.health.ClusterHealth;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.pipeline.ConcurrentPipelineAccessor;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
 import com.city.infra.redis.pipeline.RedisPipelineAccessor;
+import com.city.infra.redis.pipeline.RedisPipelineBatcher;
+import com.city.infra.redis.pipeline.StandbyReplicator;
+import com.city.infra.redis.pool.AdaptivePoolSizer;
+import com.city.infra.redis.pool.NodePool;
+import com.city.infra.redis.pool.PoolSizingConfig;
+import com.city.infra.redis.routing.ReplicaReadRouter;
+import com.city.infra.redis.scan.PrefixScanConfig;
+import com.city.infra.redis.scan.PrefixScanner;
+import com.city.infra.redis.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by sky on 2016/9/20.
@@ -16,18 +46,88 @@ public class RedisClusterFactory {
 
     private final static int CLUSTER_TIMEOUT = 2000;
 
+    private final static int DEFAULT_REPLICATION_QUEUE_SIZE = 100000;
+
+    private final static int MAX_EXECUTOR_THREADS = 64;
+
+    private final static int MAX_REFRESH_THREADS = 4;
+
+    private final static int REFRESH_QUEUE_SIZE = 256;
+
+    private final static int DEFAULT_PIPELINE_BATCH_SIZE = 1000;
+
+    private final static long DEFAULT_PIPELINE_BATCH_BYTES = 1024 * 1024;
+
+    private final static long DEFAULT_PIPELINE_LINGER_MICROS = 1000;
+
+    private final static int DEFAULT_PIPELINE_QUEUE_SIZE = 100000;
+
+    private final static long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisClusterFactory.class);
+
     private JedisPoolConfig poolConfig = null;
 
     private JedisCluster jedisCluster;
 
     private JedisCluster standyJedisCluster;
 
+    private JedisPoolAccessor jedisPoolAccessor;
+
+    private JedisPoolAccessor standbyJedisPoolAccessor;
+
     private Set<HostAndPort> jedisClusterNodes;
 
     private Set<HostAndPort> standbyJedisClusterNodes;
 
     private RedisMonitor redisMonitor = null;
 
+    private boolean asyncStandbyWrite = false;  // 是否异步写备份集群
+
+    private int standbyReplicationQueueSize = DEFAULT_REPLICATION_QUEUE_SIZE;
+
+    private StandbyReplicator standbyReplicator;
+
+    private ExecutorService executorService;
+
+    private boolean ownExecutorService;  // 线程池由本工厂创建, close 时关闭
+
+    private ExecutorService refreshExecutorService;  // 提前刷新缓存使用的有界线程池
+
+    private int pipelineBatchSize = DEFAULT_PIPELINE_BATCH_SIZE;  // 自动 flush 的命令数阈值
+
+    private long pipelineBatchBytes = DEFAULT_PIPELINE_BATCH_BYTES;  // 自动 flush 的字节数阈值
+
+    private long pipelineLingerMicros = DEFAULT_PIPELINE_LINGER_MICROS;  // 命令最长等待时间
+
+    private int pipelineQueueSize = DEFAULT_PIPELINE_QUEUE_SIZE;  // 批处理器最多排队的命令数, 超出时提交失败
+
+    private int clientPoolSize = CLIENT_POOLSIZE;  // 每个节点的最大连接数
+
+    private ValueCodec valueCodec;  // 所有访问对象默认的 value 编码, 为 null 时不编码
+
+    private CircuitBreakerConfig circuitBreakerConfig;  // 为 null 时不开启熔断
+
+    private ClusterHealth clusterHealth;
+
+    private ClusterHealth standbyClusterHealth;
+
+    private PoolSizingConfig poolSizingConfig;  // 为 null 时各节点使用固定的 clientPoolSize
+
+    private AdaptivePoolSizer poolSizer;
+
+    private AdaptivePoolSizer standbyPoolSizer;
+
+    private ReplicaReadRouter readRouter;
+
+    private ReplicaReadRouter standbyReadRouter;
+
+    private RedisPipelineBatcher pipelineBatcher;
+
+    private RedisPipelineBatcher standbyPipelineBatcher;
+
+    private ClientTracking clientTracking;
+
     public RedisClusterFactory() {
     }
 
@@ -35,10 +135,82 @@ public class RedisClusterFactory {
         return new RedisAccessor(prefix, getRedisClusterContext());
     }
 
+    public RedisAccessor createRedisAccessor(String prefix, RedisAccessorConfig config) {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setAccessorConfig(config);
+        return new RedisAccessor(prefix, context);
+    }
+
+    public BinaryRedisAccessor createBinaryRedisAccessor(String prefix) {
+        return new BinaryRedisAccessor(prefix, getRedisClusterContext());
+    }
+
+    public BinaryRedisAccessor createBinaryRedisAccessor(String prefix, RedisAccessorConfig config) {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setAccessorConfig(config);
+        return new BinaryRedisAccessor(prefix, context);
+    }
+
+    /**
+     * 创建按 Serializer 读写对象的访问方式, 内置的序列化实现见 Serializers.
+     */
+    public <T> ObjectRedisAccessor<T> createObjectRedisAccessor(String prefix, Serializer<T> serializer) {
+        return new ObjectRedisAccessor<>(prefix, getRedisClusterContext(), serializer);
+    }
+
+    public <T> ObjectRedisAccessor<T> createObjectRedisAccessor(String prefix, Serializer<T> serializer,
+                                                               RedisAccessorConfig config) {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setAccessorConfig(config);
+        return new ObjectRedisAccessor<>(prefix, context, serializer);
+    }
+
+    /**
+     * 按前缀遍历、删除和导出主备集群中的 key.
+     */
+    public PrefixScanner createPrefixScanner(String prefix) {
+        return createPrefixScanner(prefix, new PrefixScanConfig());
+    }
+
+    public PrefixScanner createPrefixScanner(String prefix, PrefixScanConfig config) {
+        return new PrefixScanner(prefix, getRedisClusterContext(), config);
+    }
+
     public RedisPipelineAccessor createRedisPipelineAccessor() {
         return new RedisPipelineAccessor(getRedisClusterContext());
     }
 
+    public RedisPipelineAccessor createRedisPipelineAccessor(RedisAccessorConfig config) {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setAccessorConfig(config);
+        return new RedisPipelineAccessor(context);
+    }
+
+    /**
+     * 创建非阻塞的 RedisAccessor, 与 ConcurrentPipelineAccessor 共享自动 flush 的批处理器.
+     */
+    public AsyncRedisAccessor createAsyncRedisAccessor(String prefix) {
+        return createAsyncRedisAccessor(prefix, new RedisAccessorConfig());
+    }
+
+    public AsyncRedisAccessor createAsyncRedisAccessor(String prefix, RedisAccessorConfig config) {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setAccessorConfig(config);
+        context.setPipelineBatcher(getPipelineBatcher());
+        context.setStandbyPipelineBatcher(getStandbyPipelineBatcher());
+        return new AsyncRedisAccessor(prefix, context);
+    }
+
+    /**
+     * 创建线程安全的 pipeline 访问方式, 所有实例共享同一组自动 flush 的批处理器.
+     */
+    public ConcurrentPipelineAccessor createConcurrentPipelineAccessor() {
+        RedisClusterContext context = getRedisClusterContext();
+        context.setPipelineBatcher(getPipelineBatcher());
+        context.setStandbyPipelineBatcher(getStandbyPipelineBatcher());
+        return new ConcurrentPipelineAccessor(context);
+    }
+
     public void setJedisClusterNodes(Set<HostAndPort> jedisClusterNodes) {
         this.jedisClusterNodes = jedisClusterNodes;
     }
@@ -51,11 +223,149 @@ public class RedisClusterFactory {
         this.redisMonitor = monitor;
     }
 
+    public void setAsyncStandbyWrite(boolean asyncStandbyWrite) {
+        this.asyncStandbyWrite = asyncStandbyWrite;
+    }
+
+    public void setStandbyReplicationQueueSize(int standbyReplicationQueueSize) {
+        this.standbyReplicationQueueSize = standbyReplicationQueueSize;
+    }
+
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    public void setPipelineBatchBytes(long pipelineBatchBytes) {
+        this.pipelineBatchBytes = pipelineBatchBytes;
+    }
+
+    public void setPipelineLingerMicros(long pipelineLingerMicros) {
+        this.pipelineLingerMicros = pipelineLingerMicros;
+    }
+
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    public void setClientPoolSize(int clientPoolSize) {
+        this.clientPoolSize = clientPoolSize;
+    }
+
+    /**
+     * 设置默认的 value 编码, 例如 new DeflateValueCodec(16 * 1024) 压缩超过 16KB 的 value. 对之后创建的访问对象生效.
+     */
+    public void setValueCodec(ValueCodec valueCodec) {
+        this.valueCodec = valueCodec;
+    }
+
+    /**
+     * 开启主备集群和节点的熔断, 失败率或慢调用比例过高时直接跳过该集群或节点, 由后台 PING 探测恢复. 对之后创建的访问对象生效.
+     */
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
+
+    /**
+     * 开启按节点自适应调整连接池大小, clientPoolSize 作为初始大小. 需在创建访问对象之前设置.
+     */
+    public void setPoolSizingConfig(PoolSizingConfig poolSizingConfig) {
+        this.poolSizingConfig = poolSizingConfig;
+    }
+
+    /**
+     * 返回集群各节点连接池的指标, key 为 host:port, 用于容量规划.
+     */
+    public Map<String, NodePool.Snapshot> getPoolSnapshots(ClusterRole role) {
+        AdaptivePoolSizer sizer = role == ClusterRole.PRIMARY ? poolSizer : standbyPoolSizer;
+        if (sizer != null) {
+            return sizer.getSnapshots();
+        }
+        JedisCluster cluster = role == ClusterRole.PRIMARY ? jedisCluster : standyJedisCluster;
+        if (cluster == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, NodePool.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, JedisPool> entry : cluster.getClusterNodes().entrySet()) {
+            snapshots.put(entry.getKey(), new NodePool(entry.getKey(), entry.getValue()).snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 停止后台线程并关闭主备集群的连接, 之后本工厂创建的访问对象不可再使用. 异步写备份集群和自动 flush 的批处理器
+     * 最多等待 1 秒写完队列中的命令. 通过 setExecutorService 设置的线程池由调用方关闭.
+     */
+    public synchronized void close() {
+        if (pipelineBatcher != null) {
+            pipelineBatcher.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        if (standbyPipelineBatcher != null) {
+            standbyPipelineBatcher.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        if (standbyReplicator != null) {
+            standbyReplicator.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        for (AdaptivePoolSizer sizer : new AdaptivePoolSizer[]{poolSizer, standbyPoolSizer}) {
+            if (sizer != null) {
+                sizer.close();
+            }
+        }
+        for (ClusterHealth health : new ClusterHealth[]{clusterHealth, standbyClusterHealth}) {
+            if (health != null) {
+                health.close();
+            }
+        }
+        for (ReplicaReadRouter router : new ReplicaReadRouter[]{readRouter, standbyReadRouter}) {
+            if (router != null) {
+                router.close();
+            }
+        }
+        if (clientTracking != null) {
+            clientTracking.close();
+        }
+        for (JedisPoolAccessor accessor : new JedisPoolAccessor[]{jedisPoolAccessor, standbyJedisPoolAccessor}) {
+            if (accessor != null) {
+                accessor.close();
+            }
+        }
+        for (JedisCluster cluster : new JedisCluster[]{jedisCluster, standyJedisCluster}) {
+            if (cluster != null) {
+                try {
+                    cluster.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Close redis cluster failure!", e);
+                }
+            }
+        }
+        if (ownExecutorService && executorService != null) {
+            executorService.shutdown();
+        }
+        if (refreshExecutorService != null) {
+            refreshExecutorService.shutdown();
+        }
+    }
+
     private RedisClusterContext getRedisClusterContext() {
         RedisClusterContext context = new RedisClusterContext();
         context.setJedisCluster(getCluster());
         context.setStandyJedisCluster(getStandyCluster());
+        context.setJedisPoolAccessor(getJedisPoolAccessor());
+        context.setStandbyJedisPoolAccessor(getStandbyJedisPoolAccessor());
         context.setMonitor(getRedisMonitor());
+        context.setStandbyReplicator(getStandbyReplicator());
+        context.setExecutorService(getExecutorService());
+        context.setRefreshExecutorService(getRefreshExecutorService());
+        context.setValueCodec(valueCodec);
+        context.setClusterHealth(getClusterHealth());
+        context.setStandbyClusterHealth(getStandbyClusterHealth());
+        context.setReadRouter(getReadRouter());
+        context.setStandbyReadRouter(getStandbyReadRouter());
+        context.setClientTracking(getClientTracking());
+        startPoolSizers();
         return context;
     }
 
@@ -70,7 +380,17 @@ public class RedisClusterFactory {
         return jedisCluster;
     }
 
+    /**
+     * 是否配置了备份集群. 未配置时只访问主集群, 备份集群相关的组件均为 null.
+     */
+    private boolean hasStandby() {
+        return standbyJedisClusterNodes != null && !standbyJedisClusterNodes.isEmpty();
+    }
+
     private JedisCluster getStandyCluster() {
+        if (!hasStandby()) {
+            return null;
+        }
         if (null == standyJedisCluster) {
             synchronized (this) {
                 if (null == standyJedisCluster) {
@@ -81,10 +401,211 @@ public class RedisClusterFactory {
         return standyJedisCluster;
     }
 
+    private JedisPoolAccessor getJedisPoolAccessor() {
+        if (null == jedisPoolAccessor) {
+            synchronized (this) {
+                if (null == jedisPoolAccessor) {
+                    jedisPoolAccessor = new JedisPoolAccessor(getCluster());
+                }
+            }
+        }
+        return jedisPoolAccessor;
+    }
+
+    private JedisPoolAccessor getStandbyJedisPoolAccessor() {
+        if (!hasStandby()) {
+            return null;
+        }
+        if (null == standbyJedisPoolAccessor) {
+            synchronized (this) {
+                if (null == standbyJedisPoolAccessor) {
+                    standbyJedisPoolAccessor = new JedisPoolAccessor(getStandyCluster());
+                }
+            }
+        }
+        return standbyJedisPoolAccessor;
+    }
+
+    private StandbyReplicator getStandbyReplicator() {
+        if (!asyncStandbyWrite || !hasStandby()) {
+            return null;
+        }
+        if (null == standbyReplicator) {
+            synchronized (this) {
+                if (null == standbyReplicator) {
+                    standbyReplicator = new StandbyReplicator(getStandyCluster(), getStandbyJedisPoolAccessor(),
+                            standbyReplicationQueueSize, getRedisMonitor());
+                }
+            }
+        }
+        return standbyReplicator;
+    }
+
+    private ReplicaReadRouter getReadRouter() {
+        if (null == readRouter) {
+            synchronized (this) {
+                if (null == readRouter) {
+                    readRouter = new ReplicaReadRouter(getJedisPoolAccessor(), getJedisPoolConfig(), CLUSTER_TIMEOUT);
+                }
+            }
+        }
+        return readRouter;
+    }
+
+    private ClientTracking getClientTracking() {
+        if (null == clientTracking) {
+            synchronized (this) {
+                if (null == clientTracking) {
+                    clientTracking = new ClientTracking(getJedisPoolAccessor());
+                }
+            }
+        }
+        return clientTracking;
+    }
+
+    private ReplicaReadRouter getStandbyReadRouter() {
+        if (!hasStandby()) {
+            return null;
+        }
+        if (null == standbyReadRouter) {
+            synchronized (this) {
+                if (null == standbyReadRouter) {
+                    standbyReadRouter = new ReplicaReadRouter(getStandbyJedisPoolAccessor(), getJedisPoolConfig(), CLUSTER_TIMEOUT);
+                }
+            }
+        }
+        return standbyReadRouter;
+    }
+
+    private void startPoolSizers() {
+        if (poolSizingConfig == null || poolSizer != null) {
+            return;
+        }
+        synchronized (this) {
+            if (null == poolSizer) {
+                poolSizer = new AdaptivePoolSizer(ClusterRole.PRIMARY, getCluster(), poolSizingConfig, getEventListener());
+            }
+            if (null == standbyPoolSizer && hasStandby()) {
+                standbyPoolSizer = new AdaptivePoolSizer(ClusterRole.STANDBY, getStandyCluster(), poolSizingConfig,
+                        getEventListener());
+            }
+        }
+    }
+
+    private ClusterHealth getClusterHealth() {
+        if (circuitBreakerConfig == null) {
+            return null;
+        }
+        if (null == clusterHealth) {
+            synchronized (this) {
+                if (null == clusterHealth) {
+                    clusterHealth = new ClusterHealth(ClusterRole.PRIMARY, getJedisPoolAccessor(), circuitBreakerConfig,
+                            getEventListener());
+                }
+            }
+        }
+        return clusterHealth;
+    }
+
+    private ClusterHealth getStandbyClusterHealth() {
+        if (circuitBreakerConfig == null || !hasStandby()) {
+            return null;
+        }
+        if (null == standbyClusterHealth) {
+            synchronized (this) {
+                if (null == standbyClusterHealth) {
+                    standbyClusterHealth = new ClusterHealth(ClusterRole.STANDBY, getStandbyJedisPoolAccessor(),
+                            circuitBreakerConfig, getEventListener());
+                }
+            }
+        }
+        return standbyClusterHealth;
+    }
+
+    private RedisPipelineBatcher getPipelineBatcher() {
+        if (null == pipelineBatcher) {
+            synchronized (this) {
+                if (null == pipelineBatcher) {
+                    pipelineBatcher = new RedisPipelineBatcher(getCluster(), getJedisPoolAccessor(), getExecutorService(),
+                            getEventListener(), pipelineBatchSize, pipelineBatchBytes, pipelineLingerMicros, pipelineQueueSize);
+                }
+            }
+        }
+        return pipelineBatcher;
+    }
+
+    private RedisPipelineBatcher getStandbyPipelineBatcher() {
+        if (!hasStandby()) {
+            return null;
+        }
+        if (null == standbyPipelineBatcher) {
+            synchronized (this) {
+                if (null == standbyPipelineBatcher) {
+                    standbyPipelineBatcher = new RedisPipelineBatcher(getStandyCluster(), getStandbyJedisPoolAccessor(),
+                            getExecutorService(), getEventListener(), pipelineBatchSize, pipelineBatchBytes, pipelineLingerMicros,
+                            pipelineQueueSize);
+                }
+            }
+        }
+        return standbyPipelineBatcher;
+    }
+
+    private ExecutorService getExecutorService() {
+        if (null == executorService) {
+            synchronized (this) {
+                if (null == executorService) {
+                    // 线程池满时由调用线程执行, 退化为串行访问
+                    ownExecutorService = true;
+                    executorService = new ThreadPoolExecutor(0, MAX_EXECUTOR_THREADS, 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger index = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "redis-cluster-executor-" + index.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+        return executorService;
+    }
+
+    private ExecutorService getRefreshExecutorService() {
+        if (null == refreshExecutorService) {
+            synchronized (this) {
+                if (null == refreshExecutorService) {
+                    // 队列满时抛出 RejectedExecutionException 跳过本次刷新, 不占用请求线程
+                    refreshExecutorService = new ThreadPoolExecutor(MAX_REFRESH_THREADS, MAX_REFRESH_THREADS, 60L,
+                            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new ThreadFactory() {
+                        private final AtomicInteger index = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "redis-cluster-refresh-" + index.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.AbortPolicy());
+                    ((ThreadPoolExecutor) refreshExecutorService).allowCoreThreadTimeOut(true);
+                }
+            }
+        }
+        return refreshExecutorService;
+    }
+
     private JedisPoolConfig getJedisPoolConfig() {
         if(poolConfig == null) {
             poolConfig = new JedisPoolConfig();
-            poolConfig.setMaxTotal(CLIENT_POOLSIZE);
+            poolConfig.setMaxTotal(clientPoolSize);
+            if (poolSizingConfig != null) {
+                int initialSize = Math.max(poolSizingConfig.getMinTotal(), Math.min(clientPoolSize, poolSizingConfig.getMaxTotal()));
+                poolConfig.setMaxTotal(initialSize);
+                poolConfig.setMaxIdle(initialSize);
+                poolConfig.setMinIdle(poolSizingConfig.getMinIdle());
+            }
         }
         return poolConfig;
     }
@@ -101,4 +622,8 @@ public class RedisClusterFactory {
         return redisMonitor;
     }
 
+    private RedisEventListener getEventListener() {
+        return redisMonitor instanceof RedisEventListener ? (RedisEventListener) redisMonitor : null;
+    }
+
 }
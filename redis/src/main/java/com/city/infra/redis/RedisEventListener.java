@@ -0,0 +1,54 @@
+package com.city.infra.redis;
+
+import com.city.infra.redis.health.CircuitState;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.metrics.OperationType;
+
+/**
+ * 复制、流水线、熔断、连接池等组件的事件回调.
+ * 与 {@link RedisMonitor} 分开定义, 已有的 RedisMonitor 实现无需修改;
+ * 设置给 RedisClusterFactory 的 monitor 同时实现本接口时才会收到这些事件, 继承 {@link RedisMonitorBase} 即可.
+ */
+public interface RedisEventListener {
+
+    void onReplicationOverflow(String prefix, String key);
+
+    void onReplicationBacklog(int backlog);
+
+    void onHedgedRead(String prefix, String key, boolean hedged, boolean standbyWon);
+
+    /**
+     * 开启读请求合并时一次读取完成, shared 为 true 表示共享了其他进行中请求的结果, 没有访问 Redis.
+     */
+    void onCoalescedRead(String prefix, String key, boolean shared);
+
+    void onPipelineSync(String node, int commands, long nanos);
+
+    void onPipelineRedirect(int moved, int asked);
+
+    /**
+     * 一次单 key 访问完成, node 为 key 所在节点 (host:port), 路由表不可用时为 null; bytes 为写入值或读取结果的长度.
+     */
+    void onOperation(OperationType type, String prefix, ClusterRole cluster, String node, long nanos, int bytes, boolean success);
+
+    /**
+     * 开启 ValueCodec 时一次 value 编码完成, rawBytes 为原始长度, encodedBytes 为写入 Redis 的长度.
+     */
+    void onValueEncode(String prefix, int rawBytes, int encodedBytes, long nanos);
+
+    /**
+     * 开启 ValueCodec 时一次 value 解码完成, encodedBytes 为从 Redis 读到的长度, rawBytes 为解码后的长度.
+     */
+    void onValueDecode(String prefix, int encodedBytes, int rawBytes, long nanos);
+
+    /**
+     * 开启熔断时熔断器状态变化, node 为节点 (host:port), 集群级熔断器为 null.
+     */
+    void onCircuitStateChange(ClusterRole cluster, String node, CircuitState state);
+
+    /**
+     * 开启连接池自适应调整时一个节点的最大连接数被调整, node 为节点 (host:port).
+     */
+    void onPoolResize(ClusterRole cluster, String node, int maxTotal);
+
+}
@@ -1,19 +1,18 @@
 package com.city.infra.redis;
 
-import com.city.infra.redis.pipeline.RedisPipelineAccessor;
+import com.city.infra.redis.load.LoadDriver;
+import com.city.infra.redis.load.LoadOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.HostAndPort;
-
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Created by sky on 2016/9/20.
+ *
+ * Redis 集群压测工具, 参数见 LoadOptions.USAGE.
  */
 public class RedisMain {
 
-    public static class CustomMonitor extends RedisMonitorBase {
+    public static class CustomMonitor extends LoadDriver.ReadFailureMonitor {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(CustomMonitor.class);
 
@@ -21,50 +20,34 @@ public class RedisMain {
 
         @Override
         public void onWrite(String prefix, String key, String value) {
-            if (value.length() > MAX_VALUE_LEN) {
+            if (value != null && value.length() > MAX_VALUE_LEN) {
                 LOGGER.warn("Too large redis value! prefix=[{}], key=[{}], value=[{}]", prefix, key, value);
             }
         }
     }
 
-    public static RedisClusterFactory buildFactory() {
+    public static RedisClusterFactory buildFactory(LoadOptions options) {
         RedisClusterFactory clusterFactory = new RedisClusterFactory();
-
-        Set<HostAndPort> jedisClusterNodes = new HashSet<HostAndPort>();
-        jedisClusterNodes.add(new HostAndPort("10.100.1.1", 7639));
-        jedisClusterNodes.add(new HostAndPort("10.100.1.1", 7640));
-
-        Set<HostAndPort> standbyJedisClusterNodes = new HashSet<HostAndPort>();
-        standbyJedisClusterNodes.add(new HostAndPort("10.100.1.2", 7543));
-        standbyJedisClusterNodes.add(new HostAndPort("10.100.1.2", 7544));
-
-        clusterFactory.setJedisClusterNodes(jedisClusterNodes);  //  设置主集群
-        clusterFactory.setStandbyJedisClusterNodes(standbyJedisClusterNodes);  //  设置备份集群
+        clusterFactory.setJedisClusterNodes(options.getNodes());  //  设置主集群
+        if (!options.getStandbyNodes().isEmpty()) {
+            clusterFactory.setStandbyJedisClusterNodes(options.getStandbyNodes());  //  设置备份集群
+        }
+        clusterFactory.setClientPoolSize(options.getPoolSize());
         clusterFactory.setRedisMonitor(new CustomMonitor());
-
         return clusterFactory;
     }
 
-    public static void testRedisAccessor(RedisClusterFactory clusterFactory) {
-        RedisAccessor redisAccessor = clusterFactory.createRedisAccessor("accessor:");
-        redisAccessor.set("foo", "1", 3600);
-        String value = redisAccessor.get("foo", "0");
-        System.out.println(value);
-    }
-
-    public static void testRedisPipelineAccessor(RedisClusterFactory clusterFactory) {
-        RedisPipelineAccessor redisPipelineAccessor = clusterFactory.createRedisPipelineAccessor();
-        redisPipelineAccessor.set("pipe:", "foo", "1", 3600);
-        redisPipelineAccessor.set("pipe:", "bar", "2", 3600);
-        redisPipelineAccessor.sync();
-        RedisAccessor redisAccessor = clusterFactory.createRedisAccessor("pipe:");
-        String value = redisAccessor.get("foo", "0");
-        System.out.println(value);
-    }
-
-    public static void main(String[] args) {
-        RedisClusterFactory clusterFactory = buildFactory();
-        testRedisAccessor(clusterFactory);
-        testRedisPipelineAccessor(clusterFactory);
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        new LoadDriver(options, buildFactory(options), System.out).run();
+        System.exit(0);
     }
 }
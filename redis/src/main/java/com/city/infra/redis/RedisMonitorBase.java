@@ -1,12 +1,16 @@
 package com.city.infra.redis;
 
+import com.city.infra.redis.health.CircuitState;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.metrics.OperationType;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Created by sky on 2016/9/21.
  */
-public class RedisMonitorBase implements RedisMonitor {
+public class RedisMonitorBase implements RedisMonitor, RedisEventListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisMonitorBase.class);
 
@@ -29,4 +33,61 @@ public class RedisMonitorBase implements RedisMonitor {
     public void handleWriteError(String prefix, String key, Exception e) {
         LOGGER.warn("Write redis error. prefix=[{}], key=[{}], exception=[{}]", prefix, key, e);
     }
+
+    @Override
+    public void onReplicationOverflow(String prefix, String key) {
+        LOGGER.warn("Standby replication queue is full, drop write. prefix=[{}], key=[{}]", prefix, key);
+    }
+
+    @Override
+    public void onReplicationBacklog(int backlog) {
+        LOGGER.debug("Standby replication backlog=[{}]", backlog);
+    }
+
+    @Override
+    public void onHedgedRead(String prefix, String key, boolean hedged, boolean standbyWon) {
+        LOGGER.debug("Hedged read redis prefix=[{}], key=[{}], hedged=[{}], standbyWon=[{}]", prefix, key, hedged, standbyWon);
+    }
+
+    @Override
+    public void onCoalescedRead(String prefix, String key, boolean shared) {
+        LOGGER.debug("Coalesced read redis prefix=[{}], key=[{}], shared=[{}]", prefix, key, shared);
+    }
+
+    @Override
+    public void onPipelineSync(String node, int commands, long nanos) {
+        LOGGER.debug("Pipeline sync node=[{}], commands=[{}], nanos=[{}]", node, commands, nanos);
+    }
+
+    @Override
+    public void onPipelineRedirect(int moved, int asked) {
+        LOGGER.info("Pipeline commands redirected, moved=[{}], asked=[{}]", moved, asked);
+    }
+
+    @Override
+    public void onOperation(OperationType type, String prefix, ClusterRole cluster, String node, long nanos, int bytes,
+                            boolean success) {
+    }
+
+    @Override
+    public void onValueEncode(String prefix, int rawBytes, int encodedBytes, long nanos) {
+    }
+
+    @Override
+    public void onValueDecode(String prefix, int encodedBytes, int rawBytes, long nanos) {
+    }
+
+    @Override
+    public void onCircuitStateChange(ClusterRole cluster, String node, CircuitState state) {
+        if (state == CircuitState.OPEN) {
+            LOGGER.warn("Redis circuit opened, cluster=[{}], node=[{}]", cluster, node);
+        } else {
+            LOGGER.info("Redis circuit closed, cluster=[{}], node=[{}]", cluster, node);
+        }
+    }
+
+    @Override
+    public void onPoolResize(ClusterRole cluster, String node, int maxTotal) {
+        LOGGER.info("Redis pool resized, cluster=[{}], node=[{}], maxTotal=[{}]", cluster, node, maxTotal);
+    }
 }
@@ -0,0 +1,120 @@
+package com.city.infra.redis;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 单 key 的 Lua 脚本, 使用 EVALSHA 执行, 节点返回 NOSCRIPT 时先 SCRIPT LOAD 再重试.
+ *
+ * 写命令脚本约定 ARGV[1] 为过期秒数, ARGV[2] 为 "1" 时只在 key 没有过期时间 (即首次创建) 时设置过期时间,
+ * 其余参数从 ARGV[3] 开始, 写入与设置过期时间在服务端一次完成.
+ * 参数个数不定的命令按每次 1000 个参数分批调用, unpack 一次展开过多参数会超出 Lua 栈的限制 (约 8000 个).
+ */
+public class RedisScript {
+
+    private static final String EXPIRE = "if ARGV[2] == '0' or redis.call('TTL', KEYS[1]) == -1 then "
+            + "redis.call('EXPIRE', KEYS[1], ARGV[1]) end ";
+
+    public static final RedisScript HSET_EXPIRE = new RedisScript(
+            "redis.call('HSET', KEYS[1], ARGV[3], ARGV[4]) " + EXPIRE + "return 1");
+
+    // 批次大小为偶数, 保证 field 和 value 不会被拆到两次调用中
+    public static final RedisScript HMSET_EXPIRE = new RedisScript(
+            "for i = 3, #ARGV, 1000 do redis.call('HMSET', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV))) end "
+                    + EXPIRE + "return 1");
+
+    public static final RedisScript INCRBY_EXPIRE = new RedisScript(
+            "local value = redis.call('INCRBY', KEYS[1], ARGV[3]) " + EXPIRE + "return value");
+
+    public static final RedisScript HINCRBY_EXPIRE = new RedisScript(
+            "local value = redis.call('HINCRBY', KEYS[1], ARGV[3], ARGV[4]) " + EXPIRE + "return value");
+
+    public static final RedisScript SADD_EXPIRE = new RedisScript(
+            "local count = 0 for i = 3, #ARGV, 1000 do "
+                    + "count = count + redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV))) end "
+                    + EXPIRE + "return count");
+
+    /**
+     * 不遵循写命令约定: 一次返回 value 和剩余过期毫秒数, key 不存在时 value 为 nil.
+     */
+    public static final RedisScript GET_PTTL = new RedisScript(
+            "return {redis.call('GET', KEYS[1]), redis.call('PTTL', KEYS[1])}");
+
+    /**
+     * 不遵循写命令约定: value 等于 ARGV[1] 时删除 key, 用于释放自己持有的租约.
+     */
+    public static final RedisScript COMPARE_AND_DELETE = new RedisScript(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0");
+
+    private final String script;
+
+    private final String sha1;
+
+    private final byte[] scriptBytes;
+
+    private final byte[] sha1Bytes;
+
+    public RedisScript(String script) {
+        this.script = script;
+        this.sha1 = sha1Hex(script);
+        this.scriptBytes = SafeEncoder.encode(script);
+        this.sha1Bytes = SafeEncoder.encode(sha1);
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    public byte[] getSha1Bytes() {
+        return sha1Bytes;
+    }
+
+    public Object eval(JedisCluster client, String key, String... args) {
+        String[] params = new String[args.length + 1];
+        params[0] = key;
+        System.arraycopy(args, 0, params, 1, args.length);
+        try {
+            return client.evalsha(sha1, 1, params);
+        } catch (JedisNoScriptException e) {
+            client.scriptLoad(script, key);
+            return client.evalsha(sha1, 1, params);
+        }
+    }
+
+    /**
+     * 二进制 key 和参数的版本, 脚本和 SHA1 只在构造时编码一次.
+     */
+    public Object eval(JedisCluster client, byte[] key, byte[]... args) {
+        byte[][] params = new byte[args.length + 1][];
+        params[0] = key;
+        System.arraycopy(args, 0, params, 1, args.length);
+        try {
+            return client.evalsha(sha1Bytes, 1, params);
+        } catch (JedisNoScriptException e) {
+            client.scriptLoad(scriptBytes, key);
+            return client.evalsha(sha1Bytes, 1, params);
+        }
+    }
+
+    private static String sha1Hex(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(Charset.forName("UTF-8")));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Can not compute script sha1!", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.city.infra.redis.cache;
+
+import com.city.infra.redis.pipeline.ClusterNode;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个集群的近端缓存失效通知, 由 RedisClusterFactory 持有. 每个前缀一个 {@link ClientTrackingInvalidator},
+ * 同前缀的访问对象共用; 首次注册时启动后台线程, 每秒从路由表读取主节点列表并更新各 invalidator 跟踪的节点.
+ */
+public class ClientTracking {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientTracking.class);
+
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final JedisPoolAccessor jedisPoolAccessor;
+
+    private final ConcurrentMap<String, ClientTrackingInvalidator> invalidators = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refresher;
+
+    private boolean closed;
+
+    public ClientTracking(JedisPoolAccessor jedisPoolAccessor) {
+        this.jedisPoolAccessor = jedisPoolAccessor;
+    }
+
+    public synchronized void register(String prefix, NearCache nearCache) {
+        if (closed) {
+            return;
+        }
+        ClientTrackingInvalidator invalidator = invalidators.get(prefix);
+        if (invalidator == null) {
+            invalidator = new ClientTrackingInvalidator(prefix);
+            invalidators.put(prefix, invalidator);
+        }
+        invalidator.register(nearCache);
+        if (refresher == null) {
+            startRefresher();
+        }
+    }
+
+    public ClientTrackingInvalidator getInvalidator(String prefix) {
+        return invalidators.get(prefix);
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        for (ClientTrackingInvalidator invalidator : invalidators.values()) {
+            invalidator.close();
+        }
+    }
+
+    void refresh() {
+        List<HostAndPort> nodes = new ArrayList<>();
+        for (ClusterNode master : jedisPoolAccessor.getMasterNodes()) {
+            nodes.add(HostAndPort.parseString(master.getName()));
+        }
+        if (nodes.isEmpty()) {
+            return;  // 路由表尚未加载成功, 保持原有节点
+        }
+        for (ClientTrackingInvalidator invalidator : invalidators.values()) {
+            invalidator.updateNodes(nodes);
+        }
+    }
+
+    private void startRefresher() {
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "redis-tracking-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    LOGGER.warn("Refresh redis client tracking nodes failure!", e);
+                }
+            }
+        }, 0, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
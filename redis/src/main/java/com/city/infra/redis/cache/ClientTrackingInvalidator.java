@@ -0,0 +1,218 @@
+package com.city.infra.redis.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于 Redis 6 client-side caching 的近端缓存失效通知, 同一前缀的所有近端缓存共用一个实例.
+ *
+ * 对每个主节点建立两个连接: 订阅连接订阅 __redis__:invalidate 频道, 跟踪连接以 BCAST 模式开启 CLIENT TRACKING,
+ * 并把 key 前缀匹配的修改通知重定向到订阅连接. 连接断开期间无法收到通知, 因此每次(重新)建立连接时清空近端缓存.
+ * 节点列表由 {@link ClientTracking} 随集群拓扑更新.
+ */
+public class ClientTrackingInvalidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientTrackingInvalidator.class);
+
+    private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+
+    private static final long RECONNECT_INTERVAL_MILLIS = 1000;
+
+    private final String prefix;
+
+    private final List<NearCache> nearCaches = new CopyOnWriteArrayList<>();
+
+    private final Map<HostAndPort, Tracker> trackers = new HashMap<>();
+
+    private boolean closed;
+
+    private static class TrackingConnection extends Connection {
+
+        TrackingConnection(HostAndPort node) {
+            super(node.getHost(), node.getPort());
+        }
+
+        Object execute(Protocol.Command command, String... args) {
+            sendCommand(command, args);
+            return getOne();
+        }
+
+        void send(Protocol.Command command, String... args) {
+            sendCommand(command, args);
+            flush();
+        }
+    }
+
+    /**
+     * 一个节点的跟踪线程. 订阅连接阻塞读取通知, 停止时关闭连接使其退出.
+     */
+    private class Tracker implements Runnable {
+
+        final HostAndPort node;
+
+        final Thread worker;
+
+        volatile boolean running = true;
+
+        volatile TrackingConnection subscriber;
+
+        volatile TrackingConnection tracker;
+
+        Tracker(HostAndPort node) {
+            this.node = node;
+            this.worker = new Thread(this, "redis-tracking-" + node);
+            this.worker.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                subscriber = new TrackingConnection(node);
+                tracker = new TrackingConnection(node);
+                try {
+                    Long clientId = (Long) subscriber.execute(Protocol.Command.CLIENT, "ID");
+                    subscriber.send(Protocol.Command.SUBSCRIBE, INVALIDATE_CHANNEL);
+                    subscriber.setTimeoutInfinite();
+                    subscriber.getOne();  // 订阅确认
+                    tracker.execute(Protocol.Command.CLIENT, "TRACKING", "on", "REDIRECT", String.valueOf(clientId),
+                            "BCAST", "PREFIX", prefix);
+                    invalidateAll();
+
+                    while (running) {
+                        onMessage(subscriber.getOne());
+                    }
+                } catch (JedisDataException e) {
+                    // 服务端不支持 CLIENT TRACKING (Redis 6 以下), 近端缓存只依赖 TTL 与本进程写入失效
+                    LOGGER.warn("Redis client tracking is not supported! node=[{}], prefix=[{}]", node, prefix, e);
+                    return;
+                } catch (Exception e) {
+                    if (running) {
+                        LOGGER.warn("Redis client tracking failure! node=[{}], prefix=[{}]", node, prefix, e);
+                    }
+                } finally {
+                    closeConnections();
+                    invalidateAll();
+                }
+                sleepQuietly(RECONNECT_INTERVAL_MILLIS);
+            }
+        }
+
+        void stop() {
+            running = false;
+            worker.interrupt();
+            closeConnections();
+        }
+
+        private void closeConnections() {
+            TrackingConnection connection = subscriber;
+            if (connection != null) {
+                connection.close();
+            }
+            connection = tracker;
+            if (connection != null) {
+                connection.close();
+            }
+        }
+
+        private void sleepQuietly(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    public ClientTrackingInvalidator(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void register(NearCache nearCache) {
+        nearCaches.add(nearCache);
+    }
+
+    /**
+     * 更新跟踪的节点: 为新增节点启动跟踪线程, 停止已下线节点的跟踪线程. 节点变化期间可能漏掉通知, 因此同时清空近端缓存.
+     */
+    public synchronized void updateNodes(Collection<HostAndPort> nodes) {
+        if (closed) {
+            return;
+        }
+        Set<HostAndPort> current = new HashSet<>(nodes);
+        if (current.equals(trackers.keySet())) {
+            return;
+        }
+        for (HostAndPort node : new ArrayList<>(trackers.keySet())) {
+            if (!current.contains(node)) {
+                trackers.remove(node).stop();
+            }
+        }
+        for (HostAndPort node : current) {
+            if (!trackers.containsKey(node)) {
+                Tracker tracker = new Tracker(node);
+                trackers.put(node, tracker);
+                tracker.worker.start();
+            }
+        }
+        invalidateAll();
+    }
+
+    public synchronized Set<HostAndPort> getNodes() {
+        return new HashSet<>(trackers.keySet());
+    }
+
+    public synchronized void close() {
+        closed = true;
+        for (Tracker tracker : trackers.values()) {
+            tracker.stop();
+        }
+        trackers.clear();
+    }
+
+    private void onMessage(Object reply) {
+        if (!(reply instanceof List)) {
+            return;
+        }
+        List<?> message = (List<?>) reply;
+        if (message.size() < 3 || !"message".equals(SafeEncoder.encode((byte[]) message.get(0)))) {
+            return;
+        }
+        Object keys = message.get(2);
+        if (keys instanceof List) {
+            for (Object key : (List<?>) keys) {
+                String redisKey = SafeEncoder.encode((byte[]) key);
+                for (NearCache nearCache : nearCaches) {
+                    nearCache.invalidate(redisKey);
+                }
+            }
+        } else {
+            // 服务端执行 FLUSHALL/FLUSHDB 时通知内容为空
+            invalidateAll();
+        }
+    }
+
+    private void invalidateAll() {
+        for (NearCache nearCache : nearCaches) {
+            nearCache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.city.infra.redis.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * XFetch 概率提前刷新: 读取命中时, 若 delta * beta * -ln(rand) 不小于 key 的剩余过期时间则提前刷新.
+ * 刷新概率随剩余时间减少而增大, 热点 key 在过期前大概率已被某个请求刷新, 而不热的 key 几乎不会被提前刷新.
+ * delta 为加载耗时, 取本地加载耗时的指数移动平均, 没有样本时使用配置的估计值.
+ */
+public class EarlyRefresh {
+
+    private static final int EWMA_SHIFT = 3;  // 新样本权重 1/8
+
+    private final double beta;
+
+    private final AtomicLong deltaNanos;
+
+    private volatile boolean sampled;
+
+    public EarlyRefresh(double beta, long deltaMillis) {
+        this.beta = beta;
+        this.deltaNanos = new AtomicLong(deltaMillis * 1000000L);
+    }
+
+    /**
+     * 记录一次加载耗时.
+     */
+    public void recordLoad(long nanos) {
+        if (!sampled) {
+            sampled = true;
+            deltaNanos.set(nanos);
+            return;
+        }
+        long current;
+        do {
+            current = deltaNanos.get();
+        } while (!deltaNanos.compareAndSet(current, current + ((nanos - current) >> EWMA_SHIFT)));
+    }
+
+    public long getDeltaMillis() {
+        return deltaNanos.get() / 1000000L;
+    }
+
+    /**
+     * 剩余 ttlMillis 毫秒过期的 key 本次读取是否应提前刷新, ttlMillis 小于 0 (没有过期时间) 时不刷新.
+     */
+    public boolean shouldRefresh(long ttlMillis) {
+        return shouldRefresh(ttlMillis, ThreadLocalRandom.current().nextDouble());
+    }
+
+    boolean shouldRefresh(long ttlMillis, double random) {
+        if (beta <= 0 || ttlMillis < 0) {
+            return false;
+        }
+        // random 取值 [0, 1), 1 - random 取值 (0, 1], -ln 为非负数
+        double gapNanos = deltaNanos.get() * beta * -Math.log(1 - random);
+        return gapNanos >= ttlMillis * 1000000.0;
+    }
+}
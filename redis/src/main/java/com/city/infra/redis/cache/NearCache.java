@@ -0,0 +1,200 @@
+package com.city.infra.redis.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的 Redis 近端缓存, 按 key 分段加锁, 每段按 LRU 淘汰.
+ *
+ * 同一 key 的字符串值与各 hash field 值保存在同一个条目中, 每个值计 1 个权重, 使 key 失效时可一次移除其全部值.
+ * 每次失效都会递增版本号, 读取 Redis 前记录版本号, 写入缓存时版本号已变化则放弃写入,
+ * 避免失效消息先于读取结果到达时缓存旧值.
+ */
+public class NearCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private static class Value {
+        final Object value;
+        final long expireAt;
+
+        Value(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private class Segment extends LinkedHashMap<String, Map<String, Value>> {
+
+        private final long maxWeight;
+
+        private long weight;
+
+        Segment(long maxWeight) {
+            super(16, 0.75f, true);
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized Object get(String redisKey, String field) {
+            Map<String, Value> values = get(redisKey);
+            if (values == null) {
+                return null;
+            }
+            Value value = values.get(field);
+            if (value == null) {
+                return null;
+            }
+            if (value.expireAt <= System.currentTimeMillis()) {
+                values.remove(field);
+                weight--;
+                if (values.isEmpty()) {
+                    remove(redisKey);
+                }
+                return null;
+            }
+            return value.value;
+        }
+
+        synchronized void put(String redisKey, String field, Object value, long ttlMillis, long expectedVersion) {
+            if (expectedVersion != version.get()) {
+                return;
+            }
+            Map<String, Value> values = get(redisKey);
+            if (values == null) {
+                values = new HashMap<>(4);
+                put(redisKey, values);
+            }
+            if (values.put(field, new Value(value, System.currentTimeMillis() + ttlMillis)) == null) {
+                weight++;
+            }
+
+            Iterator<Map.Entry<String, Map<String, Value>>> iterator = entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                Map.Entry<String, Map<String, Value>> eldest = iterator.next();
+                if (eldest.getKey().equals(redisKey) && size() > 1) {
+                    continue;
+                }
+                int evicted = eldest.getValue().size();
+                iterator.remove();
+                weight -= evicted;
+                evictionCount.addAndGet(evicted);
+            }
+        }
+
+        synchronized void replace(String redisKey, String field, Object value, long ttlMillis, long expectedVersion) {
+            if (expectedVersion == version.get()) {
+                Map<String, Value> values = get(redisKey);
+                if (values != null) {
+                    weight -= values.size();
+                    values.clear();
+                }
+                put(redisKey, field, value, ttlMillis, expectedVersion);
+            } else {
+                invalidate(redisKey);
+            }
+        }
+
+        synchronized void invalidate(String redisKey) {
+            Map<String, Value> values = remove(redisKey);
+            if (values != null) {
+                weight -= values.size();
+                invalidationCount.incrementAndGet();
+            }
+        }
+
+        synchronized void invalidateAll() {
+            clear();
+            weight = 0;
+        }
+    }
+
+    public NearCache(long maxWeight) {
+        long segmentWeight = Math.max(1, maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentWeight);
+        }
+    }
+
+    /**
+     * 返回缓存的值, 未命中或已过期时返回 null. field 为 null 表示字符串类型的值.
+     */
+    public Object get(String redisKey, String field) {
+        Object value = segmentFor(redisKey).get(redisKey, field);
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * 读取 Redis 前调用, 返回的版本号用于 put 时判断期间是否发生过失效.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 缓存从 Redis 读取的值, 读取期间发生过失效时放弃写入.
+     */
+    public void put(String redisKey, String field, Object value, long ttlMillis, long expectedVersion) {
+        segmentFor(redisKey).put(redisKey, field, value, ttlMillis, expectedVersion);
+    }
+
+    /**
+     * 用本进程刚写入 Redis 的值替换 key 的全部缓存值; 写入期间发生过失效时只使 key 失效.
+     */
+    public void replace(String redisKey, String field, Object value, long ttlMillis, long expectedVersion) {
+        segmentFor(redisKey).replace(redisKey, field, value, ttlMillis, expectedVersion);
+    }
+
+    public void invalidate(String redisKey) {
+        version.incrementAndGet();
+        segmentFor(redisKey).invalidate(redisKey);
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.invalidateAll();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    private Segment segmentFor(String redisKey) {
+        int h = redisKey.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+}
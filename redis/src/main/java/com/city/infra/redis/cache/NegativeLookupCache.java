@@ -0,0 +1,129 @@
+package com.city.infra.redis.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录近期确认不存在的 key (及 hash field) 的有界缓存.
+ *
+ * 每个 key 按 hash 落到一个包含 WAYS 个槽位的桶中, 槽位只保存 32 位指纹与 32 位过期时间, 每条记录占 8 字节.
+ * 桶满时覆盖旧记录, 不会无限增长; 同一 key 的所有 field 落在同一个桶中, 写入 key 时清空整个桶即可使其全部失效.
+ * 指纹冲突会产生极小概率的误判, 因此只应用来跳过备份集群的回退读取, 不能代替主集群读取.
+ */
+public class NegativeLookupCache {
+
+    private static final int WAYS = 4;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray slots;
+
+    private final int bucketMask;
+
+    private final long ttlMillis;
+
+    private final long baseMillis = System.currentTimeMillis();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    public NegativeLookupCache(int maxEntries, long ttlMillis) {
+        int buckets = 1;
+        while (buckets * WAYS < maxEntries) {
+            buckets <<= 1;
+        }
+        this.slots = new AtomicLongArray(buckets * WAYS);
+        this.bucketMask = buckets - 1;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean contains(String redisKey, String field) {
+        long keyHash = hash(FNV_OFFSET_BASIS, redisKey);
+        int base = bucket(keyHash);
+        int fingerprint = fingerprint(keyHash, field);
+        int now = now();
+        for (int i = 0; i < WAYS; i++) {
+            long slot = slots.get(base + i);
+            if (fingerprintOf(slot) == fingerprint && expireOf(slot) - now > 0) {
+                hitCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(String redisKey, String field) {
+        long keyHash = hash(FNV_OFFSET_BASIS, redisKey);
+        int base = bucket(keyHash);
+        int fingerprint = fingerprint(keyHash, field);
+        int now = now();
+        long entry = ((long) fingerprint << 32) | ((now + ttlMillis) & 0xffffffffL);
+
+        int victim = base + (fingerprint & (WAYS - 1));
+        for (int i = 0; i < WAYS; i++) {
+            long slot = slots.get(base + i);
+            if (slot == 0 || fingerprintOf(slot) == fingerprint || expireOf(slot) - now <= 0) {
+                victim = base + i;
+                break;
+            }
+        }
+        slots.set(victim, entry);
+    }
+
+    /**
+     * 使 key 及其所有 field 的记录失效.
+     */
+    public void invalidate(String redisKey) {
+        int base = bucket(hash(FNV_OFFSET_BASIS, redisKey));
+        for (int i = 0; i < WAYS; i++) {
+            slots.set(base + i, 0);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    private int now() {
+        return (int) (System.currentTimeMillis() - baseMillis);
+    }
+
+    private int bucket(long keyHash) {
+        return ((int) mix(keyHash) & bucketMask) * WAYS;
+    }
+
+    private static int fingerprint(long keyHash, String field) {
+        long h = keyHash;
+        if (field != null) {
+            h = hash((h ^ 0xff) * FNV_PRIME, field);
+        }
+        int fingerprint = (int) (mix(h) >>> 32);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static int fingerprintOf(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static int expireOf(long slot) {
+        return (int) slot;
+    }
+
+    private static long hash(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
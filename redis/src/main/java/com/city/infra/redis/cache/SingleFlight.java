@@ -0,0 +1,102 @@
+package com.city.infra.redis.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 合并并发的相同读请求: 同一 key 同时只有一个调用 (leader) 访问 Redis, 其余调用等待并共享其结果.
+ * 进行中的调用保存在无锁的 ConcurrentHashMap 中, leader 完成时移除, 不会留下任何记录.
+ * 结果只在并发的调用之间共享, 完成之后发起的调用会重新读取, 不是缓存.
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<Object, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 加入 key 上进行中的调用, 没有时创建新调用并成为 leader. leader 必须调用 complete 或 fail.
+     * 是否为 leader 由本次 join 是否创建了调用决定, 与调用线程无关, 同一线程再次加入进行中的调用时是 follower.
+     */
+    public <T> Call<T> join(Object key) {
+        Flight<T> created = new Flight<>();
+        Flight<T> existing = (Flight<T>) flights.putIfAbsent(key, created);
+        return existing != null ? new Call<>(this, key, existing, false) : new Call<>(this, key, created, true);
+    }
+
+    /**
+     * 进行中的调用数.
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * 一次进行中的调用, 由 leader 和所有 follower 共享.
+     */
+    private static class Flight<T> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile T value;
+
+        private volatile RuntimeException error;
+    }
+
+    /**
+     * 一次 join 的结果, leader 通过它完成调用, follower 通过它等待结果.
+     */
+    public static class Call<T> {
+
+        private final SingleFlight owner;
+
+        private final Object key;
+
+        private final Flight<T> flight;
+
+        private final boolean leader;
+
+        Call(SingleFlight owner, Object key, Flight<T> flight, boolean leader) {
+            this.owner = owner;
+            this.key = key;
+            this.flight = flight;
+            this.leader = leader;
+        }
+
+        /**
+         * 本次 join 是否创建了调用, 即是否为负责读取的 leader.
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        public void complete(T value) {
+            flight.value = value;
+            finish();
+        }
+
+        public void fail(RuntimeException error) {
+            flight.error = error;
+            finish();
+        }
+
+        /**
+         * 等待 leader 的结果, leader 失败时抛出同一个异常.
+         */
+        public T await() throws InterruptedException {
+            flight.done.await();
+            if (flight.error != null) {
+                throw flight.error;
+            }
+            return flight.value;
+        }
+
+        private void finish() {
+            if (!leader) {
+                throw new IllegalStateException("Only the leader can finish a single flight call, key=[" + key + "]");
+            }
+            // 先移除再唤醒, 之后到达的调用会发起新的读取而不会拿到旧结果
+            owner.flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+}
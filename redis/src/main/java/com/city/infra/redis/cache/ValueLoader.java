@@ -0,0 +1,9 @@
+package com.city.infra.redis.cache;
+
+/**
+ * getOrLoad 未命中时加载 key 对应的值, 通常查询数据库. 返回 null 表示值不存在, 不写入 Redis.
+ */
+public interface ValueLoader<T> {
+
+    T load(String key);
+}
@@ -0,0 +1,182 @@
+package com.city.infra.redis.codec;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 超过阈值的 value 使用 Deflate 压缩, 压缩后的数据以 6 字节头开始: 魔数 0xC1, 算法 0x01, 4 字节原始长度.
+ * 0xC1 不会出现在合法 UTF-8 的首字节, 因此未压缩的字符串可以与压缩数据混合存储, 解码时按首字节区分.
+ * 不压缩的二进制 value 首字节恰好是 0xC1 时加 2 字节头: 魔数 0xC1, 算法 0x00 (原样存储), 避免被误当作压缩数据.
+ * Deflater, Inflater 和压缩缓冲区按线程复用, 避免每次压缩分配本地内存.
+ */
+public class DeflateValueCodec implements ValueCodec {
+
+    public static final byte MAGIC = (byte) 0xC1;
+
+    private static final byte STORED = 0x00;
+
+    private static final byte DEFLATE = 0x01;
+
+    private static final int STORED_HEADER_LENGTH = 2;
+
+    private static final int HEADER_LENGTH = 6;
+
+    private static final int MAX_VALUE_LENGTH = 512 * 1024 * 1024;  // Redis 字符串的最大长度
+
+    private static final int MAX_DEFLATE_RATIO = 1032;  // Deflate 的最大压缩比约为 1032:1
+
+    private static final int MAX_POOLED_BUFFER = 4 * 1024 * 1024;  // 超过该长度的缓冲区用完即丢弃
+
+    private final int threshold;
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+    public DeflateValueCodec(int threshold) {
+        this(threshold, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param threshold 小于该字节数的 value 不压缩
+     * @param level     Deflate 压缩级别, 1 到 9
+     */
+    public DeflateValueCodec(int threshold, final int level) {
+        this.threshold = threshold;
+        this.deflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(level, true);
+            }
+        };
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        if (value == null || value.length < threshold) {
+            return stored(value);
+        }
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffer(value.length);
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            // 压缩后不小于原始数据时放弃压缩, 缓冲区只比原始数据多留出头部, 写满即说明压缩无效
+            int length = HEADER_LENGTH;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished() || length >= value.length) {
+                return stored(value);
+            }
+            buffer[0] = MAGIC;
+            buffer[1] = DEFLATE;
+            writeInt(buffer, 2, value.length);
+            byte[] encoded = new byte[length];
+            System.arraycopy(buffer, 0, encoded, 0, length);
+            return encoded;
+        } finally {
+            deflater.reset();
+            release(buffer);
+        }
+    }
+
+    @Override
+    public byte[] decode(byte[] value) {
+        if (value == null || value.length < STORED_HEADER_LENGTH || value[0] != MAGIC) {
+            return value;
+        }
+        if (value[1] == STORED) {
+            byte[] decoded = new byte[value.length - STORED_HEADER_LENGTH];
+            System.arraycopy(value, STORED_HEADER_LENGTH, decoded, 0, decoded.length);
+            return decoded;
+        }
+        if (value.length < HEADER_LENGTH) {
+            return value;
+        }
+        if (value[1] != DEFLATE) {
+            throw new IllegalStateException("Unknown redis value compression = [" + value[1] + "]");
+        }
+        // 原始长度来自存储的数据, 超出 Deflate 可能的解压长度时视为损坏, 不按该长度分配内存
+        int rawLength = readInt(value, 2);
+        if (rawLength < 0 || rawLength > MAX_VALUE_LENGTH
+                || rawLength > (long) (value.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO) {
+            throw new IllegalStateException("Corrupted compressed redis value, invalid length = [" + rawLength + "]");
+        }
+        byte[] decoded = new byte[rawLength];
+        Inflater inflater = inflaters.get();
+        try {
+            inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+            int length = 0;
+            while (length < decoded.length) {
+                int n = inflater.inflate(decoded, length, decoded.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != decoded.length) {
+                throw new IllegalStateException("Truncated compressed redis value, expect " + decoded.length + " bytes, got " + length);
+            }
+            return decoded;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed redis value!", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 原样存储的 value, 首字节是魔数时加上原样存储的头.
+     */
+    private static byte[] stored(byte[] value) {
+        if (value == null || value.length == 0 || value[0] != MAGIC) {
+            return value;
+        }
+        byte[] encoded = new byte[value.length + STORED_HEADER_LENGTH];
+        encoded[0] = MAGIC;
+        encoded[1] = STORED;
+        System.arraycopy(value, 0, encoded, STORED_HEADER_LENGTH, value.length);
+        return encoded;
+    }
+
+    private byte[] buffer(int valueLength) {
+        byte[] buffer = buffers.get();
+        if (buffer == null || buffer.length < valueLength) {
+            return new byte[valueLength];
+        }
+        buffers.set(null);
+        return buffer;
+    }
+
+    private void release(byte[] buffer) {
+        byte[] pooled = buffers.get();
+        if (buffer.length <= MAX_POOLED_BUFFER && (pooled == null || pooled.length < buffer.length)) {
+            buffers.set(buffer);
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,41 @@
+package com.city.infra.redis.codec;
+
+import com.city.infra.redis.RedisEventListener;
+
+/**
+ * 把编解码的长度和耗时上报给 RedisEventListener 的 ValueCodec.
+ */
+public class MonitoredValueCodec implements ValueCodec {
+
+    private final ValueCodec codec;
+
+    private final String prefix;
+
+    private final RedisEventListener monitor;
+
+    public MonitoredValueCodec(ValueCodec codec, String prefix, RedisEventListener monitor) {
+        this.codec = codec;
+        this.prefix = prefix;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        long start = System.nanoTime();
+        byte[] encoded = codec.encode(value);
+        if (value != null) {
+            monitor.onValueEncode(prefix, value.length, encoded.length, System.nanoTime() - start);
+        }
+        return encoded;
+    }
+
+    @Override
+    public byte[] decode(byte[] value) {
+        long start = System.nanoTime();
+        byte[] decoded = codec.decode(value);
+        if (value != null) {
+            monitor.onValueDecode(prefix, value.length, decoded.length, System.nanoTime() - start);
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,12 @@
+package com.city.infra.redis.codec;
+
+/**
+ * value 写入 Redis 前的编码和读取后的解码, 例如压缩.
+ * decode 必须能够识别未经编码写入的数据并原样返回, 以便开启编码前写入的旧数据仍然可读.
+ */
+public interface ValueCodec {
+
+    byte[] encode(byte[] value);
+
+    byte[] decode(byte[] value);
+}
@@ -0,0 +1,110 @@
+package com.city.infra.redis.health;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于失败率的熔断器. 最近 windowSize 次调用中调用数达到 minimumCalls 且失败 (含慢调用) 比例达到阈值时进入 OPEN,
+ * OPEN 期间 allowRequest 返回 false, 不再访问; 恢复由 ClusterHealth 的后台探测调用 close 完成, 不使用真实请求试探.
+ * 按调用次数而不是时间统计, 单次调用耗时超过任意时间窗口时仍能熔断. 记录时只有原子操作, 不加锁.
+ */
+public class CircuitBreaker {
+
+    /**
+     * 状态变化回调.
+     */
+    public interface Listener {
+        void onStateChange(CircuitBreaker breaker, CircuitState state);
+    }
+
+    private static final int NONE = 0;
+
+    private static final int SUCCESS = 1;
+
+    private static final int FAILURE = 2;
+
+    private final String name;  // 节点 host:port, 集群级熔断器为 null
+
+    private final CircuitBreakerConfig config;
+
+    private final long slowCallNanos;
+
+    private final Listener listener;
+
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+
+    private final AtomicIntegerArray outcomes;  // 最近 windowSize 次调用结果的环形数组
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config, Listener listener) {
+        this.name = name;
+        this.config = config;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallMillis());
+        this.listener = listener;
+        this.outcomes = new AtomicIntegerArray(Math.max(config.getWindowSize(), config.getMinimumCalls()));
+    }
+
+    public boolean allowRequest() {
+        return state.get() == CircuitState.CLOSED;
+    }
+
+    public void record(long nanos, boolean success) {
+        if (state.get() != CircuitState.CLOSED) {
+            return;
+        }
+        int outcome = success && nanos < slowCallNanos ? SUCCESS : FAILURE;
+        int index = (int) (sequence.getAndIncrement() % outcomes.length());
+        int previous = outcomes.getAndSet(index, outcome);
+        int callCount = previous == NONE ? calls.incrementAndGet() : calls.get();
+        int failureCount = failures.get();
+        if (previous == FAILURE) {
+            failureCount = failures.decrementAndGet();
+        }
+        if (outcome == FAILURE) {
+            failureCount = failures.incrementAndGet();
+            if (callCount >= config.getMinimumCalls() && failureCount >= callCount * config.getFailureRateThreshold()) {
+                open();
+            }
+        }
+    }
+
+    public void open() {
+        transition(CircuitState.CLOSED, CircuitState.OPEN);
+    }
+
+    public void close() {
+        transition(CircuitState.OPEN, CircuitState.CLOSED);
+    }
+
+    public CircuitState getState() {
+        return state.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void transition(CircuitState from, CircuitState to) {
+        if (state.compareAndSet(from, to)) {
+            if (to == CircuitState.CLOSED) {
+                // 熔断期间的统计不再有意义, 关闭时从空窗口重新开始
+                for (int i = 0; i < outcomes.length(); i++) {
+                    outcomes.set(i, NONE);
+                }
+                calls.set(0);
+                failures.set(0);
+            }
+            if (listener != null) {
+                listener.onStateChange(this, to);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.city.infra.redis.health;
+
+/**
+ * 集群和节点熔断器的参数.
+ */
+public class CircuitBreakerConfig {
+
+    private double failureRateThreshold = 0.5;  // 窗口内失败 (含慢调用) 比例达到该值时熔断
+
+    private int minimumCalls = 20;  // 窗口内调用数少于该值时不熔断
+
+    private int windowSize = 100;  // 统计最近多少次调用
+
+    private long slowCallMillis = 1000;  // 超过该耗时的调用按失败计
+
+    private long probeIntervalMillis = 1000;  // 熔断后后台探测的间隔
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    public void setProbeIntervalMillis(long probeIntervalMillis) {
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+}
@@ -0,0 +1,9 @@
+package com.city.infra.redis.health;
+
+/**
+ * 熔断器状态.
+ */
+public enum CircuitState {
+    CLOSED,  // 正常访问
+    OPEN     // 失败率过高, 请求直接跳过, 由后台探测恢复
+}
@@ -0,0 +1,190 @@
+package com.city.infra.redis.health;
+
+import com.city.infra.redis.RedisEventListener;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.pipeline.ClusterNode;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个集群的健康状态, 包含集群级熔断器和按节点 (host:port) 的熔断器.
+ * 集群级熔断器打开时整个集群的访问直接跳过, 节点熔断器打开时只跳过该节点负责的 slot.
+ * 熔断后不再用真实请求试探, 由后台线程定期 PING: 节点响应后关闭其熔断器, 多数主节点响应后关闭集群级熔断器.
+ */
+public class ClusterHealth {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterHealth.class);
+
+    private final ClusterRole role;
+
+    private final JedisPoolAccessor jedisPoolAccessor;
+
+    private final CircuitBreakerConfig config;
+
+    private final RedisEventListener monitor;
+
+    private final CircuitBreaker clusterBreaker;
+
+    private final ConcurrentMap<String, CircuitBreaker> nodeBreakers = new ConcurrentHashMap<>();
+
+    private final CircuitBreaker.Listener listener = new CircuitBreaker.Listener() {
+        @Override
+        public void onStateChange(CircuitBreaker breaker, CircuitState state) {
+            if (monitor != null) {
+                monitor.onCircuitStateChange(role, breaker.getName(), state);
+            }
+        }
+    };
+
+    private final ScheduledExecutorService prober;
+
+    public ClusterHealth(ClusterRole role, JedisPoolAccessor jedisPoolAccessor, CircuitBreakerConfig config,
+                         RedisEventListener monitor) {
+        this.role = role;
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.config = config;
+        this.monitor = monitor;
+        this.clusterBreaker = new CircuitBreaker(null, config, listener);
+        this.prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "redis-" + ClusterHealth.this.role.name().toLowerCase() + "-health-prober");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    probe();
+                } catch (Exception e) {
+                    LOGGER.warn("Probe redis cluster failure! cluster=[{}]", ClusterHealth.this.role, e);
+                }
+            }
+        }, config.getProbeIntervalMillis(), config.getProbeIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 集群级熔断器是否关闭, 为 false 时不应访问该集群.
+     */
+    public boolean allowRequest() {
+        return clusterBreaker.allowRequest();
+    }
+
+    /**
+     * slot 所在的集群和节点是否均可访问. 集群级熔断器打开时不查询路由表, 避免访问不可用的集群.
+     */
+    public boolean allowRequest(int slot) {
+        if (!clusterBreaker.allowRequest()) {
+            return false;
+        }
+        if (nodeBreakers.isEmpty()) {
+            return true;
+        }
+        ClusterNode node = jedisPoolAccessor.getNode(slot);
+        CircuitBreaker breaker = node != null ? nodeBreakers.get(node.getName()) : null;
+        return breaker == null || breaker.allowRequest();
+    }
+
+    /**
+     * 记录一次访问结果, node 为路由表不可用时为 null.
+     */
+    public void record(String node, long nanos, boolean success) {
+        clusterBreaker.record(nanos, success);
+        if (node != null) {
+            getNodeBreaker(node).record(nanos, success);
+        }
+    }
+
+    public CircuitState getState() {
+        return clusterBreaker.getState();
+    }
+
+    public Map<String, CircuitState> getNodeStates() {
+        Map<String, CircuitState> states = new HashMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : nodeBreakers.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().getState());
+        }
+        return states;
+    }
+
+    public ClusterRole getRole() {
+        return role;
+    }
+
+    public void close() {
+        prober.shutdownNow();
+    }
+
+    void probe() {
+        for (CircuitBreaker breaker : nodeBreakers.values()) {
+            if (breaker.getState() == CircuitState.OPEN && ping(breaker.getName())) {
+                breaker.close();
+            }
+        }
+        if (clusterBreaker.getState() != CircuitState.OPEN) {
+            return;
+        }
+
+        Collection<ClusterNode> masterNodes = jedisPoolAccessor.getMasterNodes();
+        int alive = 0;
+        for (ClusterNode node : masterNodes) {
+            if (ping(node.getPool())) {
+                alive++;
+            } else {
+                getNodeBreaker(node.getName()).open();
+            }
+        }
+        if (alive > 0 && alive * 2 > masterNodes.size()) {
+            clusterBreaker.close();
+        }
+    }
+
+    private boolean ping(String node) {
+        int index = node.lastIndexOf(':');
+        JedisPool pool = jedisPoolAccessor.getJedisPool(new HostAndPort(node.substring(0, index),
+                Integer.parseInt(node.substring(index + 1))));
+        return pool != null && ping(pool);
+    }
+
+    private static boolean ping(JedisPool pool) {
+        Jedis jedis = null;
+        try {
+            jedis = pool.getResource();
+            return "PONG".equals(jedis.ping());
+        } catch (Exception e) {
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    private CircuitBreaker getNodeBreaker(String node) {
+        CircuitBreaker breaker = nodeBreakers.get(node);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(node, config, listener);
+            breaker = nodeBreakers.putIfAbsent(node, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+}
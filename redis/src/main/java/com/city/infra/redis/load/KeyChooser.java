@@ -0,0 +1,66 @@
+package com.city.infra.redis.load;
+
+import java.util.Random;
+
+/**
+ * 按均匀分布或 Zipfian 分布从 [0, keyCount) 中选择 key 的序号.
+ * Zipfian 分布使用 Gray 等人的快速生成方法 (与 YCSB 相同), 初始化时计算一次 zeta, 之后每次选择为 O(1).
+ * 序号越小的 key 越热, theta 越大越偏斜.
+ */
+public class KeyChooser {
+
+    private final long keyCount;
+
+    private final boolean zipfian;
+
+    private final double theta;
+
+    private final double alpha;
+
+    private final double zetan;
+
+    private final double eta;
+
+    public KeyChooser(long keyCount, boolean zipfian, double theta) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("Key count must be positive!");
+        }
+        this.keyCount = keyCount;
+        this.zipfian = zipfian;
+        this.theta = theta;
+        if (zipfian) {
+            double zeta2 = zeta(2, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(keyCount, theta);
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetan);
+        } else {
+            this.alpha = 0;
+            this.zetan = 0;
+            this.eta = 0;
+        }
+    }
+
+    public long next(Random random) {
+        if (!zipfian) {
+            return (long) (random.nextDouble() * keyCount);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return Math.min(1, keyCount - 1);
+        }
+        long index = (long) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(index, keyCount - 1);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,267 @@
+package com.city.infra.redis.load;
+
+import com.city.infra.redis.RedisAccessor;
+import com.city.infra.redis.RedisClusterFactory;
+import com.city.infra.redis.RedisMonitorBase;
+import com.city.infra.redis.metrics.LatencyHistogram;
+import com.city.infra.redis.metrics.OperationType;
+import com.city.infra.redis.pipeline.RedisPipelineAccessor;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按 LoadOptions 对 Redis 集群施加读写负载, 每个报告间隔和结束时按操作类型输出吞吐和延迟分位数.
+ * 限速时每个线程按固定间隔预先安排每次操作的开始时间, 延迟从预定开始时间算起,
+ * 服务端变慢导致的排队时间也计入延迟, 避免 coordinated omission 低估长尾.
+ */
+public class LoadDriver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriver.class);
+
+    /**
+     * 当前线程本次读操作是否上报过读错误, 由 ReadFailureMonitor 标记.
+     */
+    private static final ThreadLocal<boolean[]> READ_FAILED = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    private final LoadOptions options;
+
+    private final RedisClusterFactory clusterFactory;
+
+    private final RedisAccessor redisAccessor;
+
+    private final KeyChooser keyChooser;
+
+    private final OperationType[] operations;
+
+    private final int[] cumulativeWeights;
+
+    private final Map<OperationType, Recorder> recorders = new EnumMap<>(OperationType.class);
+
+    private final PrintStream out;
+
+    public LoadDriver(LoadOptions options, RedisClusterFactory clusterFactory, PrintStream out) {
+        this.options = options;
+        this.clusterFactory = clusterFactory;
+        this.redisAccessor = clusterFactory.createRedisAccessor(options.getPrefix());
+        this.keyChooser = new KeyChooser(options.getKeyCount(), options.isZipfian(), options.getZipfTheta());
+        this.out = out;
+
+        List<OperationType> types = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<OperationType, Integer> entry : options.getMix().entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                types.add(entry.getKey());
+                weights.add(total);
+                recorders.put(entry.getKey(), new Recorder());
+            }
+        }
+        this.operations = types.toArray(new OperationType[types.size()]);
+        this.cumulativeWeights = new int[weights.size()];
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            cumulativeWeights[i] = weights.get(i);
+        }
+    }
+
+    public void run() throws InterruptedException {
+        if (options.isPreload()) {
+            preload();
+        }
+
+        long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        final long periodNanos = options.getRate() > 0 ? (long) (1e9 * options.getThreads() / options.getRate()) : 0;
+        List<Thread> workers = new ArrayList<>(options.getThreads());
+        for (int i = 0; i < options.getThreads(); i++) {
+            // 各线程的计划时间错开, 避免同时发出请求
+            final long firstStart = start + (periodNanos * i) / options.getThreads();
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(firstStart, end, periodNanos);
+                }
+            }, "redis-load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(options.getIntervalSeconds());
+        long nextReport = start + intervalNanos;
+        while (nextReport <= end) {
+            long now = System.nanoTime();
+            if (now < nextReport) {
+                TimeUnit.NANOSECONDS.sleep(nextReport - now);
+                continue;
+            }
+            report(String.format("%6ds", TimeUnit.NANOSECONDS.toSeconds(nextReport - start)), intervalNanos, false);
+            nextReport += intervalNanos;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(" total", System.nanoTime() - start, true);
+    }
+
+    private void work(long firstStart, long end, long periodNanos) {
+        Random random = ThreadLocalRandom.current();
+        String value = RandomStringUtils.randomAlphanumeric(options.getValueSize());
+        RedisPipelineAccessor pipelineAccessor = recorders.containsKey(OperationType.PIPELINE)
+                ? clusterFactory.createRedisPipelineAccessor() : null;
+        long scheduled = firstStart;
+        while (true) {
+            long intended;
+            if (periodNanos > 0) {
+                intended = scheduled;
+                scheduled += periodNanos;
+                if (intended >= end || System.nanoTime() >= end) {
+                    return;
+                }
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    return;
+                }
+            }
+
+            OperationType type = chooseOperation(random);
+            boolean success;
+            try {
+                success = execute(type, random, value, pipelineAccessor);
+            } catch (Exception e) {
+                LOGGER.warn("Redis load operation failure!", e);
+                success = false;
+            }
+            recorders.get(type).record(System.nanoTime() - intended, success);
+        }
+    }
+
+    private boolean execute(OperationType type, Random random, String value, RedisPipelineAccessor pipelineAccessor) {
+        switch (type) {
+            case READ:
+                boolean[] failed = READ_FAILED.get();
+                failed[0] = false;
+                redisAccessor.get(nextKey(random), null);
+                return !failed[0];
+            case WRITE:
+                return redisAccessor.set(nextKey(random), value, options.getExpireSeconds());
+            case PIPELINE:
+                for (int i = 0; i < options.getPipelineBatch(); i++) {
+                    pipelineAccessor.set(options.getPrefix(), nextKey(random), value, options.getExpireSeconds());
+                }
+                return pipelineAccessor.sync();
+            default:
+                throw new IllegalStateException("Unsupported operation " + type);
+        }
+    }
+
+    private void preload() {
+        out.println("Preloading " + options.getKeyCount() + " keys...");
+        String value = RandomStringUtils.randomAlphanumeric(options.getValueSize());
+        RedisPipelineAccessor pipelineAccessor = clusterFactory.createRedisPipelineAccessor();
+        for (long i = 0; i < options.getKeyCount(); i++) {
+            pipelineAccessor.set(options.getPrefix(), String.valueOf(i), value, options.getExpireSeconds());
+            if ((i + 1) % options.getPipelineBatch() == 0) {
+                pipelineAccessor.sync();
+            }
+        }
+        pipelineAccessor.sync();
+    }
+
+    private String nextKey(Random random) {
+        return String.valueOf(keyChooser.next(random));
+    }
+
+    private OperationType chooseOperation(Random random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void report(String label, long elapsedNanos, boolean total) {
+        for (Map.Entry<OperationType, Recorder> entry : recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+            LatencyHistogram.Snapshot snapshot = total ? recorder.total.snapshot() : recorder.rotate().snapshot();
+            long errors = total ? recorder.totalErrors.get() : recorder.intervalErrors.getAndSet(0);
+            double seconds = elapsedNanos / 1e9;
+            out.println(String.format("%s %-8s %10d ops %10.1f ops/s %6d err  mean %8.3f  p50 %8.3f  p99 %8.3f"
+                            + "  p99.9 %8.3f  max %8.3f ms",
+                    label, entry.getKey(), snapshot.getCount(), snapshot.getCount() / seconds, errors,
+                    snapshot.getMeanNanos() / 1e6, millis(snapshot.getPercentileNanos(0.5)),
+                    millis(snapshot.getPercentileNanos(0.99)), millis(snapshot.getPercentileNanos(0.999)),
+                    millis(snapshot.getMaxNanos())));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * 压测使用的 monitor, 读错误在调用线程上报时把本次读操作计为失败.
+     * 主集群出错后备份集群读到值也计为失败; 对冲读在后台线程出错时不计入.
+     */
+    public static class ReadFailureMonitor extends RedisMonitorBase {
+
+        @Override
+        public void handleReadError(String prefix, String key, Exception e) {
+            super.handleReadError(prefix, key, e);
+            READ_FAILED.get()[0] = true;
+        }
+    }
+
+    /**
+     * 一种操作的延迟记录, 报告时替换当前间隔的直方图.
+     */
+    private static class Recorder {
+
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        private volatile LatencyHistogram interval = new LatencyHistogram();
+
+        private final AtomicLong totalErrors = new AtomicLong();
+
+        private final AtomicLong intervalErrors = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            total.record(nanos);
+            interval.record(nanos);
+            if (!success) {
+                totalErrors.incrementAndGet();
+                intervalErrors.incrementAndGet();
+            }
+        }
+
+        LatencyHistogram rotate() {
+            LatencyHistogram previous = interval;
+            interval = new LatencyHistogram();
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.city.infra.redis.load;
+
+import com.city.infra.redis.metrics.OperationType;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 压测参数, 由 --name=value 形式的命令行参数解析得到.
+ */
+public class LoadOptions {
+
+    public static final String USAGE = "Usage: city-infr-redis.sh --nodes=host:port[,host:port...] [options]\n"
+            + "  --standby-nodes=host:port,...   备份集群节点, 默认不使用备份集群\n"
+            + "  --threads=16                    并发线程数\n"
+            + "  --duration=60                   压测时长 (秒)\n"
+            + "  --interval=5                    报告间隔 (秒)\n"
+            + "  --rate=0                        目标总吞吐 (次/秒), 0 表示不限速\n"
+            + "  --mix=read:80,write:20          操作比例, 可选 read, write, pipeline\n"
+            + "  --keys=100000                   key 空间大小\n"
+            + "  --distribution=uniform          key 分布: uniform 或 zipfian\n"
+            + "  --zipf-theta=0.99               zipfian 分布的偏斜参数, 取值 (0, 1)\n"
+            + "  --value-size=100                value 字节数\n"
+            + "  --pipeline-batch=100            pipeline 操作每批命令数\n"
+            + "  --expire=3600                   写入的过期时间 (秒)\n"
+            + "  --prefix=load:                  key 前缀\n"
+            + "  --pool-size=40                  每个节点的连接池大小\n"
+            + "  --preload=false                 压测前以 pipeline 写入全部 key";
+
+    private Set<HostAndPort> nodes = new LinkedHashSet<>();
+
+    private Set<HostAndPort> standbyNodes = new LinkedHashSet<>();
+
+    private int threads = 16;
+
+    private int durationSeconds = 60;
+
+    private int intervalSeconds = 5;
+
+    private double rate = 0;
+
+    private Map<OperationType, Integer> mix = new EnumMap<>(OperationType.class);
+
+    private long keyCount = 100000;
+
+    private boolean zipfian = false;
+
+    private double zipfTheta = 0.99;
+
+    private int valueSize = 100;
+
+    private int pipelineBatch = 100;
+
+    private int expireSeconds = 3600;
+
+    private String prefix = "load:";
+
+    private int poolSize = 40;
+
+    private boolean preload = false;
+
+    public LoadOptions() {
+        mix.put(OperationType.READ, 80);
+        mix.put(OperationType.WRITE, 20);
+    }
+
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Illegal argument [" + arg + "]");
+            }
+            String name = StringUtils.substringBefore(arg.substring(2), "=");
+            String value = StringUtils.substringAfter(arg, "=");
+            switch (name) {
+                case "nodes":
+                    options.nodes = parseNodes(value);
+                    break;
+                case "standby-nodes":
+                    options.standbyNodes = parseNodes(value);
+                    break;
+                case "threads":
+                    options.threads = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    options.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "interval":
+                    options.intervalSeconds = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    options.rate = Double.parseDouble(value);
+                    break;
+                case "mix":
+                    options.mix = parseMix(value);
+                    break;
+                case "keys":
+                    options.keyCount = Long.parseLong(value);
+                    break;
+                case "distribution":
+                    if (!"uniform".equals(value) && !"zipfian".equals(value)) {
+                        throw new IllegalArgumentException("Unknown key distribution [" + value + "]");
+                    }
+                    options.zipfian = "zipfian".equals(value);
+                    break;
+                case "zipf-theta":
+                    options.zipfTheta = Double.parseDouble(value);
+                    break;
+                case "value-size":
+                    options.valueSize = Integer.parseInt(value);
+                    break;
+                case "pipeline-batch":
+                    options.pipelineBatch = Integer.parseInt(value);
+                    break;
+                case "expire":
+                    options.expireSeconds = Integer.parseInt(value);
+                    break;
+                case "prefix":
+                    options.prefix = value;
+                    break;
+                case "pool-size":
+                    options.poolSize = Integer.parseInt(value);
+                    break;
+                case "preload":
+                    options.preload = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option [--" + name + "]");
+            }
+        }
+        if (options.nodes.isEmpty()) {
+            throw new IllegalArgumentException("Option --nodes is required");
+        }
+        if (options.threads <= 0 || options.durationSeconds <= 0 || options.intervalSeconds <= 0
+                || options.keyCount <= 0 || options.pipelineBatch <= 0 || options.valueSize < 0) {
+            throw new IllegalArgumentException("Thread count, duration, interval, keys and pipeline batch must be positive");
+        }
+        // KeyChooser 的 alpha = 1 / (1 - theta), theta 超出 (0, 1) 时生成的排名不再服从 zipfian 分布
+        if (!(options.zipfTheta > 0 && options.zipfTheta < 1)) {
+            throw new IllegalArgumentException("Option --zipf-theta must be between 0 and 1");
+        }
+        return options;
+    }
+
+    private static Set<HostAndPort> parseNodes(String value) {
+        Set<HostAndPort> nodes = new LinkedHashSet<>();
+        for (String node : StringUtils.split(value, ',')) {
+            String host = StringUtils.substringBeforeLast(node.trim(), ":");
+            String port = StringUtils.substringAfterLast(node.trim(), ":");
+            nodes.add(new HostAndPort(host, Integer.parseInt(port)));
+        }
+        return nodes;
+    }
+
+    private static Map<OperationType, Integer> parseMix(String value) {
+        Map<OperationType, Integer> mix = new EnumMap<>(OperationType.class);
+        for (String entry : StringUtils.split(value, ',')) {
+            OperationType type = OperationType.valueOf(StringUtils.substringBefore(entry, ":").trim().toUpperCase());
+            int weight = Integer.parseInt(StringUtils.substringAfter(entry, ":").trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + type);
+            }
+            mix.put(type, weight);
+        }
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Operation mix is empty");
+        }
+        return mix;
+    }
+
+    public Set<HostAndPort> getNodes() {
+        return nodes;
+    }
+
+    public Set<HostAndPort> getStandbyNodes() {
+        return standbyNodes;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public Map<OperationType, Integer> getMix() {
+        return mix;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public boolean isZipfian() {
+        return zipfian;
+    }
+
+    public double getZipfTheta() {
+        return zipfTheta;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public int getPipelineBatch() {
+        return pipelineBatch;
+    }
+
+    public int getExpireSeconds() {
+        return expireSeconds;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+}
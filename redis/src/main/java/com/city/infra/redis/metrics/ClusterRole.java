@@ -0,0 +1,9 @@
+package com.city.infra.redis.metrics;
+
+/**
+ * 被访问的集群.
+ */
+public enum ClusterRole {
+    PRIMARY,
+    STANDBY
+}
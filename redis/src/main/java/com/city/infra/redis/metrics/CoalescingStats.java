@@ -0,0 +1,51 @@
+package com.city.infra.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个前缀上读请求合并的次数统计.
+ */
+public class CoalescingStats {
+
+    private final AtomicLong reads = new AtomicLong();  // 经过合并的读请求数
+
+    private final AtomicLong shared = new AtomicLong();  // 共享其他请求结果, 没有访问 Redis 的读请求数
+
+    public void record(boolean shared) {
+        reads.incrementAndGet();
+        if (shared) {
+            this.shared.incrementAndGet();
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(reads.get(), shared.get());
+    }
+
+    public static class Snapshot {
+
+        private final long reads;
+
+        private final long shared;
+
+        Snapshot(long reads, long shared) {
+            this.reads = reads;
+            this.shared = shared;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getShared() {
+            return shared;
+        }
+
+        /**
+         * 被合并的读请求比例, 没有读请求时为 0.
+         */
+        public double getCoalescingRatio() {
+            return reads == 0 ? 0 : (double) shared / reads;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.city.infra.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个前缀上 value 编解码 (压缩) 的耗时和长度统计.
+ */
+public class CodecStats {
+
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    private final AtomicLong rawBytes = new AtomicLong();  // 编码前的总长度
+
+    private final AtomicLong encodedBytes = new AtomicLong();  // 编码后写入 Redis 的总长度
+
+    public void recordEncode(int raw, int encoded, long nanos) {
+        encodeLatency.record(nanos);
+        rawBytes.addAndGet(raw);
+        encodedBytes.addAndGet(encoded);
+    }
+
+    public void recordDecode(long nanos) {
+        decodeLatency.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(encodeLatency.snapshot(), decodeLatency.snapshot(), rawBytes.get(), encodedBytes.get());
+    }
+
+    public static class Snapshot {
+
+        private final LatencyHistogram.Snapshot encodeLatency;
+
+        private final LatencyHistogram.Snapshot decodeLatency;
+
+        private final long rawBytes;
+
+        private final long encodedBytes;
+
+        Snapshot(LatencyHistogram.Snapshot encodeLatency, LatencyHistogram.Snapshot decodeLatency, long rawBytes,
+                 long encodedBytes) {
+            this.encodeLatency = encodeLatency;
+            this.decodeLatency = decodeLatency;
+            this.rawBytes = rawBytes;
+            this.encodedBytes = encodedBytes;
+        }
+
+        public LatencyHistogram.Snapshot getEncodeLatency() {
+            return encodeLatency;
+        }
+
+        public LatencyHistogram.Snapshot getDecodeLatency() {
+            return decodeLatency;
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        public long getEncodedBytes() {
+            return encodedBytes;
+        }
+
+        /**
+         * 写入数据的压缩率, 编码后长度与原始长度之比, 没有写入时为 1.
+         */
+        public double getCompressionRatio() {
+            return rawBytes == 0 ? 1 : (double) encodedBytes / rawBytes;
+        }
+    }
+}
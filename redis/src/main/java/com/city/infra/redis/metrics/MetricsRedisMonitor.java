@@ -0,0 +1,141 @@
+package com.city.infra.redis.metrics;
+
+import com.city.infra.redis.RedisMonitorBase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 内置的指标采集 RedisMonitor, 按前缀、节点和集群分别统计延迟直方图、次数、字节数和错误数.
+ * 记录时无锁, 快照可以周期性读取并导出到监控系统. 其余事件沿用 RedisMonitorBase 的日志行为.
+ */
+public class MetricsRedisMonitor extends RedisMonitorBase {
+
+    private final ConcurrentMap<String, OperationStats> prefixStats = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, OperationStats> nodeStats = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CodecStats> codecStats = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CoalescingStats> coalescingStats = new ConcurrentHashMap<>();
+
+    private final OperationStats[] clusterStats = new OperationStats[ClusterRole.values().length];
+
+    public MetricsRedisMonitor() {
+        for (int i = 0; i < clusterStats.length; i++) {
+            clusterStats[i] = new OperationStats();
+        }
+    }
+
+    @Override
+    public void onOperation(OperationType type, String prefix, ClusterRole cluster, String node, long nanos, int bytes,
+                            boolean success) {
+        if (prefix != null) {
+            getStats(prefixStats, prefix).record(type, nanos, bytes, success);
+        }
+        if (node != null) {
+            getStats(nodeStats, node).record(type, nanos, bytes, success);
+        }
+        if (cluster != null) {
+            clusterStats[cluster.ordinal()].record(type, nanos, bytes, success);
+        }
+    }
+
+    @Override
+    public void onPipelineSync(String node, int commands, long nanos) {
+        if (node != null) {
+            getStats(nodeStats, node).record(OperationType.PIPELINE, nanos, 0, true);
+        }
+    }
+
+    @Override
+    public void onCoalescedRead(String prefix, String key, boolean shared) {
+        CoalescingStats stats = coalescingStats.get(prefix);
+        if (stats == null) {
+            CoalescingStats created = new CoalescingStats();
+            stats = coalescingStats.putIfAbsent(prefix, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        stats.record(shared);
+    }
+
+    @Override
+    public void onValueEncode(String prefix, int rawBytes, int encodedBytes, long nanos) {
+        getCodecStats(prefix).recordEncode(rawBytes, encodedBytes, nanos);
+    }
+
+    @Override
+    public void onValueDecode(String prefix, int encodedBytes, int rawBytes, long nanos) {
+        getCodecStats(prefix).recordDecode(nanos);
+    }
+
+    public Map<String, OperationStats.Snapshot> getPrefixSnapshots() {
+        return snapshot(prefixStats);
+    }
+
+    public Map<String, OperationStats.Snapshot> getNodeSnapshots() {
+        return snapshot(nodeStats);
+    }
+
+    public OperationStats.Snapshot getClusterSnapshot(ClusterRole cluster) {
+        return clusterStats[cluster.ordinal()].snapshot();
+    }
+
+    /**
+     * 按前缀统计的 value 编解码耗时和压缩率, 只包含开启了 ValueCodec 的前缀.
+     */
+    public Map<String, CodecStats.Snapshot> getCodecSnapshots() {
+        Map<String, CodecStats.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, CodecStats> entry : codecStats.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 按前缀统计的读请求合并比例, 只包含开启了 coalesceReads 的前缀.
+     */
+    public Map<String, CoalescingStats.Snapshot> getCoalescingSnapshots() {
+        Map<String, CoalescingStats.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, CoalescingStats> entry : coalescingStats.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    private CodecStats getCodecStats(String prefix) {
+        CodecStats result = codecStats.get(prefix);
+        if (result == null) {
+            CodecStats created = new CodecStats();
+            result = codecStats.putIfAbsent(prefix, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    private static OperationStats getStats(ConcurrentMap<String, OperationStats> stats, String name) {
+        OperationStats result = stats.get(name);
+        if (result == null) {
+            OperationStats created = new OperationStats();
+            result = stats.putIfAbsent(name, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, OperationStats.Snapshot> snapshot(Map<String, OperationStats> stats) {
+        Map<String, OperationStats.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+}
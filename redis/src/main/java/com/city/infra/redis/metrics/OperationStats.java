@@ -0,0 +1,77 @@
+package com.city.infra.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个前缀、节点或集群上按操作类型统计的延迟、次数、字节数和错误数.
+ */
+public class OperationStats {
+
+    private static final int TYPE_COUNT = OperationType.values().length;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[TYPE_COUNT];
+
+    private final AtomicLongArray bytes = new AtomicLongArray(TYPE_COUNT);
+
+    private final AtomicLongArray errors = new AtomicLongArray(TYPE_COUNT);
+
+    public OperationStats() {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(OperationType type, long nanos, int bytes, boolean success) {
+        int i = type.ordinal();
+        latencies[i].record(nanos);
+        if (bytes > 0) {
+            this.bytes.addAndGet(i, bytes);
+        }
+        if (!success) {
+            errors.incrementAndGet(i);
+        }
+    }
+
+    public Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] latencySnapshots = new LatencyHistogram.Snapshot[TYPE_COUNT];
+        long[] byteCounts = new long[TYPE_COUNT];
+        long[] errorCounts = new long[TYPE_COUNT];
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            latencySnapshots[i] = latencies[i].snapshot();
+            byteCounts[i] = bytes.get(i);
+            errorCounts[i] = errors.get(i);
+        }
+        return new Snapshot(latencySnapshots, byteCounts, errorCounts);
+    }
+
+    public static class Snapshot {
+
+        private final LatencyHistogram.Snapshot[] latencies;
+
+        private final long[] bytes;
+
+        private final long[] errors;
+
+        Snapshot(LatencyHistogram.Snapshot[] latencies, long[] bytes, long[] errors) {
+            this.latencies = latencies;
+            this.bytes = bytes;
+            this.errors = errors;
+        }
+
+        public LatencyHistogram.Snapshot getLatency(OperationType type) {
+            return latencies[type.ordinal()];
+        }
+
+        public long getCount(OperationType type) {
+            return latencies[type.ordinal()].getCount();
+        }
+
+        public long getBytes(OperationType type) {
+            return bytes[type.ordinal()];
+        }
+
+        public long getErrors(OperationType type) {
+            return errors[type.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.city.infra.redis.metrics;
+
+/**
+ * Redis 访问的操作类型.
+ */
+public enum OperationType {
+    READ,
+    WRITE,
+    PIPELINE   // 一个节点上一次 pipeline sync
+}
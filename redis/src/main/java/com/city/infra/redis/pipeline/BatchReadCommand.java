@@ -0,0 +1,28 @@
+package com.city.infra.redis.pipeline;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * 批量读取时对单个 key 执行的读命令.
+ */
+public abstract class BatchReadCommand<T> {
+
+    /**
+     * 在 key 所在节点的 pipeline 中执行读命令.
+     */
+    public abstract Response<T> read(Pipeline pipeline, String redisKey);
+
+    /**
+     * 无法确定 key 所在节点时, 通过集群客户端直接执行读命令.
+     */
+    public abstract T read(JedisCluster client, String redisKey);
+
+    /**
+     * 读取结果是否表示 key 不存在, 不存在的 key 会回退到备份集群读取.
+     */
+    public boolean isMissing(T value) {
+        return value == null;
+    }
+}
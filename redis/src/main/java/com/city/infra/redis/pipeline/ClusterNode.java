@@ -0,0 +1,45 @@
+package com.city.infra.redis.pipeline;
+
+import redis.clients.jedis.JedisPool;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 集群中的一个主节点, 路由表中每个 slot 指向其所属的 ClusterNode.
+ */
+public class ClusterNode {
+
+    private final String name;  // host:port
+
+    private final JedisPool pool;
+
+    private final List<String> replicas;  // CLUSTER SLOTS 返回的副本节点 host:port
+
+    public ClusterNode(String name, JedisPool pool) {
+        this(name, pool, Collections.<String>emptyList());
+    }
+
+    public ClusterNode(String name, JedisPool pool, List<String> replicas) {
+        this.name = name;
+        this.pool = pool;
+        this.replicas = replicas;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JedisPool getPool() {
+        return pool;
+    }
+
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
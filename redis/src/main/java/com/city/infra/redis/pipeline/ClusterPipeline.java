@@ -0,0 +1,24 @@
+package com.city.infra.redis.pipeline;
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * 集群节点上的 pipeline, 增加了 ASK 重定向需要的 ASKING 命令.
+ */
+public class ClusterPipeline extends Pipeline {
+
+    public ClusterPipeline(Jedis jedis) {
+        setClient(jedis.getClient());
+    }
+
+    /**
+     * 下一条命令在迁移中的 slot 的目标节点上执行.
+     */
+    public Response<String> asking() {
+        client.asking();
+        return getResponse(BuilderFactory.STRING);
+    }
+}
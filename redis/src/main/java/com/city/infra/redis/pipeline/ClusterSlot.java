@@ -0,0 +1,91 @@
+package com.city.infra.redis.pipeline;
+
+/**
+ * 计算 key 所在的 Redis 集群 slot, 与 Redis 服务端算法一致 (CRC16 XMODEM, 支持 hash tag).
+ * 直接按 UTF-8 编码遍历 String 中的字符, 不需要为 key 分配 byte[].
+ */
+public final class ClusterSlot {
+
+    public static final int SLOT_COUNT = 16384;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[i] = crc & 0xffff;
+        }
+    }
+
+    private ClusterSlot() {
+    }
+
+    public static int getSlot(String key) {
+        int start = 0;
+        int end = key.length();
+        int open = key.indexOf('{');
+        if (open >= 0) {
+            int close = key.indexOf('}', open + 1);
+            if (close > open + 1) {
+                start = open + 1;
+                end = close;
+            }
+        }
+
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                crc = update(crc, c);
+            } else if (c < 0x800) {
+                crc = update(crc, 0xc0 | (c >> 6));
+                crc = update(crc, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                crc = update(crc, 0xf0 | (codePoint >> 18));
+                crc = update(crc, 0x80 | ((codePoint >> 12) & 0x3f));
+                crc = update(crc, 0x80 | ((codePoint >> 6) & 0x3f));
+                crc = update(crc, 0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                crc = update(crc, '?');  // 与 String.getBytes("UTF-8") 对不成对代理字符的处理一致
+            } else {
+                crc = update(crc, 0xe0 | (c >> 12));
+                crc = update(crc, 0x80 | ((c >> 6) & 0x3f));
+                crc = update(crc, 0x80 | (c & 0x3f));
+            }
+        }
+        return crc & (SLOT_COUNT - 1);
+    }
+
+    public static int getSlot(byte[] key) {
+        int start = 0;
+        int end = key.length;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == '{') {
+                for (int j = i + 1; j < key.length; j++) {
+                    if (key[j] == '}') {
+                        if (j > i + 1) {
+                            start = i + 1;
+                            end = j;
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc = update(crc, key[i] & 0xff);
+        }
+        return crc & (SLOT_COUNT - 1);
+    }
+
+    private static int update(int crc, int b) {
+        return ((crc << 8) ^ TABLE[((crc >> 8) ^ b) & 0xff]) & 0xffff;
+    }
+}
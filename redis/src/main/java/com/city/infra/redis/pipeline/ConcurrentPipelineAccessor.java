@@ -0,0 +1,59 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.RedisAccessorBase;
+import com.city.infra.redis.RedisClusterContext;
+import redis.clients.jedis.Protocol;
+
+/**
+ * 线程安全的 pipeline 访问方式, 可以被多个线程共享.
+ * 写命令提交到主备集群共享的 RedisPipelineBatcher, 由后台线程自动批量执行, 调用方通过返回的 RedisFuture 获取主集群的执行结果.
+ */
+public class ConcurrentPipelineAccessor extends RedisAccessorBase {
+
+    public ConcurrentPipelineAccessor(RedisClusterContext context) {
+        super("", context);
+    }
+
+    public RedisFuture<String> set(String prefix, String key, String value, int expireSeconds) {
+        logWrite(prefix, key, value);
+        return submit(prefix, key, new RedisCommand<String>(Protocol.Command.SETEX, prefix + key, value, adjustExpireTime(expireSeconds)));
+    }
+
+    public RedisFuture<Long> delete(String prefix, String key) {
+        logWrite(prefix, key, null);
+        return submit(prefix, key, new RedisCommand<Long>(Protocol.Command.DEL, prefix + key, null, 0));
+    }
+
+    /**
+     * 立即执行已提交的命令, 不等待执行完成.
+     */
+    public void flush() {
+        RedisClusterContext context = getRedisClusterContext();
+        context.getPipelineBatcher().flush();
+        if (context.getStandbyReplicator() == null && context.getStandbyPipelineBatcher() != null) {
+            context.getStandbyPipelineBatcher().flush();
+        }
+    }
+
+    private <T> RedisFuture<T> submit(final String prefix, final String key, RedisCommand<T> command) {
+        RedisClusterContext context = getRedisClusterContext();
+        RedisFuture.Listener<T> errorLogger = new RedisFuture.Listener<T>() {
+            @Override
+            public void onComplete(RedisFuture<T> future) {
+                if (future.getError() != null) {
+                    logWriteError(prefix, key, future.getError());
+                }
+            }
+        };
+
+        RedisFuture<T> future = context.getPipelineBatcher().submit(command);
+        future.addListener(errorLogger);
+        StandbyReplicator standbyReplicator = context.getStandbyReplicator();
+        if (standbyReplicator != null) {
+            standbyReplicator.replicate(prefix, key, command);
+        } else if (context.getStandbyPipelineBatcher() != null) {
+            context.getStandbyPipelineBatcher().submit(command).addListener(errorLogger);
+        }
+        return future;
+    }
+}
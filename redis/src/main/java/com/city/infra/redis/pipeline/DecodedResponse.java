@@ -0,0 +1,25 @@
+package com.city.infra.redis.pipeline;
+
+import redis.clients.jedis.Response;
+
+/**
+ * 开启 value 编码的读命令在 pipeline 中的响应, get 时把二进制结果解码为字符串结果.
+ * MOVED/ASK 等错误仍然从 get 抛出, 重定向重试不受影响.
+ */
+class DecodedResponse<T> extends Response<T> {
+
+    private final RedisCommand<T> command;
+
+    private final Response<?> response;
+
+    DecodedResponse(RedisCommand<T> command, Response<?> response) {
+        super(null);
+        this.command = command;
+        this.response = response;
+    }
+
+    @Override
+    public T get() {
+        return (T) command.decode(response.get());
+    }
+}
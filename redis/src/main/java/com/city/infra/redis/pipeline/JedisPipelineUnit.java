@@ -2,7 +2,6 @@ package com.city.infra.redis.pipeline;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.Pipeline;
 
 import java.io.Closeable;
 
@@ -13,17 +12,34 @@ public class JedisPipelineUnit {
 
     private Jedis jedis;
 
-    private Pipeline pipeline;
+    private ClusterPipeline pipeline;
+
+    private String node;
+
+    private int commandCount;
 
     public JedisPipelineUnit(JedisPool pool) {
         this.jedis = pool.getResource();
-        this.pipeline = jedis.pipelined();
+        this.pipeline = new ClusterPipeline(jedis);
+        this.node = jedis.getClient().getHost() + ":" + jedis.getClient().getPort();
     }
 
-    public Pipeline getPipeline() {
+    public ClusterPipeline getPipeline() {
         return pipeline;
     }
 
+    public String getNode() {
+        return node;
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    public void incrCommandCount() {
+        commandCount++;
+    }
+
     public void close() {
         closeQuietly(pipeline);
         closeQuietly(jedis);
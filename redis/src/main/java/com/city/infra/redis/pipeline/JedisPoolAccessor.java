@@ -3,56 +3,319 @@ package com.city.infra.redis.pipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
-import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
 
-import java.lang.reflect.Field;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by sky on 2016/9/22 0022.
+ *
+ * 集群 slot 路由表: 通过 CLUSTER SLOTS 构建 16384 个 slot 到主节点的映射, 查询时无锁且不分配对象. 主节点同时记录其副本节点.
+ * 首次查询时开始在后台线程每秒通过 CLUSTER INFO 检查 cluster_current_epoch, 拓扑纪元变化或收到 MOVED 时在后台重建路由表;
+ * 查询只读取当前路由表, 不访问 Redis, 集群不可用时不会阻塞调用线程. 路由表尚未加载成功时返回 null, 由调用方回退到普通方式访问.
+ * 节点的连接池复用 JedisCluster 已创建的连接池, 不依赖 Jedis 的私有字段.
  */
 public class JedisPoolAccessor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JedisPoolAccessor.class);
 
-    private static final Field FIELD_CONNECTION_HANDLER;
-    private static final Field FIELD_CACHE;
-    static {
-        FIELD_CONNECTION_HANDLER = getField(JedisCluster.class, "connectionHandler");
-        FIELD_CACHE = getField(JedisClusterConnectionHandler.class, "cache");
-    }
+    private static final long EPOCH_CHECK_INTERVAL_MILLIS = 1000;
+
+    private static final String CURRENT_EPOCH = "cluster_current_epoch:";
 
     private JedisCluster client;
 
+    private volatile ClusterNode[] slots;
+
+    private volatile Collection<ClusterNode> masterNodes = Collections.emptyList();
+
+    private volatile long epoch = -1;
+
+    // 所有路由表共用的后台线程, 两个线程避免一个集群不可用时的超时拖慢其他集群的刷新
+    private static final ScheduledExecutorService REFRESHER = createRefresher();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final AtomicBoolean refreshRequested = new AtomicBoolean();
+
+    private volatile ScheduledFuture<?> refreshTask;
+
+    private volatile boolean closed;
+
+    /**
+     * 只弱引用路由表, 调用方未 close 就丢弃的路由表被回收后任务自行取消.
+     */
+    private static class RefreshTask implements Runnable {
+
+        private final WeakReference<JedisPoolAccessor> accessor;
+
+        volatile ScheduledFuture<?> future;
+
+        RefreshTask(JedisPoolAccessor accessor) {
+            this.accessor = new WeakReference<>(accessor);
+        }
+
+        @Override
+        public void run() {
+            JedisPoolAccessor jedisPoolAccessor = accessor.get();
+            if (jedisPoolAccessor == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                jedisPoolAccessor.checkEpoch();
+            } catch (Exception e) {
+                LOGGER.warn("Check cluster epoch failure!", e);
+            }
+        }
+    }
+
     public JedisPoolAccessor(JedisCluster client) {
         this.client = client;
     }
 
+    /**
+     * 在当前线程加载一次路由表, 不在后台检查拓扑纪元, 也不响应 requestRefresh. 用于单次访问中临时创建的路由表,
+     * 避免路由表在后台加载完成前一直回退到普通方式访问, 也不会在丢弃后遗留定时任务. 会访问 Redis.
+     */
+    public static JedisPoolAccessor load(JedisCluster client) {
+        JedisPoolAccessor accessor = new JedisPoolAccessor(client);
+        accessor.refresh();
+        accessor.close();
+        return accessor;
+    }
+
     public JedisPool getJedisPool(String key) {
+        ClusterNode node = getNode(ClusterSlot.getSlot(key));
+        return node == null ? null : node.getPool();
+    }
+
+    /**
+     * 返回 MOVED/ASK 重定向的目标节点的连接池, JedisCluster 尚未发现该节点时返回 null.
+     */
+    public JedisPool getJedisPool(HostAndPort node) {
+        return client.getClusterNodes().get(node.getHost() + ":" + node.getPort());
+    }
+
+    public ClusterNode getNode(String key) {
+        return getNode(ClusterSlot.getSlot(key));
+    }
+
+    public ClusterNode getNode(int slot) {
+        ClusterNode[] table = slots;
+        if (table == null) {
+            start();
+            return null;
+        }
+        return table[slot];
+    }
+
+    /**
+     * 当前路由表中的主节点, 路由表尚未加载成功时为空.
+     */
+    public Collection<ClusterNode> getMasterNodes() {
+        if (slots == null) {
+            start();
+        }
+        return masterNodes;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * 请求在后台重建路由表 (如收到 MOVED 时), 不阻塞调用线程; 已有未执行的请求时忽略.
+     */
+    public void requestRefresh() {
+        start();
+        if (closed || !refreshRequested.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            JedisSlotBasedConnectionHandler connectionHandler = getValue(client, FIELD_CONNECTION_HANDLER);
-            JedisClusterInfoCache clusterInfoCache = getValue(connectionHandler, FIELD_CACHE);
-            int slot = JedisClusterCRC16.getSlot(key);
-            return clusterInfoCache.getSlotPool(slot);
-        } catch (Exception e) {
-            LOGGER.warn("Get Jedis pool failure!", e);
+            REFRESHER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refreshRequested.set(false);
+                    refresh();
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshRequested.set(false);
+            LOGGER.warn("Request cluster slots refresh failure!", e);
+        }
+    }
+
+    /**
+     * 在当前线程重新从集群加载路由表, 并发调用时串行执行. 会访问 Redis, 请求处理线程应使用 requestRefresh.
+     */
+    public synchronized void refresh() {
+        if (closed) {
+            return;
+        }
+        for (JedisPool pool : getCandidatePools()) {
+            Jedis jedis = null;
+            try {
+                jedis = pool.getResource();
+                long currentEpoch = parseEpoch(jedis.clusterInfo());
+                build(jedis.clusterSlots(), jedis.getClient().getHost());
+                epoch = currentEpoch;
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("Refresh cluster slots failure!", e);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
         }
-        return null;
     }
 
-    private static Field getField(Class<?> cls, String fieldName) {
+    /**
+     * 停止后台刷新, 不关闭 JedisCluster 的连接池.
+     */
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> task = refreshTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    private void start() {
+        if (started.get() || closed || !started.compareAndSet(false, true)) {
+            return;
+        }
+        RefreshTask task = new RefreshTask(this);
         try {
-            Field field = cls.getDeclaredField(fieldName);
-            field.setAccessible(true);
+            task.future = REFRESHER.scheduleWithFixedDelay(task, 0, EPOCH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            refreshTask = task.future;
+        } catch (RuntimeException e) {
+            started.set(false);
+            LOGGER.warn("Start cluster slots refresher failure!", e);
+        }
+    }
+
+    private void checkEpoch() {
+        if (closed) {
+            return;
+        }
+        if (slots == null) {
+            refresh();
+            return;
+        }
+        for (ClusterNode node : masterNodes) {
+            Jedis jedis = null;
+            try {
+                jedis = node.getPool().getResource();
+                if (parseEpoch(jedis.clusterInfo()) != epoch) {
+                    refresh();
+                }
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("Check cluster epoch failure! node=[{}]", node, e);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+        // 所有主节点都不可用时从 JedisCluster 已知的节点重新加载
+        refresh();
+    }
+
+    private List<JedisPool> getCandidatePools() {
+        List<JedisPool> pools = new ArrayList<>();
+        for (ClusterNode node : masterNodes) {
+            pools.add(node.getPool());
+        }
+        List<JedisPool> clusterPools = new ArrayList<>(client.getClusterNodes().values());
+        Collections.shuffle(clusterPools);
+        pools.addAll(clusterPools);
+        return pools;
+    }
+
+    private void build(List<Object> slotInfos, String queriedHost) {
+        Map<String, JedisPool> pools = client.getClusterNodes();
+        Map<String, ClusterNode> nodes = new HashMap<>();
+        ClusterNode[] table = new ClusterNode[ClusterSlot.SLOT_COUNT];
+        for (Object slotInfo : slotInfos) {
+            List<Object> info = (List<Object>) slotInfo;
+            String name = nodeName((List<Object>) info.get(2), queriedHost);
 
-            return field;
-        } catch (NoSuchFieldException e) {
-            throw new RuntimeException("Can not find or access field '" + fieldName + "' from " + cls.getName(), e);
-        } catch (SecurityException e) {
-            throw new RuntimeException("Can not find or access field '" + fieldName + "' from " + cls.getName(), e);
+            ClusterNode node = nodes.get(name);
+            if (node == null) {
+                JedisPool pool = pools.get(name);
+                if (pool == null) {
+                    // JedisCluster 尚未发现的新节点, 这些 slot 暂时回退到普通方式访问
+                    LOGGER.warn("Can not find Jedis pool for node=[{}]", name);
+                    continue;
+                }
+                List<String> replicas = new ArrayList<>();
+                for (int i = 3; i < info.size(); i++) {
+                    replicas.add(nodeName((List<Object>) info.get(i), queriedHost));
+                }
+                node = new ClusterNode(name, pool, Collections.unmodifiableList(replicas));
+                nodes.put(name, node);
+            }
+            int start = ((Long) info.get(0)).intValue();
+            int end = ((Long) info.get(1)).intValue();
+            for (int slot = start; slot <= end; slot++) {
+                table[slot] = node;
+            }
         }
+        masterNodes = Collections.unmodifiableCollection(new ArrayList<>(nodes.values()));
+        slots = table;
     }
 
-    private static <T> T getValue(Object obj, Field field) throws IllegalAccessException {
-        return (T)field.get(obj);
+    private static String nodeName(List<Object> hostAndPort, String queriedHost) {
+        String host = SafeEncoder.encode((byte[]) hostAndPort.get(0));
+        if (host.isEmpty()) {
+            host = queriedHost;
+        }
+        return host + ":" + hostAndPort.get(1);
+    }
+
+    private static ScheduledExecutorService createRefresher() {
+        ScheduledThreadPoolExecutor refresher = new ScheduledThreadPoolExecutor(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "redis-slots-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // 所有路由表关闭后线程空闲退出
+        refresher.setKeepAliveTime(10, TimeUnit.SECONDS);
+        refresher.allowCoreThreadTimeOut(true);
+        refresher.setRemoveOnCancelPolicy(true);
+        return refresher;
+    }
+
+    private static long parseEpoch(String clusterInfo) {
+        int start = clusterInfo.indexOf(CURRENT_EPOCH);
+        if (start < 0) {
+            return -1;
+        }
+        start += CURRENT_EPOCH.length();
+        int end = start;
+        while (end < clusterInfo.length() && Character.isDigit(clusterInfo.charAt(end))) {
+            end++;
+        }
+        return Long.parseLong(clusterInfo.substring(start, end));
     }
 }
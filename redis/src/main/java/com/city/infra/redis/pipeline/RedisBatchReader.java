@@ -0,0 +1,138 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.RedisMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 跨 slot 批量读取: 按 key 所在节点分组, 每个节点一个 pipeline 并发执行, 结果按输入顺序返回.
+ * 读取失败的 key 通过 RedisMonitor 的 handleReadError 上报, 未设置 monitor 时只记录日志.
+ */
+public class RedisBatchReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisBatchReader.class);
+
+    private JedisCluster client;
+
+    private JedisPoolAccessor jedisPoolAccessor;
+
+    private ExecutorService executorService;
+
+    private String prefix;
+
+    private RedisMonitor monitor;
+
+    public RedisBatchReader(JedisCluster client, JedisPoolAccessor jedisPoolAccessor, ExecutorService executorService,
+                            String prefix, RedisMonitor monitor) {
+        this.client = client;
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.executorService = executorService;
+        this.prefix = prefix;
+        this.monitor = monitor;
+    }
+
+    /**
+     * 读取 redisKeys 中下标为 indexes 的 key, 结果写入 results 的相同下标; 读取失败或不存在的 key 结果为 null.
+     */
+    public <T> void read(final List<String> redisKeys, List<Integer> indexes, final BatchReadCommand<T> command, final Object[] results) {
+        Map<JedisPool, List<Integer>> groups = new HashMap<>();
+        for (Integer index : indexes) {
+            String redisKey = redisKeys.get(index);
+            JedisPool pool = jedisPoolAccessor.getJedisPool(redisKey);
+            if (pool == null) {
+                results[index] = readQuietly(command, redisKey);
+                continue;
+            }
+            List<Integer> group = groups.get(pool);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(pool, group);
+            }
+            group.add(index);
+        }
+
+        Map<Future<?>, List<Integer>> futures = new HashMap<>(groups.size());
+        for (final Map.Entry<JedisPool, List<Integer>> group : groups.entrySet()) {
+            futures.put(executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    readNode(group.getKey(), redisKeys, group.getValue(), command, results);
+                }
+            }), group.getValue());
+        }
+        for (Map.Entry<Future<?>, List<Integer>> future : futures.entrySet()) {
+            try {
+                future.getKey().get();
+            } catch (Exception e) {
+                handleReadError(redisKeys, future.getValue(), e);
+            }
+        }
+    }
+
+    private <T> void readNode(JedisPool pool, List<String> redisKeys, List<Integer> indexes, BatchReadCommand<T> command, Object[] results) {
+        JedisPipelineUnit jedisPipeline = null;
+        try {
+            jedisPipeline = new JedisPipelineUnit(pool);
+            Pipeline pipeline = jedisPipeline.getPipeline();
+            List<Response<T>> responses = new ArrayList<>(indexes.size());
+            for (Integer index : indexes) {
+                responses.add(command.read(pipeline, redisKeys.get(index)));
+            }
+            pipeline.sync();
+
+            for (int i = 0; i < indexes.size(); i++) {
+                int index = indexes.get(i);
+                try {
+                    T value = responses.get(i).get();
+                    results[index] = command.isMissing(value) ? null : value;
+                } catch (Exception e) {
+                    // pipeline 执行失败(如 slot 迁移)的 key, 回退到普通方式读取
+                    results[index] = readQuietly(command, redisKeys.get(index));
+                }
+            }
+        } catch (Exception e) {
+            handleReadError(redisKeys, indexes, e);
+        } finally {
+            if (jedisPipeline != null) {
+                jedisPipeline.close();
+            }
+        }
+    }
+
+    private <T> T readQuietly(BatchReadCommand<T> command, String redisKey) {
+        try {
+            T value = command.read(client, redisKey);
+            return command.isMissing(value) ? null : value;
+        } catch (Exception e) {
+            handleReadError(redisKey, e);
+        }
+        return null;
+    }
+
+    private void handleReadError(List<String> redisKeys, List<Integer> indexes, Exception e) {
+        for (Integer index : indexes) {
+            handleReadError(redisKeys.get(index), e);
+        }
+    }
+
+    private void handleReadError(String redisKey, Exception e) {
+        String key = redisKey.startsWith(prefix) ? redisKey.substring(prefix.length()) : redisKey;
+        if (monitor != null) {
+            monitor.handleReadError(prefix, key, e);
+        } else {
+            LOGGER.warn("Batch read failure! prefix=[{}], key=[{}]", prefix, key, e);
+        }
+    }
+}
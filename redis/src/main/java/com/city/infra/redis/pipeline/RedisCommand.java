@@ -1,7 +1,17 @@
 package com.city.infra.redis.pipeline;
 
+import com.city.infra.redis.RedisScript;
+import com.city.infra.redis.codec.ValueCodec;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by sky on 2016/9/22.
@@ -12,6 +22,15 @@ public class RedisCommand<T> {
     String value;
     int expireTime;
     Response<T> response;
+    String field;
+    Map<String, String> hash;
+    long increment;
+    String[] members;
+    RedisFuture<T> future;  // 命令所在批次 sync 后完成
+    ValueCodec codec;  // 不为 null 时 value 以编码后的二进制读写
+    byte[] encodedValue;
+    Map<byte[], byte[]> encodedHash;
+    boolean expireOnCreate;  // 为 true 时以 EVALSHA 执行, 只在 key 首次创建时设置过期时间
 
     public RedisCommand(Protocol.Command op, String key, String value, int expireTime) {
         this.op = op;
@@ -20,4 +39,249 @@ public class RedisCommand<T> {
         this.expireTime = expireTime;
         this.response = null;
     }
-}
\ No newline at end of file
+
+    public static RedisCommand<Long> hset(String key, String field, String value, int expireTime) {
+        RedisCommand<Long> command = new RedisCommand<>(Protocol.Command.HSET, key, value, expireTime);
+        command.field = field;
+        return command;
+    }
+
+    public static RedisCommand<String> hmset(String key, Map<String, String> hash, int expireTime) {
+        RedisCommand<String> command = new RedisCommand<>(Protocol.Command.HMSET, key, null, expireTime);
+        command.hash = hash;
+        return command;
+    }
+
+    public static RedisCommand<Long> hincrby(String key, String field, long increment, int expireTime) {
+        RedisCommand<Long> command = new RedisCommand<>(Protocol.Command.HINCRBY, key, null, expireTime);
+        command.field = field;
+        command.increment = increment;
+        return command;
+    }
+
+    public static RedisCommand<Long> incrby(String key, long increment, int expireTime) {
+        RedisCommand<Long> command = new RedisCommand<>(Protocol.Command.INCRBY, key, null, expireTime);
+        command.increment = increment;
+        return command;
+    }
+
+    public static RedisCommand<Long> sadd(String key, int expireTime, String... members) {
+        RedisCommand<Long> command = new RedisCommand<>(Protocol.Command.SADD, key, null, expireTime);
+        command.members = members;
+        return command;
+    }
+
+    public static RedisCommand<Long> expire(String key, int expireTime) {
+        return new RedisCommand<>(Protocol.Command.EXPIRE, key, null, expireTime);
+    }
+
+    public static RedisCommand<String> get(String key) {
+        return new RedisCommand<>(Protocol.Command.GET, key, null, 0);
+    }
+
+    public static RedisCommand<String> hget(String key, String field) {
+        RedisCommand<String> command = new RedisCommand<>(Protocol.Command.HGET, key, null, 0);
+        command.field = field;
+        return command;
+    }
+
+    public static RedisCommand<Map<String, String>> hgetAll(String key) {
+        return new RedisCommand<>(Protocol.Command.HGETALL, key, null, 0);
+    }
+
+    public static RedisCommand<Set<String>> smembers(String key) {
+        return new RedisCommand<>(Protocol.Command.SMEMBERS, key, null, 0);
+    }
+
+    /**
+     * 开启 value 编码: 写命令立即编码 value, 读命令的结果在返回前解码. 只对字符串和 hash 的 value 生效.
+     */
+    public RedisCommand<T> codec(ValueCodec codec) {
+        if (codec == null) {
+            return this;
+        }
+        switch (op) {
+            case SETEX:
+            case HSET:
+                this.codec = codec;
+                this.encodedValue = codec.encode(SafeEncoder.encode(value));
+                break;
+            case HMSET:
+                this.codec = codec;
+                this.encodedHash = new HashMap<>(hash.size() * 2);
+                for (Map.Entry<String, String> entry : hash.entrySet()) {
+                    encodedHash.put(SafeEncoder.encode(entry.getKey()), codec.encode(SafeEncoder.encode(entry.getValue())));
+                }
+                break;
+            case GET:
+            case HGET:
+            case HGETALL:
+                this.codec = codec;
+                break;
+            default:
+        }
+        return this;
+    }
+
+    /**
+     * 只在 key 首次创建时设置过期时间, 与 RedisAccessorConfig 的 expireOnCreate 相同. 对 hset/hmset/incrby/hincrby/sadd 生效,
+     * 命令以 EVALSHA 执行对应的 RedisScript, 写入和设置过期时间在服务端一次完成.
+     */
+    public RedisCommand<T> expireOnCreate(boolean expireOnCreate) {
+        this.expireOnCreate = expireOnCreate && getScript() != null;
+        return this;
+    }
+
+    /**
+     * 以 EVALSHA 执行时使用的脚本, 不需要时返回 null.
+     */
+    RedisScript getScript() {
+        if (expireTime <= 0) {
+            return null;
+        }
+        switch (op) {
+            case HSET:
+                return RedisScript.HSET_EXPIRE;
+            case HMSET:
+                return RedisScript.HMSET_EXPIRE;
+            case INCRBY:
+                return RedisScript.INCRBY_EXPIRE;
+            case HINCRBY:
+                return RedisScript.HINCRBY_EXPIRE;
+            case SADD:
+                return RedisScript.SADD_EXPIRE;
+            default:
+                return null;
+        }
+    }
+
+    boolean isScript() {
+        return expireOnCreate;
+    }
+
+    /**
+     * 按 RedisScript 写命令的约定生成 ARGV: 过期秒数, "1" (只在首次创建时设置过期时间), 命令参数.
+     */
+    byte[][] scriptArgs() {
+        List<byte[]> args = new ArrayList<>();
+        args.add(SafeEncoder.encode(String.valueOf(expireTime)));
+        args.add(SafeEncoder.encode("1"));
+        switch (op) {
+            case HSET:
+                args.add(SafeEncoder.encode(field));
+                args.add(encodedValue != null ? encodedValue : SafeEncoder.encode(value));
+                break;
+            case HMSET:
+                if (encodedHash != null) {
+                    for (Map.Entry<byte[], byte[]> entry : encodedHash.entrySet()) {
+                        args.add(entry.getKey());
+                        args.add(entry.getValue());
+                    }
+                } else {
+                    for (Map.Entry<String, String> entry : hash.entrySet()) {
+                        args.add(SafeEncoder.encode(entry.getKey()));
+                        args.add(SafeEncoder.encode(entry.getValue()));
+                    }
+                }
+                break;
+            case INCRBY:
+                args.add(SafeEncoder.encode(String.valueOf(increment)));
+                break;
+            case HINCRBY:
+                args.add(SafeEncoder.encode(field));
+                args.add(SafeEncoder.encode(String.valueOf(increment)));
+                break;
+            case SADD:
+                for (String member : members) {
+                    args.add(SafeEncoder.encode(member));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported Redis script command = [" + op + "]");
+        }
+        return args.toArray(new byte[args.size()][]);
+    }
+
+    /**
+     * 把开启编码的读命令的二进制结果解码为字符串结果.
+     */
+    Object decode(Object result) {
+        if (codec == null || result == null) {
+            return result;
+        }
+        if (result instanceof byte[]) {
+            return SafeEncoder.encode(codec.decode((byte[]) result));
+        }
+        if (result instanceof Map) {
+            Map<byte[], byte[]> encoded = (Map<byte[], byte[]>) result;
+            Map<String, String> decoded = new HashMap<>(encoded.size() * 2);
+            for (Map.Entry<byte[], byte[]> entry : encoded.entrySet()) {
+                decoded.put(SafeEncoder.encode(entry.getKey()), SafeEncoder.encode(codec.decode(entry.getValue())));
+            }
+            return decoded;
+        }
+        return result;
+    }
+
+    public boolean isRead() {
+        switch (op) {
+            case GET:
+            case HGET:
+            case HGETALL:
+            case SMEMBERS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 重复执行是否与执行一次的效果相同. 执行结果未知 (如超时、连接断开) 时只有幂等命令可以重新执行,
+     * INCRBY/HINCRBY 会重复累加, SADD 的返回值会改变, 它们及其后的 EXPIRE 都不能重新执行.
+     */
+    public boolean isIdempotent() {
+        switch (op) {
+            case INCRBY:
+            case HINCRBY:
+            case SADD:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 读命令的结果是否表示 key 不存在.
+     */
+    public boolean isMissing(Object result) {
+        return result == null
+                || (result instanceof Map && ((Map) result).isEmpty())
+                || (result instanceof Collection && ((Collection) result).isEmpty());
+    }
+
+    /**
+     * 估算命令发送时占用的字节数.
+     */
+    int estimateBytes() {
+        int bytes = key.length();
+        if (encodedValue != null) {
+            bytes += encodedValue.length;
+        } else if (value != null) {
+            bytes += value.length();
+        }
+        if (field != null) {
+            bytes += field.length();
+        }
+        if (hash != null) {
+            for (Map.Entry<String, String> entry : hash.entrySet()) {
+                bytes += entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        if (members != null) {
+            for (String member : members) {
+                bytes += member.length();
+            }
+        }
+        return bytes;
+    }
+}
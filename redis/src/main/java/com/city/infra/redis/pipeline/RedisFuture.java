@@ -0,0 +1,135 @@
+package com.city.infra.redis.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * pipeline 命令的完成句柄. 命令随所在批次 sync 后完成, 监听器在完成命令的线程 (通常是后台 flush 线程) 中回调,
+ * 不应在监听器中执行阻塞操作.
+ */
+public class RedisFuture<T> implements Future<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisFuture.class);
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile T value;
+
+    private volatile Exception error;
+
+    private List<Listener<T>> listeners;  // 完成后置为 null, 由 this 加锁保护
+
+    public interface Listener<T> {
+        void onComplete(RedisFuture<T> future);
+    }
+
+    public boolean complete(T value) {
+        return finish(value, null);
+    }
+
+    public boolean fail(Exception error) {
+        return finish(null, error);
+    }
+
+    /**
+     * 添加完成监听器, 已完成时在当前线程立即回调.
+     */
+    public void addListener(Listener<T> listener) {
+        synchronized (this) {
+            if (done.getCount() > 0) {
+                if (listeners == null) {
+                    listeners = new ArrayList<>(2);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        notify(listener);
+    }
+
+    /**
+     * 返回命令结果, 未完成或执行失败时返回 null.
+     */
+    public T getNow() {
+        return error == null ? value : null;
+    }
+
+    /**
+     * 返回命令执行失败的异常, 未完成或执行成功时返回 null.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private T result() throws ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return value;
+    }
+
+    private boolean finish(T value, Exception error) {
+        List<Listener<T>> toNotify;
+        synchronized (this) {
+            if (done.getCount() == 0) {
+                return false;
+            }
+            this.value = value;
+            this.error = error;
+            done.countDown();
+            toNotify = listeners;
+            listeners = null;
+        }
+        if (toNotify != null) {
+            for (Listener<T> listener : toNotify) {
+                notify(listener);
+            }
+        }
+        return true;
+    }
+
+    private void notify(Listener<T> listener) {
+        try {
+            listener.onComplete(this);
+        } catch (Exception e) {
+            LOGGER.warn("Redis future listener failure!", e);
+        }
+    }
+}
@@ -8,13 +8,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 /**
  * Created by sky on 2016/9/20.
  *
  * 注意 RedisPipelineAccessor 是非线程安全的
+ * 读命令返回的 RedisFuture 在 sync 后完成, 主集群未命中或读取失败时再读一次备份集群.
+ * 开启 ValueCodec 时字符串和 hash 的 value 以编码后的二进制读写.
  */
 public class RedisPipelineAccessor extends RedisAccessorBase {
 
@@ -31,22 +38,67 @@ public class RedisPipelineAccessor extends RedisAccessorBase {
 
     public String set(String prefix, String key, String value, int expireSeconds) {
         logWrite(prefix, key, value);
-        addCommand(new RedisCommand<String>(Protocol.Command.SETEX, prefix + key, value, adjustExpireTime(expireSeconds)));
-        if (shouldSync()) {
-            sync();
-        }
+        addCommand(new RedisCommand<String>(Protocol.Command.SETEX, prefix + key, value, adjustExpireTime(expireSeconds))
+                .codec(getValueCodec(prefix)));
         return "";
     }
 
     public long delete(String prefix, String key) {
         logWrite(prefix, key, null);
         addCommand(new RedisCommand<Long>(Protocol.Command.DEL, prefix + key, null, 0));
-        if (shouldSync()) {
-            sync();
-        }
         return 0;
     }
 
+    public RedisFuture<Long> hset(String prefix, String key, String field, String value, int expireSeconds) {
+        logWrite(prefix, key, value);
+        return addCommand(RedisCommand.hset(prefix + key, field, value, adjustExpireTime(expireSeconds)).codec(getValueCodec(prefix)));
+    }
+
+    public RedisFuture<String> hmset(String prefix, String key, Map<String, String> hash, int expireSeconds) {
+        logWrite(prefix, key, hash.toString());
+        return addCommand(RedisCommand.hmset(prefix + key, hash, adjustExpireTime(expireSeconds)).codec(getValueCodec(prefix)));
+    }
+
+    public RedisFuture<Long> hincrby(String prefix, String key, String field, long increment, int expireSeconds) {
+        logWrite(prefix, key, String.valueOf(increment));
+        return addCommand(RedisCommand.hincrby(prefix + key, field, increment, adjustExpireTime(expireSeconds)));
+    }
+
+    public RedisFuture<Long> incrby(String prefix, String key, long increment, int expireSeconds) {
+        logWrite(prefix, key, String.valueOf(increment));
+        return addCommand(RedisCommand.incrby(prefix + key, increment, adjustExpireTime(expireSeconds)));
+    }
+
+    public RedisFuture<Long> sadd(String prefix, String key, int expireSeconds, String... members) {
+        logWrite(prefix, key, StringUtils.join(members, ","));
+        return addCommand(RedisCommand.sadd(prefix + key, adjustExpireTime(expireSeconds), members));
+    }
+
+    public RedisFuture<Long> expire(String prefix, String key, int expireSeconds) {
+        logWrite(prefix, key, null);
+        return addCommand(RedisCommand.expire(prefix + key, adjustExpireTime(expireSeconds)));
+    }
+
+    public RedisFuture<String> get(String prefix, String key) {
+        logRead(prefix, key);
+        return addCommand(RedisCommand.get(prefix + key).codec(getValueCodec(prefix)));
+    }
+
+    public RedisFuture<String> hget(String prefix, String key, String field) {
+        logRead(prefix, key);
+        return addCommand(RedisCommand.hget(prefix + key, field).codec(getValueCodec(prefix)));
+    }
+
+    public RedisFuture<Map<String, String>> hgetAll(String prefix, String key) {
+        logRead(prefix, key);
+        return addCommand(RedisCommand.hgetAll(prefix + key).codec(getValueCodec(prefix)));
+    }
+
+    public RedisFuture<Set<String>> smembers(String prefix, String key) {
+        logRead(prefix, key);
+        return addCommand(RedisCommand.smembers(prefix + key));
+    }
+
     public boolean sync() {
         final Queue<RedisCommand> imageForCommands = commands;
         commands = new LinkedList<>();
@@ -55,48 +107,121 @@ public class RedisPipelineAccessor extends RedisAccessorBase {
             return true;
         }
 
-        return new WriteCommandTemplateBoolean(StringUtils.EMPTY, null, 0) {
+        // 读命令只发往主集群, 与写命令一起按入队顺序执行; 备份集群只执行写命令
+        final List<RedisCommand> writes = new ArrayList<>(imageForCommands.size());
+        for (RedisCommand command : imageForCommands) {
+            if (!command.isRead()) {
+                writes.add(command);
+            }
+        }
+        final List<RedisCommand> missingReads = new ArrayList<>();
+        final List<Object> primaryResults = new ArrayList<>();
+
+        boolean result = new WriteCommandTemplateBoolean(StringUtils.EMPTY, null, 0) {
             @Override
             public Boolean write(JedisCluster client, String redisKey, int seconds) {
-                RedisPipelineExecutor pipelineExecutor = new RedisPipelineExecutor(client);
-                for (RedisCommand command : imageForCommands) {
-                    command.response = pipelineExecutor.executeCommand(command);
+                // 主备集群并发执行, 结果保存在各自的列表中而不是共享的 RedisCommand 上
+                if (client != getRedisClusterContext().getJedisCluster()) {
+                    execute(client, writes);
+                    return true;
                 }
-                pipelineExecutor.sync();
 
-                // 使用 pipeline 执行失败的 Redis 命令，回退到普通方式执行。
+                List<Object> results = execute(client, imageForCommands);
+                int i = 0;
                 for (RedisCommand command : imageForCommands) {
-                    try {
-                        command.response.get();
-                    } catch (Exception ignored) {
-                        executeCommand(client, command);
+                    Object value = results.get(i++);
+                    if (command.isRead() && (value instanceof Exception || command.isMissing(value))) {
+                        missingReads.add(command);
+                        primaryResults.add(value);
+                    } else {
+                        complete(command, value);
                     }
                 }
+                return true;
+            }
 
+            @Override
+            public boolean writeStandbyConcurrently() {
+                return true;
+            }
+
+            @Override
+            public boolean multiSlot() {
                 return true;
             }
         }.run();
+
+        readStandby(missingReads, primaryResults);
+        for (RedisCommand command : imageForCommands) {
+            if (command.future != null && !command.future.isDone()) {
+                command.future.fail(new IllegalStateException("Redis pipeline sync failure!"));
+            }
+        }
+        return result;
     }
 
-    private void executeCommand(JedisCluster client, RedisCommand command) {
-        try {
-            switch (command.op) {
-                case SETEX:
-                    client.setex(command.key, command.expireTime, command.value);
-                    break;
-                case DEL:
-                    client.del(command.key);
-                    break;
-                default:
-                    throw new RuntimeException("Unsupported Redis command!");
+    /**
+     * pipeline 执行命令, 重定向重试后仍然失败且可以安全重新执行的 Redis 命令，回退到普通方式执行。
+     * 返回与命令一一对应的结果, 执行失败的命令对应抛出的异常.
+     */
+    private List<Object> execute(JedisCluster client, Collection<RedisCommand> commands) {
+        List<Object> results = new ArrayList<>(commands.size());
+        if (commands.isEmpty()) {
+            return results;
+        }
+        RedisPipelineExecutor pipelineExecutor = new RedisPipelineExecutor(client, getRedisClusterContext());
+        List<Response<?>> responses = pipelineExecutor.execute(commands);
+        int i = 0;
+        for (RedisCommand command : commands) {
+            results.add(getOrRetry(client, command, responses.get(i++)));
+        }
+        return results;
+    }
+
+    private void readStandby(List<RedisCommand> reads, List<Object> primaryResults) {
+        JedisCluster standby = getRedisClusterContext().getStandyJedisCluster();
+        if (reads.isEmpty()) {
+            return;
+        }
+        List<Object> standbyResults = standby != null ? execute(standby, reads) : primaryResults;
+        for (int i = 0; i < reads.size(); i++) {
+            Object primary = primaryResults.get(i);
+            Object value = standbyResults.get(i);
+            // 备份集群读取失败, 或主备集群均未命中时, 以主集群的结果为准
+            if (value instanceof Exception || (reads.get(i).isMissing(value) && !(primary instanceof Exception))) {
+                value = primary;
             }
+            complete(reads.get(i), value);
+        }
+    }
+
+    private void complete(RedisCommand command, Object value) {
+        if (command.future == null) {
+            return;
+        }
+        if (value instanceof Exception) {
+            command.future.fail((Exception) value);
+        } else {
+            command.future.complete(value);
+        }
+    }
+
+    private Object getOrRetry(JedisCluster client, RedisCommand command, Response<?> response) {
+        try {
+            return RedisPipelineExecutor.getOrRetry(client, command, response);
         } catch (Exception e) {
             LOGGER.warn("Execute Redis command failure!", e);
+            return e;
         }
     }
 
-    private void addCommand(RedisCommand redisCommand) {
+    private <T> RedisFuture<T> addCommand(RedisCommand<T> redisCommand) {
+        redisCommand.future = new RedisFuture<>();
         commands.add(redisCommand);
+        if (shouldSync()) {
+            sync();
+        }
+        return redisCommand.future;
     }
 
     private boolean shouldSync() {
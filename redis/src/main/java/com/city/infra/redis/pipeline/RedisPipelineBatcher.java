@@ -0,0 +1,229 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.RedisEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 线程安全的自动 flush pipeline 批处理器, 每个集群一个, 可以被任意多个线程共享.
+ * 提交的命令进入有界队列, 由后台线程在累积命令数或字节数达到阈值, 或最早的命令等待超过 linger 时间时,
+ * 按节点 pipeline 批量执行, 并通过 RedisFuture 通知每条命令的结果. 队列已满时不阻塞提交线程, 直接返回失败的 RedisFuture.
+ */
+public class RedisPipelineBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisPipelineBatcher.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int COMMAND_OVERHEAD_BYTES = 16;
+
+    private static final AtomicInteger INDEX = new AtomicInteger();
+
+    private final JedisCluster client;
+
+    private final JedisPoolAccessor jedisPoolAccessor;
+
+    private final ExecutorService executorService;
+
+    private final RedisEventListener monitor;
+
+    private final int maxBatchSize;
+
+    private final long maxBatchBytes;
+
+    private final long lingerNanos;
+
+    private final BlockingQueue<Entry> queue;
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final Thread worker;
+
+    private volatile boolean flushRequested;
+
+    private volatile boolean running = true;
+
+    private static class Entry {
+        final RedisCommand command;
+        final RedisFuture future;
+        final int bytes;
+        final long enqueueNanos;
+
+        Entry(RedisCommand command, RedisFuture future, int bytes) {
+            this.command = command;
+            this.future = future;
+            this.bytes = bytes;
+            this.enqueueNanos = System.nanoTime();
+        }
+    }
+
+    public RedisPipelineBatcher(JedisCluster client, JedisPoolAccessor jedisPoolAccessor, ExecutorService executorService,
+                                RedisEventListener monitor, int maxBatchSize, long maxBatchBytes, long lingerMicros,
+                                int queueSize) {
+        this.client = client;
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.executorService = executorService;
+        this.monitor = monitor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "redis-pipeline-batcher-" + INDEX.incrementAndGet());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 提交一条命令, 返回的 RedisFuture 在命令所在批次执行后完成. 已关闭或队列已满时返回失败的 RedisFuture.
+     */
+    public <T> RedisFuture<T> submit(RedisCommand<T> command) {
+        RedisFuture<T> future = new RedisFuture<>();
+        if (!running) {
+            future.fail(new IllegalStateException("Redis pipeline batcher is shutdown!"));
+            return future;
+        }
+        int bytes = estimateBytes(command);
+        if (!queue.offer(new Entry(command, future, bytes))) {
+            rejectedCount.incrementAndGet();
+            future.fail(new RejectedExecutionException("Redis pipeline batcher queue is full!"));
+            return future;
+        }
+        int count = pendingCount.incrementAndGet();
+        long totalBytes = pendingBytes.addAndGet(bytes);
+        // 队列由空变为非空时唤醒后台线程开始计时, 达到阈值时唤醒后台线程立即执行
+        if (count == 1 || count >= maxBatchSize || totalBytes >= maxBatchBytes) {
+            LockSupport.unpark(worker);
+        }
+        return future;
+    }
+
+    /**
+     * 要求后台线程立即执行已提交的命令, 不等待执行完成.
+     */
+    public void flush() {
+        flushRequested = true;
+        LockSupport.unpark(worker);
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * 因队列已满被拒绝的命令数.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 停止接收新命令, 等待后台线程执行完队列中剩余的命令.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            Entry head = queue.peek();
+            if (head == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            long waitNanos = head.enqueueNanos + lingerNanos - System.nanoTime();
+            if (waitNanos > 0 && running && !flushRequested
+                    && pendingCount.get() < maxBatchSize && pendingBytes.get() < maxBatchBytes) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            flushRequested = false;
+
+            long bytes = 0;
+            Entry entry;
+            while (batch.size() < maxBatchSize && (entry = queue.poll()) != null) {
+                batch.add(entry);
+                bytes += entry.bytes;
+            }
+            pendingCount.addAndGet(-batch.size());
+            pendingBytes.addAndGet(-bytes);
+            try {
+                execute(batch);
+                flushCount.incrementAndGet();
+            } catch (Exception e) {
+                LOGGER.warn("Flush pipeline batch failure!", e);
+                for (Entry failed : batch) {
+                    failed.future.fail(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void execute(List<Entry> batch) {
+        List<RedisCommand> commands = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            commands.add(entry.command);
+        }
+        List<Response<?>> responses = executePipeline(commands);
+
+        // 重定向重试后仍然失败的 Redis 命令，可以安全重新执行时回退到普通方式执行，否则以失败完成。
+        int i = 0;
+        for (Entry entry : batch) {
+            Object value;
+            try {
+                value = RedisPipelineExecutor.getOrRetry(client, entry.command, responses.get(i++));
+            } catch (Exception e) {
+                entry.future.fail(e);
+                continue;
+            }
+            entry.future.complete(value);
+        }
+    }
+
+    /**
+     * 按节点 pipeline 执行一批命令, 返回的 Response 与 commands 一一对应.
+     */
+    List<Response<?>> executePipeline(List<RedisCommand> commands) {
+        return new RedisPipelineExecutor(jedisPoolAccessor, executorService, monitor).execute(commands);
+    }
+
+    private static int estimateBytes(RedisCommand command) {
+        return COMMAND_OVERHEAD_BYTES + command.estimateBytes();
+    }
+}
@@ -1,11 +1,27 @@
 package com.city.infra.redis.pipeline;
 
+import com.city.infra.redis.RedisClusterContext;
+import com.city.infra.redis.RedisEventListener;
+import com.city.infra.redis.health.ClusterHealth;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by sky on 2016/9/22.
@@ -14,52 +30,474 @@ public class RedisPipelineExecutor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisPipelineAccessor.class);
 
+    private static final int MAX_REDIRECT_ROUNDS = 3;
+
+    private static final String TRYAGAIN = "TRYAGAIN";
+
+    private static final String NOSCRIPT = "NOSCRIPT";
+
     private JedisPoolAccessor jedisPoolAccessor;
 
     private Map<JedisPool, JedisPipelineUnit> jedisPipelineUnits = new HashMap<>();
 
+    private ExecutorService executorService;  // 为 null 时各节点的 pipeline 依次 sync
+
+    private RedisEventListener monitor;
+
+    private ClusterHealth health;  // 为 null 时不检查熔断, 也不记录访问结果
+
+    private final AtomicLong movedCount = new AtomicLong();
+
+    private final AtomicLong askedCount = new AtomicLong();
+
     public RedisPipelineExecutor(JedisCluster client) {
-        jedisPoolAccessor = new JedisPoolAccessor(client);
+        this(JedisPoolAccessor.load(client));
+    }
+
+    public RedisPipelineExecutor(JedisPoolAccessor jedisPoolAccessor) {
+        this(jedisPoolAccessor, null, null);
+    }
+
+    public RedisPipelineExecutor(JedisPoolAccessor jedisPoolAccessor, ExecutorService executorService, RedisEventListener monitor) {
+        this(jedisPoolAccessor, executorService, monitor, null);
+    }
+
+    /**
+     * @param health 集群的熔断状态. 节点熔断器打开时发往该节点的命令不发送, 各节点 sync 的结果按节点记录
+     */
+    public RedisPipelineExecutor(JedisPoolAccessor jedisPoolAccessor, ExecutorService executorService, RedisEventListener monitor,
+                                 ClusterHealth health) {
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.executorService = executorService;
+        this.monitor = monitor;
+        this.health = health;
     }
 
+    public RedisPipelineExecutor(JedisCluster client, RedisClusterContext context) {
+        this(context.getJedisPoolAccessor(client), context.getExecutorService(), context.getEventListener(),
+                context.getClusterHealth(client));
+    }
+
+    /**
+     * 追加到 pipeline 时失败的命令, 可能已经部分写入连接, 执行结果未知.
+     */
+    private static class FailedResponse<T> extends Response<T> {
+
+        private final RuntimeException error;
+
+        FailedResponse(Throwable error) {
+            super(null);
+            this.error = error instanceof RuntimeException ? (RuntimeException) error : new JedisException(error);
+        }
+
+        @Override
+        public T get() {
+            throw error;
+        }
+    }
+
+    /**
+     * 所在节点熔断而没有发送的命令, 不回退到普通方式执行.
+     */
+    private static class RejectedResponse<T> extends FailedResponse<T> {
+
+        RejectedResponse(String node) {
+            super(new JedisDataException("Redis node circuit is open, node=[" + node + "]"));
+        }
+    }
+
+    /**
+     * 把命令追加到所在节点的 pipeline. 返回 null 表示命令没有发送 (路由表不可用或获取连接失败).
+     */
     public <T> Response<T> executeCommand(RedisCommand<T> command) {
+        JedisPipelineUnit jedisPipeline;
         try {
-            JedisPool pool = jedisPoolAccessor.getJedisPool(command.key);
-            if (pool == null) {
+            ClusterNode node = jedisPoolAccessor.getNode(command.key);
+            if (node == null) {
                 return null;
             }
-            JedisPipelineUnit jedisPipeline = jedisPipelineUnits.get(pool);
-            if (jedisPipeline == null) {
-                jedisPipeline = new JedisPipelineUnit(pool);
-                jedisPipelineUnits.put(pool, jedisPipeline);
-            }
-
-            Pipeline pipeline = jedisPipeline.getPipeline();
-            switch (command.op) {
-                case SETEX:
-                    return (Response<T>) pipeline.setex(command.key, command.expireTime, command.value);
-                case DEL:
-                    return (Response<T>) pipeline.del(command.key);
-                default:
-                    throw new RuntimeException("Unsupported Redis command = [!" + command.op + "]");
+            if (health != null && !health.allowRequest(ClusterSlot.getSlot(command.key))) {
+                return new RejectedResponse<>(node.getName());
             }
+            jedisPipeline = getPipelineUnit(node.getPool());
         } catch (Throwable e) {
             LOGGER.warn("Execute pipeline command failure! ", e);
+            return null;
+        }
+        try {
+            return append(jedisPipeline, command, false);
+        } catch (Throwable e) {
+            LOGGER.warn("Execute pipeline command failure! ", e);
+            return new FailedResponse<>(e);
         }
-        return null;
     }
 
+    /**
+     * pipeline 执行一批命令, 返回与命令一一对应的响应.
+     * 返回 MOVED/ASK 的命令按重定向指定的节点重新分组, 再以 pipeline 方式执行, 最多重试 MAX_REDIRECT_ROUNDS 轮.
+     * 其他失败的命令保留失败的响应, 没有发送的命令响应为 null, 由调用方通过 getOrRetry 决定是否回退到普通方式执行.
+     */
+    public List<Response<?>> execute(Collection<? extends RedisCommand> commands) {
+        RedisCommand[] batch = commands.toArray(new RedisCommand[commands.size()]);
+        Response<?>[] responses = new Response<?>[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            responses[i] = executeCommand(batch[i]);
+        }
+        sync();
+
+        List<Integer> indexes = null;
+        for (int round = 0; round < MAX_REDIRECT_ROUNDS; round++) {
+            List<Integer> redirected = new ArrayList<>();
+            List<JedisRedirectionException> redirections = new ArrayList<>();
+            boolean moved = false;
+            int size = indexes == null ? batch.length : indexes.size();
+            for (int n = 0; n < size; n++) {
+                int i = indexes == null ? n : indexes.get(n);
+                if (responses[i] == null) {
+                    continue;
+                }
+                try {
+                    responses[i].get();
+                } catch (JedisRedirectionException e) {
+                    redirected.add(i);
+                    redirections.add(e);
+                    moved |= e instanceof JedisMovedDataException;
+                } catch (Exception ignored) {
+                }
+            }
+            if (redirected.isEmpty()) {
+                break;
+            }
+
+            // 一轮重定向只请求一次后台刷新路由表, 重定向的命令直接发往 MOVED/ASK 指定的节点
+            if (moved) {
+                jedisPoolAccessor.requestRefresh();
+            }
+            int asked = 0;
+            for (int n = 0; n < redirected.size(); n++) {
+                int i = redirected.get(n);
+                boolean ask = redirections.get(n) instanceof JedisAskDataException;
+                if (ask) {
+                    asked++;
+                }
+                responses[i] = redirect(batch[i], redirections.get(n), ask);
+            }
+            sync();
+
+            movedCount.addAndGet(redirected.size() - asked);
+            askedCount.addAndGet(asked);
+            if (monitor != null) {
+                monitor.onPipelineRedirect(redirected.size() - asked, asked);
+            }
+            indexes = redirected;
+        }
+        return Arrays.asList(responses);
+    }
+
+    public long getMovedCount() {
+        return movedCount.get();
+    }
+
+    public long getAskedCount() {
+        return askedCount.get();
+    }
+
+    /**
+     * 不使用 pipeline, 直接通过集群客户端执行命令并返回结果, 执行失败时抛出异常.
+     */
+    static Object executeCommand(JedisCluster client, RedisCommand command) {
+        if (command.isScript()) {
+            return command.getScript().eval(client, SafeEncoder.encode(command.key), command.scriptArgs());
+        }
+        if (command.codec != null) {
+            return executeEncodedCommand(client, command);
+        }
+        Object result;
+        switch (command.op) {
+            case SETEX:
+                return client.setex(command.key, command.expireTime, command.value);
+            case DEL:
+                return client.del(command.key);
+            case EXPIRE:
+                return client.expire(command.key, command.expireTime);
+            case GET:
+                return client.get(command.key);
+            case HGET:
+                return client.hget(command.key, command.field);
+            case HGETALL:
+                return client.hgetAll(command.key);
+            case SMEMBERS:
+                return client.smembers(command.key);
+            case HSET:
+                result = client.hset(command.key, command.field, command.value);
+                break;
+            case HMSET:
+                result = client.hmset(command.key, command.hash);
+                break;
+            case HINCRBY:
+                result = client.hincrBy(command.key, command.field, command.increment);
+                break;
+            case INCRBY:
+                result = client.incrBy(command.key, command.increment);
+                break;
+            case SADD:
+                result = client.sadd(command.key, command.members);
+                break;
+            default:
+                throw new RuntimeException("Unsupported Redis command!");
+        }
+        if (command.expireTime > 0) {
+            client.expire(command.key, command.expireTime);
+        }
+        return result;
+    }
+
+    private static Object executeEncodedCommand(JedisCluster client, RedisCommand command) {
+        byte[] key = SafeEncoder.encode(command.key);
+        Object result;
+        switch (command.op) {
+            case SETEX:
+                return client.setex(key, command.expireTime, command.encodedValue);
+            case GET:
+                return command.decode(client.get(key));
+            case HGET:
+                return command.decode(client.hget(key, SafeEncoder.encode(command.field)));
+            case HGETALL:
+                return command.decode(client.hgetAll(key));
+            case HSET:
+                result = client.hset(key, SafeEncoder.encode(command.field), command.encodedValue);
+                break;
+            case HMSET:
+                result = client.hmset(key, command.encodedHash);
+                break;
+            default:
+                throw new RuntimeException("Unsupported Redis command!");
+        }
+        if (command.expireTime > 0) {
+            client.expire(key, command.expireTime);
+        }
+        return result;
+    }
+
+    /**
+     * sync 所有节点的 pipeline. 设置了线程池时各节点并发 sync, 耗时接近最慢节点而不是所有节点之和.
+     */
     public void sync() {
-        for (JedisPipelineUnit jedisPipelineUnit : jedisPipelineUnits.values()) {
-            try {
-                Pipeline pipeline = jedisPipelineUnit.getPipeline();
-                pipeline.sync();
-            } catch (Exception e) {
-                LOGGER.warn("Pipeline sync failure!", e);
-            } finally {
-                jedisPipelineUnit.close();
+        if (executorService == null || jedisPipelineUnits.size() <= 1) {
+            for (JedisPipelineUnit jedisPipelineUnit : jedisPipelineUnits.values()) {
+                sync(jedisPipelineUnit);
+            }
+        } else {
+            List<Future<?>> futures = new ArrayList<>(jedisPipelineUnits.size());
+            for (final JedisPipelineUnit jedisPipelineUnit : jedisPipelineUnits.values()) {
+                futures.add(executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        sync(jedisPipelineUnit);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    LOGGER.warn("Pipeline sync failure!", e);
+                }
             }
         }
         jedisPipelineUnits.clear();
     }
+
+    /**
+     * 返回 pipeline 中命令的结果. 失败的命令只在可以安全重新执行时 (见 canRetry) 回退到普通方式执行,
+     * 否则抛出 pipeline 中的异常, 由调用方按失败处理.
+     */
+    static Object getOrRetry(JedisCluster client, RedisCommand command, Response<?> response) {
+        if (response == null) {
+            return executeCommand(client, command);
+        }
+        try {
+            return response.get();
+        } catch (RuntimeException e) {
+            if (!canRetry(command, response, e)) {
+                throw e;
+            }
+            return executeCommand(client, command);
+        }
+    }
+
+    /**
+     * pipeline 中失败的命令能否重新执行: 确定没有执行的命令 (没有发送, 或返回 MOVED/ASK/TRYAGAIN/NOSCRIPT) 总是可以,
+     * 执行结果未知 (超时、连接断开等) 的命令只有幂等时可以. NOSCRIPT 的命令重新执行时先加载脚本.
+     */
+    static boolean canRetry(RedisCommand command, Response<?> response, Exception error) {
+        if (response instanceof RejectedResponse) {
+            return false;
+        }
+        if (response == null || error instanceof JedisRedirectionException) {
+            return true;
+        }
+        if (error instanceof JedisDataException && error.getMessage() != null
+                && (error.getMessage().startsWith(TRYAGAIN) || error.getMessage().startsWith(NOSCRIPT))) {
+            return true;
+        }
+        return command.isIdempotent();
+    }
+
+    private Response<?> redirect(RedisCommand command, JedisRedirectionException redirection, boolean ask) {
+        JedisPipelineUnit jedisPipeline;
+        try {
+            // 路由表在后台刷新, 此时可能仍指向返回 MOVED 的节点, 因此先发往重定向的目标节点;
+            // JedisCluster 还不知道该节点时, MOVED 的命令再按路由表发送
+            JedisPool pool = jedisPoolAccessor.getJedisPool(redirection.getTargetNode());
+            if (pool == null && !ask) {
+                pool = jedisPoolAccessor.getJedisPool(command.key);
+            }
+            if (pool == null) {
+                return null;
+            }
+            jedisPipeline = getPipelineUnit(pool);
+        } catch (Throwable e) {
+            LOGGER.warn("Redirect pipeline command failure! ", e);
+            return null;
+        }
+        try {
+            return append(jedisPipeline, command, ask);
+        } catch (Throwable e) {
+            LOGGER.warn("Redirect pipeline command failure! ", e);
+            return new FailedResponse<>(e);
+        }
+    }
+
+    private JedisPipelineUnit getPipelineUnit(JedisPool pool) {
+        JedisPipelineUnit jedisPipeline = jedisPipelineUnits.get(pool);
+        if (jedisPipeline == null) {
+            jedisPipeline = new JedisPipelineUnit(pool);
+            jedisPipelineUnits.put(pool, jedisPipeline);
+        }
+        return jedisPipeline;
+    }
+
+    private <T> Response<T> append(JedisPipelineUnit jedisPipeline, RedisCommand<T> command, boolean ask) {
+        ClusterPipeline pipeline = jedisPipeline.getPipeline();
+        if (ask) {
+            pipeline.asking();
+        }
+        jedisPipeline.incrCommandCount();
+        Response<?> response;
+        if (command.isScript()) {
+            return (Response<T>) appendScript(pipeline, command);
+        }
+        if (command.codec != null) {
+            return appendEncoded(pipeline, command, ask);
+        }
+        switch (command.op) {
+            case SETEX:
+                return (Response<T>) pipeline.setex(command.key, command.expireTime, command.value);
+            case DEL:
+                return (Response<T>) pipeline.del(command.key);
+            case EXPIRE:
+                return (Response<T>) pipeline.expire(command.key, command.expireTime);
+            case GET:
+                return (Response<T>) pipeline.get(command.key);
+            case HGET:
+                return (Response<T>) pipeline.hget(command.key, command.field);
+            case HGETALL:
+                return (Response<T>) pipeline.hgetAll(command.key);
+            case SMEMBERS:
+                return (Response<T>) pipeline.smembers(command.key);
+            case HSET:
+                response = pipeline.hset(command.key, command.field, command.value);
+                break;
+            case HMSET:
+                response = pipeline.hmset(command.key, command.hash);
+                break;
+            case HINCRBY:
+                response = pipeline.hincrBy(command.key, command.field, command.increment);
+                break;
+            case INCRBY:
+                response = pipeline.incrBy(command.key, command.increment);
+                break;
+            case SADD:
+                response = pipeline.sadd(command.key, command.members);
+                break;
+            default:
+                throw new RuntimeException("Unsupported Redis command = [!" + command.op + "]");
+        }
+        appendExpire(pipeline, command, ask);
+        return (Response<T>) response;
+    }
+
+    /**
+     * 开启 value 编码的命令使用二进制版本, 读命令的响应在 get 时解码.
+     */
+    private <T> Response<T> appendEncoded(ClusterPipeline pipeline, RedisCommand<T> command, boolean ask) {
+        byte[] key = SafeEncoder.encode(command.key);
+        Response<?> response;
+        switch (command.op) {
+            case SETEX:
+                return (Response<T>) pipeline.setex(key, command.expireTime, command.encodedValue);
+            case GET:
+                return new DecodedResponse<>(command, pipeline.get(key));
+            case HGET:
+                return new DecodedResponse<>(command, pipeline.hget(key, SafeEncoder.encode(command.field)));
+            case HGETALL:
+                return new DecodedResponse<>(command, pipeline.hgetAll(key));
+            case HSET:
+                response = pipeline.hset(key, SafeEncoder.encode(command.field), command.encodedValue);
+                break;
+            case HMSET:
+                response = pipeline.hmset(key, command.encodedHash);
+                break;
+            default:
+                throw new RuntimeException("Unsupported Redis command = [!" + command.op + "]");
+        }
+        appendExpire(pipeline, command, ask);
+        return (Response<T>) response;
+    }
+
+    /**
+     * expireOnCreate 的写命令以 EVALSHA 发送, 节点返回 NOSCRIPT 时由调用方回退到普通方式执行并加载脚本.
+     */
+    private static Response<Object> appendScript(ClusterPipeline pipeline, RedisCommand<?> command) {
+        byte[][] args = command.scriptArgs();
+        byte[][] params = new byte[args.length + 1][];
+        params[0] = SafeEncoder.encode(command.key);
+        System.arraycopy(args, 0, params, 1, args.length);
+        return pipeline.evalsha(command.getScript().getSha1Bytes(), 1, params);
+    }
+
+    /**
+     * pipeline 中 EXPIRE 紧随写命令发送, 不增加往返次数; ASK 重定向时 EXPIRE 同样需要先发送 ASKING.
+     */
+    private static void appendExpire(ClusterPipeline pipeline, RedisCommand<?> command, boolean ask) {
+        if (command.expireTime > 0) {
+            if (ask) {
+                pipeline.asking();
+            }
+            pipeline.expire(command.key, command.expireTime);
+        }
+    }
+
+    private void sync(JedisPipelineUnit jedisPipelineUnit) {
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            Pipeline pipeline = jedisPipelineUnit.getPipeline();
+            pipeline.sync();
+        } catch (Exception e) {
+            success = false;
+            LOGGER.warn("Pipeline sync failure!", e);
+        } finally {
+            jedisPipelineUnit.close();
+        }
+        long nanos = System.nanoTime() - start;
+        if (monitor != null) {
+            monitor.onPipelineSync(jedisPipelineUnit.getNode(), jedisPipelineUnit.getCommandCount(), nanos);
+        }
+        if (health != null) {
+            // 按命令平均耗时记录, 大批量 sync 的总耗时不应被当作慢调用
+            health.record(jedisPipelineUnit.getNode(), nanos / Math.max(1, jedisPipelineUnit.getCommandCount()), success);
+        }
+    }
 }
@@ -0,0 +1,189 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.RedisEventListener;
+import com.city.infra.redis.RedisMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 备份集群异步复制器: 写命令先进入有界内存队列, 由后台线程批量取出后按节点 pipeline 写入备份集群.
+ * 队列满时丢弃该次复制并通过 RedisMonitor 上报, 调用方只等待主集群写入.
+ */
+public class StandbyReplicator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StandbyReplicator.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final JedisCluster client;
+
+    private final JedisPoolAccessor jedisPoolAccessor;
+
+    private final RedisMonitor monitor;
+
+    private final RedisEventListener listener;
+
+    private final BlockingQueue<Entry> queue;
+
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    private final AtomicLong replicatedCount = new AtomicLong();
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private static class Entry {
+        final String prefix;
+        final String key;
+        final RedisCommand command;
+        final Runnable task;
+
+        Entry(String prefix, String key, RedisCommand command, Runnable task) {
+            this.prefix = prefix;
+            this.key = key;
+            this.command = command;
+            this.task = task;
+        }
+    }
+
+    public StandbyReplicator(JedisCluster client, JedisPoolAccessor jedisPoolAccessor, int queueSize, RedisMonitor monitor) {
+        this.client = client;
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.monitor = monitor;
+        this.listener = monitor instanceof RedisEventListener ? (RedisEventListener) monitor : null;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "redis-standby-replicator");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 复制一条可 pipeline 执行的写命令, 队列已满时返回 false.
+     */
+    public boolean replicate(String prefix, String key, RedisCommand command) {
+        return offer(new Entry(prefix, key, command, null));
+    }
+
+    /**
+     * 复制一条无法 pipeline 执行的写操作, 由后台线程直接执行, 队列已满时返回 false.
+     */
+    public boolean replicate(String prefix, String key, Runnable task) {
+        return offer(new Entry(prefix, key, null, task));
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    public long getReplicatedCount() {
+        return replicatedCount.get();
+    }
+
+    /**
+     * 停止接收新命令, 等待后台线程写完队列中剩余的命令.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean offer(Entry entry) {
+        if (running && queue.offer(entry)) {
+            return true;
+        }
+        overflowCount.incrementAndGet();
+        if (listener != null) {
+            listener.onReplicationOverflow(entry.prefix, entry.key);
+        }
+        return false;
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                replicate(batch);
+                replicatedCount.addAndGet(batch.size());
+                if (listener != null) {
+                    listener.onReplicationBacklog(queue.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("Replicate to standby cluster failure!", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void replicate(List<Entry> batch) {
+        // 按入队顺序执行: 遇到无法 pipeline 的写操作前, 先把已累积的 pipeline 命令写出, 保证同一 key 的写入顺序.
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : batch) {
+            if (entry.command != null) {
+                pending.add(entry);
+            } else {
+                flush(pending);
+                entry.task.run();
+            }
+        }
+        flush(pending);
+    }
+
+    private void flush(List<Entry> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<RedisCommand> commands = new ArrayList<>(pending.size());
+        for (Entry entry : pending) {
+            commands.add(entry.command);
+        }
+        List<Response<?>> responses = new RedisPipelineExecutor(jedisPoolAccessor, null, listener).execute(commands);
+
+        // 重定向重试后仍然失败的 Redis 命令，可以安全重新执行时回退到普通方式执行。
+        int i = 0;
+        for (Entry entry : pending) {
+            try {
+                RedisPipelineExecutor.getOrRetry(client, entry.command, responses.get(i++));
+            } catch (Exception e) {
+                if (monitor != null) {
+                    monitor.handleWriteError(entry.prefix, entry.key, e);
+                }
+            }
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,95 @@
+package com.city.infra.redis.pool;
+
+import com.city.infra.redis.RedisEventListener;
+import com.city.infra.redis.metrics.ClusterRole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期采样集群每个节点的连接池, 在 PoolSizingConfig 的上下限之间调整各节点的最大连接数.
+ * 集群拓扑变化后新出现的节点在下一次采样时加入, 并预先建立最少空闲连接.
+ */
+public class AdaptivePoolSizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+    private final ClusterRole role;
+
+    private final JedisCluster client;
+
+    private final PoolSizingConfig config;
+
+    private final RedisEventListener monitor;
+
+    private final ConcurrentMap<String, NodePool> nodePools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    public AdaptivePoolSizer(ClusterRole role, JedisCluster client, PoolSizingConfig config, RedisEventListener monitor) {
+        this.role = role;
+        this.client = client;
+        this.config = config;
+        this.monitor = monitor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "redis-" + AdaptivePoolSizer.this.role.name().toLowerCase() + "-pool-sizer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    adjust();
+                } catch (Exception e) {
+                    LOGGER.warn("Adjust redis pool size failure! cluster=[{}]", AdaptivePoolSizer.this.role, e);
+                }
+            }
+        }, 0, config.getAdjustIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 各节点连接池的当前指标, key 为 host:port.
+     */
+    public Map<String, NodePool.Snapshot> getSnapshots() {
+        Map<String, NodePool.Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, NodePool> entry : nodePools.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    void adjust() {
+        Map<String, JedisPool> pools = client.getClusterNodes();
+        for (Map.Entry<String, JedisPool> entry : pools.entrySet()) {
+            NodePool nodePool = nodePools.get(entry.getKey());
+            if (nodePool == null || nodePool.getPool() != entry.getValue()) {
+                nodePool = new NodePool(entry.getKey(), entry.getValue());
+                nodePool.warmUp(config);
+                nodePools.put(entry.getKey(), nodePool);
+            }
+            int maxTotal = nodePool.adjust(config);
+            if (maxTotal > 0 && monitor != null) {
+                monitor.onPoolResize(role, entry.getKey(), maxTotal);
+            }
+        }
+        nodePools.keySet().retainAll(pools.keySet());
+    }
+}
@@ -0,0 +1,163 @@
+package com.city.infra.redis.pool;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+import java.lang.reflect.Field;
+
+/**
+ * 一个节点的连接池, 提供指标快照并按采样结果调整最大连接数.
+ * JedisCluster 为所有节点使用同一个 JedisPoolConfig 创建连接池, 这里通过 Pool.internalPool 单独调整每个节点.
+ */
+public class NodePool {
+
+    private static final int MEAN_WAIT_SAMPLES = 100;  // GenericObjectPool 计算平均等待时间使用的最近借用次数
+
+    private static final Field INTERNAL_POOL;
+
+    static {
+        try {
+            INTERNAL_POOL = Pool.class.getDeclaredField("internalPool");
+            INTERNAL_POOL.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String name;  // host:port
+
+    private final JedisPool pool;
+
+    private final GenericObjectPool<Jedis> internalPool;
+
+    private long lastBorrowedCount;
+
+    private int lowUtilizationIntervals;  // 连续低使用率的采样次数
+
+    public NodePool(String name, JedisPool pool) {
+        this.name = name;
+        this.pool = pool;
+        this.internalPool = internalPool(pool);
+        this.lastBorrowedCount = internalPool.getBorrowedCount();
+    }
+
+    /**
+     * 设置最少空闲连接并立即建立, 之后由连接池的空闲检测线程维持.
+     */
+    public void warmUp(PoolSizingConfig config) {
+        internalPool.setMinIdle(config.getMinIdle());
+        internalPool.setMaxIdle(Math.max(internalPool.getMaxIdle(), internalPool.getMaxTotal()));
+        try {
+            internalPool.preparePool();
+        } catch (Exception ignored) {
+            // 节点暂不可用时由空闲检测线程稍后补齐
+        }
+    }
+
+    /**
+     * 根据一次采样调整最大连接数, 返回调整后的值, 未调整时返回 -1. 只由一个调整线程调用.
+     * 有线程等待连接、连接全部借出, 或最近 100 次借用的平均等待时间超过目标值时扩容;
+     * 连续 shrinkIntervals 次采样借出的连接不超过 1/4 时缩容.
+     */
+    public int adjust(PoolSizingConfig config) {
+        int maxTotal = internalPool.getMaxTotal();
+        int active = internalPool.getNumActive();
+        int waiters = internalPool.getNumWaiters();
+        long borrowedCount = internalPool.getBorrowedCount();
+        long borrowed = borrowedCount - lastBorrowedCount;
+        lastBorrowedCount = borrowedCount;
+
+        // 平均等待时间是最近 100 次借用的滚动值, 借用次数不足时仍包含上次调整前的等待, 不作为扩容依据
+        boolean slowBorrow = borrowed >= MEAN_WAIT_SAMPLES
+                && internalPool.getMeanBorrowWaitTimeMillis() >= config.getTargetBorrowWaitMillis();
+        int target = maxTotal;
+        if (waiters > 0 || active >= maxTotal || slowBorrow) {
+            lowUtilizationIntervals = 0;
+            target = Math.min(config.getMaxTotal(), maxTotal + config.getStep());
+        } else if (active * 4 <= maxTotal) {
+            if (++lowUtilizationIntervals >= config.getShrinkIntervals()) {
+                lowUtilizationIntervals = 0;
+                target = Math.max(config.getMinTotal(), maxTotal - config.getStep());
+            }
+        } else {
+            lowUtilizationIntervals = 0;
+        }
+        if (target == maxTotal) {
+            return -1;
+        }
+        internalPool.setMaxTotal(target);
+        internalPool.setMaxIdle(target);
+        return target;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(internalPool.getMaxTotal(), pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(),
+                pool.getMeanBorrowWaitTimeMillis(), pool.getMaxBorrowWaitTimeMillis());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JedisPool getPool() {
+        return pool;
+    }
+
+    private static GenericObjectPool<Jedis> internalPool(JedisPool pool) {
+        try {
+            return (GenericObjectPool<Jedis>) INTERNAL_POOL.get(pool);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Snapshot {
+
+        private final int maxTotal;
+
+        private final int active;
+
+        private final int idle;
+
+        private final int waiters;
+
+        private final long meanBorrowWaitMillis;  // 最近 100 次获取连接的平均等待时间
+
+        private final long maxBorrowWaitMillis;
+
+        Snapshot(int maxTotal, int active, int idle, int waiters, long meanBorrowWaitMillis, long maxBorrowWaitMillis) {
+            this.maxTotal = maxTotal;
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+            this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getWaiters() {
+            return waiters;
+        }
+
+        public long getMeanBorrowWaitMillis() {
+            return meanBorrowWaitMillis;
+        }
+
+        public long getMaxBorrowWaitMillis() {
+            return maxBorrowWaitMillis;
+        }
+    }
+}
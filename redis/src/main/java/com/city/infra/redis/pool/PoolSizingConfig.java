@@ -0,0 +1,77 @@
+package com.city.infra.redis.pool;
+
+/**
+ * 按节点自适应调整连接池大小的参数.
+ */
+public class PoolSizingConfig {
+
+    private int minTotal = 8;  // 连接池最大连接数的下限
+
+    private int maxTotal = 200;  // 连接池最大连接数的上限
+
+    private int minIdle = 2;  // 每个节点保持的最少空闲连接
+
+    private int step = 8;  // 每次扩容或缩容的连接数
+
+    private long targetBorrowWaitMillis = 2;  // 平均获取连接等待时间超过该值时扩容
+
+    private long adjustIntervalMillis = 1000;  // 采样和调整的间隔
+
+    private int shrinkIntervals = 60;  // 连续多少次采样使用率低于 1/4 时缩容
+
+    public int getMinTotal() {
+        return minTotal;
+    }
+
+    public void setMinTotal(int minTotal) {
+        this.minTotal = minTotal;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public void setStep(int step) {
+        this.step = step;
+    }
+
+    public long getTargetBorrowWaitMillis() {
+        return targetBorrowWaitMillis;
+    }
+
+    public void setTargetBorrowWaitMillis(long targetBorrowWaitMillis) {
+        this.targetBorrowWaitMillis = targetBorrowWaitMillis;
+    }
+
+    public long getAdjustIntervalMillis() {
+        return adjustIntervalMillis;
+    }
+
+    public void setAdjustIntervalMillis(long adjustIntervalMillis) {
+        this.adjustIntervalMillis = adjustIntervalMillis;
+    }
+
+    public int getShrinkIntervals() {
+        return shrinkIntervals;
+    }
+
+    public void setShrinkIntervals(int shrinkIntervals) {
+        this.shrinkIntervals = shrinkIntervals;
+    }
+}
@@ -0,0 +1,101 @@
+package com.city.infra.redis.routing;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * 副本节点的连接池, 每个连接建立后执行一次 READONLY, 之后可以直接读取该副本负责的 slot.
+ * 与 JedisCluster 为副本节点创建的连接池分开, 不影响集群客户端.
+ */
+public class ReplicaPool extends Pool<Jedis> {
+
+    public ReplicaPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout) {
+        super(poolConfig, new ReadOnlyJedisFactory(host, port, timeout));
+    }
+
+    @Override
+    public Jedis getResource() {
+        Jedis jedis = super.getResource();
+        jedis.setDataSource(this);  // Jedis.close() 时归还到本连接池
+        return jedis;
+    }
+
+    // Jedis 2.9 中 Jedis.close() 仍通过这两个已废弃的方法归还连接, 必须覆盖以归还到本连接池
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnResource(Jedis resource) {
+        if (resource != null) {
+            resource.resetState();
+            returnResourceObject(resource);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnBrokenResource(Jedis resource) {
+        if (resource != null) {
+            returnBrokenResourceObject(resource);
+        }
+    }
+
+    private static class ReadOnlyJedisFactory implements PooledObjectFactory<Jedis> {
+
+        private final String host;
+
+        private final int port;
+
+        private final int timeout;
+
+        ReadOnlyJedisFactory(String host, int port, int timeout) {
+            this.host = host;
+            this.port = port;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public PooledObject<Jedis> makeObject() throws Exception {
+            Jedis jedis = new Jedis(host, port, timeout);
+            try {
+                jedis.connect();
+                jedis.readonly();
+            } catch (RuntimeException e) {
+                jedis.close();
+                throw e;
+            }
+            return new DefaultPooledObject<>(jedis);
+        }
+
+        @Override
+        public void destroyObject(PooledObject<Jedis> pooledJedis) throws Exception {
+            Jedis jedis = pooledJedis.getObject();
+            if (jedis.isConnected()) {
+                try {
+                    jedis.quit();
+                } catch (Exception ignored) {
+                }
+                jedis.disconnect();
+            }
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Jedis> pooledJedis) {
+            try {
+                return "PONG".equals(pooledJedis.getObject().ping());
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void activateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+        }
+
+        @Override
+        public void passivateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.city.infra.redis.routing;
+
+import com.city.infra.redis.ReadRouting;
+import com.city.infra.redis.pipeline.ClusterNode;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个集群的副本读路由. 副本节点从路由表 (CLUSTER SLOTS) 中获得, 每个副本使用单独的 READONLY 连接池.
+ * 首次路由时启动后台线程, 每秒通过主节点的 INFO replication 获取各副本的状态和复制偏移量;
+ * 未确认在线、复制落后超过阈值或最近访问出错的副本不参与路由, 读取回到主节点.
+ * 每个节点 (包括主节点) 记录读延迟的指数加权平均, 用于 LOWEST_LATENCY 路由.
+ */
+public class ReplicaReadRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaReadRouter.class);
+
+    private static final long PROBE_INTERVAL_MILLIS = 1000;
+
+    private static final long PROBE_EXPIRE_MILLIS = 3 * PROBE_INTERVAL_MILLIS;  // 超过该时间未探测到的副本不可用
+
+    private static final int MAX_ACK_LAG_SECONDS = 2;  // 副本每秒向主节点确认一次偏移量
+
+    private static final long ERROR_BACKOFF_MILLIS = 1000;  // 访问出错的副本暂停路由的时间
+
+    private static final int EXPLORE_RATIO = 32;  // LOWEST_LATENCY 每 32 次读取随机选一个节点, 刷新其延迟
+
+    private final JedisPoolAccessor jedisPoolAccessor;
+
+    private final GenericObjectPoolConfig poolConfig;
+
+    private final int timeout;
+
+    private final ConcurrentMap<String, ReplicaState> replicas = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicLong> latencies = new ConcurrentHashMap<>();  // 节点读延迟的 EWMA (纳秒)
+
+    private final ConcurrentMap<String, ReplicaPool> pools = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile ScheduledExecutorService prober;
+
+    private static class ReplicaState {
+
+        volatile boolean online;
+
+        volatile long lagBytes;
+
+        volatile long probedMillis;
+
+        volatile long backoffUntilMillis;
+    }
+
+    public ReplicaReadRouter(JedisPoolAccessor jedisPoolAccessor, GenericObjectPoolConfig poolConfig, int timeout) {
+        this.jedisPoolAccessor = jedisPoolAccessor;
+        this.poolConfig = poolConfig;
+        this.timeout = timeout;
+    }
+
+    public ClusterNode getMaster(int slot) {
+        return jedisPoolAccessor.getNode(slot);
+    }
+
+    /**
+     * 选择读取的副本节点, 返回 null 时读主节点.
+     */
+    public String choose(ClusterNode master, ReadRouting routing, long maxLagBytes) {
+        List<String> names = master.getReplicas();
+        if (routing == ReadRouting.MASTER || names.isEmpty()) {
+            return null;
+        }
+        startProbing();
+
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean explore = routing == ReadRouting.LOWEST_LATENCY && random.nextInt(EXPLORE_RATIO) == 0;
+        int offset = random.nextInt(names.size());
+        String best = null;
+        long bestLatency = routing == ReadRouting.LOWEST_LATENCY ? getLatency(master.getName()) : Long.MAX_VALUE;
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get((offset + i) % names.size());
+            if (!isUsable(replicas.get(name), now, maxLagBytes)) {
+                continue;
+            }
+            if (routing == ReadRouting.PREFER_REPLICA) {
+                return name;  // 从随机位置开始, 读请求分散到各副本
+            }
+            if (explore) {
+                return random.nextBoolean() ? name : null;
+            }
+            long latency = getLatency(name);
+            if (latency < bestLatency) {
+                best = name;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+
+    public Jedis getResource(String replica) {
+        ReplicaPool pool = pools.get(replica);
+        if (pool == null) {
+            int index = replica.lastIndexOf(':');
+            ReplicaPool created = new ReplicaPool(poolConfig, replica.substring(0, index),
+                    Integer.parseInt(replica.substring(index + 1)), timeout);
+            pool = pools.putIfAbsent(replica, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.destroy();
+            }
+        }
+        return pool.getResource();
+    }
+
+    /**
+     * 记录一次节点读取的耗时, 副本读取失败时暂停向其路由.
+     */
+    public void record(String node, long nanos, boolean success) {
+        if (!success) {
+            ReplicaState state = replicas.get(node);
+            if (state != null) {
+                state.backoffUntilMillis = System.currentTimeMillis() + ERROR_BACKOFF_MILLIS;
+            }
+            return;
+        }
+        AtomicLong latency = latencies.get(node);
+        if (latency == null) {
+            latency = new AtomicLong();
+            AtomicLong existing = latencies.putIfAbsent(node, latency);
+            if (existing != null) {
+                latency = existing;
+            }
+        }
+        // alpha = 1/8, 并发更新时可能丢失个别样本, 不影响平均值
+        long average = latency.get();
+        latency.set(average == 0 ? nanos : average + (nanos - average) / 8);
+    }
+
+    /**
+     * 节点读延迟的 EWMA (纳秒), 未读取过的节点为 0, 会被优先选中以获得延迟样本.
+     */
+    public long getLatency(String node) {
+        AtomicLong latency = latencies.get(node);
+        return latency == null ? 0 : latency.get();
+    }
+
+    public void close() {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+        for (ReplicaPool pool : pools.values()) {
+            pool.destroy();
+        }
+    }
+
+    void probe() {
+        for (ClusterNode master : jedisPoolAccessor.getMasterNodes()) {
+            if (master.getReplicas().isEmpty()) {
+                continue;
+            }
+            Jedis jedis = null;
+            try {
+                jedis = master.getPool().getResource();
+                updateReplicas(jedis.info("replication"), jedis.getClient().getHost());
+            } catch (Exception e) {
+                LOGGER.debug("Probe replication failure! master=[{}]", master, e);
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析主节点的 INFO replication, 副本行形如 slave0:ip=10.0.0.2,port=6380,state=online,offset=1024,lag=0.
+     */
+    void updateReplicas(String info, String masterHost) {
+        long masterOffset = -1;
+        for (String line : info.split("\r\n")) {
+            if (line.startsWith("master_repl_offset:")) {
+                masterOffset = Long.parseLong(line.substring("master_repl_offset:".length()).trim());
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (String line : info.split("\r\n")) {
+            if (!line.startsWith("slave") || line.indexOf(':') < 0 || !line.contains("ip=")) {
+                continue;
+            }
+            String ip = null;
+            String port = null;
+            String state = null;
+            long offset = -1;
+            int lag = Integer.MAX_VALUE;
+            for (String field : line.substring(line.indexOf(':') + 1).split(",")) {
+                int index = field.indexOf('=');
+                if (index < 0) {
+                    continue;
+                }
+                String value = field.substring(index + 1);
+                switch (field.substring(0, index)) {
+                    case "ip":
+                        ip = value;
+                        break;
+                    case "port":
+                        port = value;
+                        break;
+                    case "state":
+                        state = value;
+                        break;
+                    case "offset":
+                        offset = Long.parseLong(value);
+                        break;
+                    case "lag":
+                        lag = Integer.parseInt(value);
+                        break;
+                    default:
+                }
+            }
+            if (ip == null || port == null) {
+                continue;
+            }
+            ReplicaState replica = getState((ip.isEmpty() ? masterHost : ip) + ":" + port);
+            replica.online = "online".equals(state) && lag <= MAX_ACK_LAG_SECONDS;
+            replica.lagBytes = masterOffset >= 0 && offset >= 0 ? Math.max(0, masterOffset - offset) : Long.MAX_VALUE;
+            replica.probedMillis = now;
+        }
+    }
+
+    private static boolean isUsable(ReplicaState state, long now, long maxLagBytes) {
+        return state != null && state.online && state.lagBytes <= maxLagBytes && now < state.probedMillis + PROBE_EXPIRE_MILLIS
+                && now >= state.backoffUntilMillis;
+    }
+
+    private ReplicaState getState(String name) {
+        ReplicaState state = replicas.get(name);
+        if (state == null) {
+            ReplicaState created = new ReplicaState();
+            state = replicas.putIfAbsent(name, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    private void startProbing() {
+        if (started.get() || !started.compareAndSet(false, true)) {
+            return;
+        }
+        prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "redis-replica-prober");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    probe();
+                } catch (Exception e) {
+                    LOGGER.warn("Probe redis replicas failure!", e);
+                }
+            }
+        }, 0, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
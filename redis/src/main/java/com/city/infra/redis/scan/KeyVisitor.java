@@ -0,0 +1,13 @@
+package com.city.infra.redis.scan;
+
+import com.city.infra.redis.metrics.ClusterRole;
+
+import java.util.List;
+
+/**
+ * 接收按前缀遍历到的 key, 每次为一个节点一次 SCAN 返回的一页. 各节点并发遍历, 实现必须是线程安全的.
+ */
+public interface KeyVisitor {
+
+    void visit(ClusterRole cluster, String node, List<String> keys);
+}
@@ -0,0 +1,37 @@
+package com.city.infra.redis.scan;
+
+/**
+ * 按前缀遍历、删除和导出 key 的参数.
+ */
+public class PrefixScanConfig {
+
+    private int scanCount = 1000;  // 每次 SCAN 的 COUNT, 也是删除和导出时每个 pipeline 的最大命令数
+
+    private int keysPerSecond = 10000;  // 所有节点合计每秒最多检查的 key 数, 每次 SCAN 按 scanCount 计, 为 0 时不限速
+
+    private int parallelism = 8;  // 同时遍历的节点数
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    public void setScanCount(int scanCount) {
+        this.scanCount = scanCount;
+    }
+
+    public int getKeysPerSecond() {
+        return keysPerSecond;
+    }
+
+    public void setKeysPerSecond(int keysPerSecond) {
+        this.keysPerSecond = keysPerSecond;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
@@ -0,0 +1,81 @@
+package com.city.infra.redis.scan;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次按前缀遍历的进度, 遍历期间由各节点的线程更新, 可在其他线程中读取.
+ */
+public class PrefixScanProgress {
+
+    private final int totalNodes;
+
+    private final AtomicInteger finishedNodes = new AtomicInteger();
+
+    private final AtomicInteger failedNodes = new AtomicInteger();
+
+    private final AtomicLong scannedKeys = new AtomicLong();
+
+    private final AtomicLong processedKeys = new AtomicLong();
+
+    public PrefixScanProgress(int totalNodes) {
+        this.totalNodes = totalNodes;
+    }
+
+    void addScanned(int keys) {
+        scannedKeys.addAndGet(keys);
+    }
+
+    void addProcessed(int keys) {
+        processedKeys.addAndGet(keys);
+    }
+
+    void nodeFinished(boolean success) {
+        if (!success) {
+            failedNodes.incrementAndGet();
+        }
+        finishedNodes.incrementAndGet();
+    }
+
+    /**
+     * 主备集群中参与遍历的主节点数.
+     */
+    public int getTotalNodes() {
+        return totalNodes;
+    }
+
+    /**
+     * 已结束遍历的节点数, 包括出错的节点.
+     */
+    public int getFinishedNodes() {
+        return finishedNodes.get();
+    }
+
+    public int getFailedNodes() {
+        return failedNodes.get();
+    }
+
+    public boolean isDone() {
+        return finishedNodes.get() == totalNodes;
+    }
+
+    /**
+     * SCAN 返回的 key 数, 同一 key 可能被返回多次.
+     */
+    public long getScannedKeys() {
+        return scannedKeys.get();
+    }
+
+    /**
+     * 实际删除或导出的 key 数, 遍历时与 scannedKeys 相同.
+     */
+    public long getProcessedKeys() {
+        return processedKeys.get();
+    }
+
+    @Override
+    public String toString() {
+        return "nodes=" + finishedNodes.get() + "/" + totalNodes + ", failedNodes=" + failedNodes.get()
+                + ", scannedKeys=" + scannedKeys.get() + ", processedKeys=" + processedKeys.get();
+    }
+}
@@ -0,0 +1,318 @@
+package com.city.infra.redis.scan;
+
+import com.city.infra.redis.RedisClusterContext;
+import com.city.infra.redis.health.ClusterHealth;
+import com.city.infra.redis.metrics.ClusterRole;
+import com.city.infra.redis.pipeline.ClusterNode;
+import com.city.infra.redis.pipeline.JedisPoolAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按前缀遍历、删除和导出主备集群中的 key: 对两个集群的每个主节点并发执行 SCAN MATCH prefix*, 每个节点一个线程,
+ * 删除和导出以 pipeline 在 key 所在节点上批量执行. 所有节点共享一个限速器, 每次 SCAN 按 COUNT 计数, 避免影响线上请求的延迟.
+ * 熔断中的集群被跳过. 删除不会使各访问对象的近端缓存和未命中缓存失效.
+ * SCAN、删除和导出都使用 key 的原始字节, 不是 UTF-8 编码的 key 同样可以删除和导出.
+ *
+ * 导出文件由连续的记录组成, 每条记录依次为: 集群 (1 字节, 0 为主集群, 1 为备份集群), key 长度 (int) 和原始字节,
+ * 剩余过期毫秒数 (long, -1 表示不过期), DUMP 结果长度 (int) 和字节. 可以用 RESTORE 命令恢复.
+ */
+public class PrefixScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefixScanner.class);
+
+    // Jedis 2.9 没有 UNLINK 命令, 通过 Lua 脚本调用
+    private static final byte[] UNLINK_SCRIPT = SafeEncoder.encode("return redis.call('UNLINK',KEYS[1])");
+
+    private final String prefix;
+
+    private final RedisClusterContext context;
+
+    private final PrefixScanConfig config;
+
+    private volatile PrefixScanProgress progress;
+
+    /**
+     * 处理一个节点一次 SCAN 返回的 key, 返回处理的 key 数. jedis 为该节点的连接.
+     */
+    private interface PageHandler {
+        int handle(ClusterRole cluster, ClusterNode node, Jedis jedis, List<byte[]> keys) throws IOException;
+    }
+
+    private static class Target {
+
+        private final ClusterRole cluster;
+
+        private final ClusterNode node;
+
+        Target(ClusterRole cluster, ClusterNode node) {
+            this.cluster = cluster;
+            this.node = node;
+        }
+    }
+
+    public PrefixScanner(String prefix, RedisClusterContext context, PrefixScanConfig config) {
+        this.prefix = prefix;
+        this.context = context;
+        this.config = config;
+    }
+
+    /**
+     * 遍历主备集群中前缀匹配的 key, 同一 key 会分别从两个集群返回, 也可能被 SCAN 重复返回.
+     * key 按 UTF-8 解码后交给 visitor, 不是 UTF-8 编码的 key 中无法解码的字节会被替换.
+     */
+    public PrefixScanProgress scan(final KeyVisitor visitor) {
+        return run(new PageHandler() {
+            @Override
+            public int handle(ClusterRole cluster, ClusterNode node, Jedis jedis, List<byte[]> keys) {
+                List<String> decoded = new ArrayList<>(keys.size());
+                for (byte[] key : keys) {
+                    decoded.add(SafeEncoder.encode(key));
+                }
+                visitor.visit(cluster, node.getName(), decoded);
+                return keys.size();
+            }
+        });
+    }
+
+    /**
+     * 删除主备集群中前缀匹配的 key, 返回的进度中 processedKeys 为实际删除的 key 数.
+     * 以 pipeline 执行单 key UNLINK, 在后台线程释放大 key 的内存; 节点不支持 UNLINK (Redis 4.0 以下) 时改用 DEL.
+     */
+    public PrefixScanProgress delete() {
+        return run(new PageHandler() {
+
+            private volatile boolean unlinkUnsupported;
+
+            @Override
+            public int handle(ClusterRole cluster, ClusterNode node, Jedis jedis, List<byte[]> keys) {
+                if (!unlinkUnsupported) {
+                    Pipeline pipeline = jedis.pipelined();
+                    List<Response<Object>> responses = new ArrayList<>(keys.size());
+                    for (byte[] key : keys) {
+                        responses.add(pipeline.eval(UNLINK_SCRIPT, 1, key));
+                    }
+                    pipeline.sync();
+                    int deleted = 0;
+                    for (Response<Object> response : responses) {
+                        try {
+                            Object value = response.get();
+                            deleted += value instanceof Long ? ((Long) value).intValue() : 0;
+                        } catch (JedisDataException e) {
+                            if (e.getMessage() != null && e.getMessage().contains("Unknown Redis command")) {
+                                unlinkUnsupported = true;
+                            }
+                        }
+                    }
+                    if (!unlinkUnsupported) {
+                        return deleted;
+                    }
+                    LOGGER.warn("Redis node=[{}] does not support UNLINK, delete prefix=[{}] with DEL", node.getName(), prefix);
+                }
+
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<Long>> responses = new ArrayList<>(keys.size());
+                for (byte[] key : keys) {
+                    responses.add(pipeline.del(key));
+                }
+                pipeline.sync();
+                int deleted = 0;
+                for (Response<Long> response : responses) {
+                    deleted += getQuietly(response, 0L);
+                }
+                return deleted;
+            }
+        });
+    }
+
+    /**
+     * 把主备集群中前缀匹配的 key 以 DUMP 格式导出到本地文件, 边遍历边写入. 遍历期间被删除的 key 不导出.
+     */
+    public PrefixScanProgress export(File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            return run(new PageHandler() {
+                @Override
+                public int handle(ClusterRole cluster, ClusterNode node, Jedis jedis, List<byte[]> keys) throws IOException {
+                    Pipeline pipeline = jedis.pipelined();
+                    List<Response<byte[]>> dumps = new ArrayList<>(keys.size());
+                    List<Response<Long>> ttls = new ArrayList<>(keys.size());
+                    for (byte[] key : keys) {
+                        dumps.add(pipeline.dump(key));
+                        ttls.add(pipeline.pttl(key));
+                    }
+                    pipeline.sync();
+                    int exported = 0;
+                    synchronized (out) {
+                        for (int i = 0; i < keys.size(); i++) {
+                            byte[] dump = getQuietly(dumps.get(i), null);
+                            if (dump == null) {
+                                continue;
+                            }
+                            byte[] key = keys.get(i);
+                            out.writeByte(cluster == ClusterRole.PRIMARY ? 0 : 1);
+                            out.writeInt(key.length);
+                            out.write(key);
+                            out.writeLong(getQuietly(ttls.get(i), -1L));
+                            out.writeInt(dump.length);
+                            out.write(dump);
+                            exported++;
+                        }
+                    }
+                    return exported;
+                }
+            });
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 当前或最近一次遍历的进度, 没有遍历过时为 null.
+     */
+    public PrefixScanProgress getProgress() {
+        return progress;
+    }
+
+    private PrefixScanProgress run(final PageHandler handler) {
+        List<Target> targets = new ArrayList<>();
+        addTargets(targets, ClusterRole.PRIMARY, context.getJedisCluster());
+        addTargets(targets, ClusterRole.STANDBY, context.getStandyJedisCluster());
+        final PrefixScanProgress current = new PrefixScanProgress(targets.size());
+        progress = current;
+        if (targets.isEmpty()) {
+            return current;
+        }
+
+        final RateLimiter rateLimiter = new RateLimiter(config.getKeysPerSecond());
+        final ScanParams params = new ScanParams().match(SafeEncoder.encode(matchPattern(prefix))).count(config.getScanCount());
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(config.getParallelism(), targets.size())),
+                new ThreadFactory() {
+                    private final AtomicInteger index = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "redis-prefix-scan-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        for (final Target target : targets) {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    current.nodeFinished(scanNode(target, params, rateLimiter, handler, current));
+                }
+            });
+        }
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.info("Scanning redis prefix=[{}], {}", prefix, current);
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Scan redis prefix=[{}] finished, {}", prefix, current);
+        return current;
+    }
+
+    private void addTargets(List<Target> targets, ClusterRole role, JedisCluster cluster) {
+        if (cluster == null) {
+            return;
+        }
+        ClusterHealth health = context.getClusterHealth(cluster);
+        if (health != null && !health.allowRequest()) {
+            LOGGER.warn("Skip scanning redis cluster=[{}] with open circuit, prefix=[{}]", role, prefix);
+            return;
+        }
+        JedisPoolAccessor jedisPoolAccessor = context.getJedisPoolAccessor(cluster);
+        if (jedisPoolAccessor.getMasterNodes().isEmpty()) {
+            jedisPoolAccessor.refresh();  // 路由表尚未在后台加载完成, 遍历任务在当前线程加载
+        }
+        for (ClusterNode node : jedisPoolAccessor.getMasterNodes()) {
+            targets.add(new Target(role, node));
+        }
+    }
+
+    private boolean scanNode(Target target, ScanParams params, RateLimiter rateLimiter, PageHandler handler,
+                             PrefixScanProgress current) {
+        Jedis jedis = null;
+        try {
+            jedis = target.node.getPool().getResource();
+            byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+            do {
+                // 每次 SCAN 检查约 COUNT 个 key, 不匹配前缀的 key 同样占用节点时间, 因此按 COUNT 而不是返回的 key 数限速
+                rateLimiter.acquire(config.getScanCount());
+                ScanResult<byte[]> result = jedis.scan(cursor, params);
+                cursor = result.getCursorAsBytes();
+                List<byte[]> keys = result.getResult();
+                if (!keys.isEmpty()) {
+                    current.addScanned(keys.size());
+                    current.addProcessed(handler.handle(target.cluster, target.node, jedis, keys));
+                }
+            } while (!Arrays.equals(ScanParams.SCAN_POINTER_START_BINARY, cursor));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            LOGGER.warn("Scan redis node failure! cluster=[{}], node=[{}], prefix=[{}]", target.cluster, target.node.getName(), prefix, e);
+            return false;
+        } finally {
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 前缀中的 glob 特殊字符转义后加上 *.
+     */
+    static String matchPattern(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 2);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('*').toString();
+    }
+
+    /**
+     * 读取 pipeline 中单个命令的结果, 命令出错 (如集群迁移中的 MOVED) 时返回默认值.
+     */
+    private static <T> T getQuietly(Response<T> response, T defaultValue) {
+        try {
+            T value = response.get();
+            return value != null ? value : defaultValue;
+        } catch (JedisDataException e) {
+            return defaultValue;
+        }
+    }
+}
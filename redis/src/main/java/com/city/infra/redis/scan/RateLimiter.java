@@ -0,0 +1,41 @@
+package com.city.infra.redis.scan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按固定速率发放许可的限速器, 多个线程共享. 一次获取多个许可时立即返回, 由之后的获取者等待, 平均速率不超过设定值.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;  // 每个许可的间隔, 为 0 时不限速
+
+    private long nextFreeNanos = System.nanoTime();
+
+    public RateLimiter(int permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 预留许可, 返回需要等待的纳秒数.
+     */
+    synchronized long reserve(int permits) {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        // 空闲期间不积累许可, 避免之后突发
+        if (nextFreeNanos < now) {
+            nextFreeNanos = now;
+        }
+        long waitNanos = nextFreeNanos - now;
+        nextFreeNanos += permits * intervalNanos;
+        return waitNanos;
+    }
+}
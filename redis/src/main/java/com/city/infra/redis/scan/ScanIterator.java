@@ -0,0 +1,105 @@
+package com.city.infra.redis.scan;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按游标分页遍历大集合的迭代器, 调用方消费当前页时在线程池中预取下一页, 内存中最多保留两页.
+ * 与 SCAN 命令的语义相同: 遍历期间一直存在的元素至少返回一次, 可能重复返回. 不是线程安全的.
+ * 没有遍历完就放弃时应调用 close 取消预取.
+ */
+public class ScanIterator<T> implements Iterator<T>, Closeable {
+
+    private final ScanSource<T> source;
+
+    private final ExecutorService executorService;  // 为 null 时在调用线程中读取下一页
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private Future<ScanResult<T>> next;  // 预取中的下一页, 遍历结束后为 null
+
+    public ScanIterator(ScanSource<T> source, ExecutorService executorService) {
+        this.source = source;
+        this.executorService = executorService;
+        this.next = fetch(ScanParams.SCAN_POINTER_START);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            ScanResult<T> result;
+            try {
+                result = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return false;
+            } catch (ExecutionException e) {
+                close();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Scan redis failed!", e.getCause());
+            }
+            String cursor = result.getStringCursor();
+            next = ScanParams.SCAN_POINTER_START.equals(cursor) ? null : fetch(cursor);
+            page = result.getResult().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+        page = Collections.emptyIterator();
+    }
+
+    private Future<ScanResult<T>> fetch(final String cursor) {
+        FutureTask<ScanResult<T>> task = new FutureTask<>(new Callable<ScanResult<T>>() {
+            @Override
+            public ScanResult<T> call() throws Exception {
+                return source.fetch(cursor);
+            }
+        });
+        if (executorService == null) {
+            task.run();
+            return task;
+        }
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+        return task;
+    }
+}
@@ -0,0 +1,11 @@
+package com.city.infra.redis.scan;
+
+import redis.clients.jedis.ScanResult;
+
+/**
+ * 按游标读取一页元素, 由 ScanIterator 依次以上一页返回的游标调用, 直到返回的游标为 "0".
+ */
+public interface ScanSource<T> {
+
+    ScanResult<T> fetch(String cursor);
+}
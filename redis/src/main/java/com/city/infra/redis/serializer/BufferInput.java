@@ -0,0 +1,142 @@
+package com.city.infra.redis.serializer;
+
+import java.nio.charset.Charset;
+
+/**
+ * 直接读取响应字节数组的输入, 与 BufferOutput 的编码一一对应.
+ */
+public class BufferInput {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+
+    private int position;
+
+    private final int limit;
+
+    public BufferInput(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public BufferInput(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public int readByte() {
+        require(1);
+        return bytes[position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public byte[] readBytes(int length) {
+        require(length);
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    public byte[] readRemainingBytes() {
+        return readBytes(remaining());
+    }
+
+    public int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public long readVarLong() {
+        long zigzag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IllegalStateException("Malformed varlong");
+    }
+
+    public long readLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * 读取剩余的十进制 ASCII 整数.
+     */
+    public long readAsciiLong() {
+        if (position >= limit) {
+            throw new NumberFormatException("Empty number");
+        }
+        boolean negative = bytes[position] == '-';
+        int i = negative ? position + 1 : position;
+        if (i >= limit || limit - i > 19) {
+            throw new NumberFormatException(new String(bytes, position, limit - position, UTF8));
+        }
+        long value = 0;
+        for (; i < limit; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(new String(bytes, position, limit - position, UTF8));
+            }
+            value = value * 10 - digit;  // 按负数累加, 可以表示 Long.MIN_VALUE
+            if (value > 0) {
+                throw new NumberFormatException(new String(bytes, position, limit - position, UTF8));
+            }
+        }
+        position = limit;
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw new NumberFormatException("Long overflow");
+        }
+        return -value;
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        require(length);
+        String value = new String(bytes, position, length, UTF8);
+        position += length;
+        return value;
+    }
+
+    public String readRemainingUtf8() {
+        String value = new String(bytes, position, remaining(), UTF8);
+        position = limit;
+        return value;
+    }
+
+    private void require(int length) {
+        if (length < 0 || position + length > limit) {
+            throw new IllegalStateException("Unexpected end of redis value");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.city.infra.redis.serializer;
+
+import java.util.Arrays;
+
+/**
+ * 可扩容的输出缓冲区, 提供紧凑的二进制编码: zigzag varint 整数, 长度前缀的 UTF-8 字符串等.
+ * 通过 local() 获取按线程复用的实例, 序列化过程中不分配中间对象, 只在 toByteArray 时复制一次 (Jedis 需要长度恰好的数组).
+ */
+public class BufferOutput {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;  // 超过该容量的缓冲区不再复用
+
+    private static final ThreadLocal<BufferOutput> LOCAL = new ThreadLocal<>();
+
+    private byte[] buffer;
+
+    private int position;
+
+    public BufferOutput() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public BufferOutput(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * 返回当前线程复用的空缓冲区, 在下一次调用 local() 前有效.
+     */
+    public static BufferOutput local() {
+        BufferOutput out = LOCAL.get();
+        if (out == null || out.buffer.length > MAX_POOLED_CAPACITY) {
+            out = new BufferOutput();
+            LOCAL.set(out);
+        }
+        out.position = 0;
+        return out;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * 无符号 varint, 每字节 7 位, 小于 128 的值只占一个字节.
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * zigzag 编码的 varint, 绝对值小的负数同样只占很少的字节.
+     */
+    public void writeVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        ensureCapacity(10);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte) zigzag;
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    public void writeDouble(double value) {
+        writeLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * 以十进制 ASCII 写入, 与 Redis 的整数字符串 (INCRBY 等) 兼容.
+     */
+    public void writeAsciiLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    /**
+     * 长度前缀 (varint 字节数) 的 UTF-8 字符串, 自定界.
+     */
+    public void writeString(String value) {
+        int length = utf8Length(value);
+        writeVarInt(length);
+        writeUtf8(value, length);
+    }
+
+    /**
+     * 不带长度前缀的 UTF-8 字符串, 只能作为 value 的最后一部分.
+     */
+    public void writeUtf8(String value) {
+        writeUtf8(value, utf8Length(value));
+    }
+
+    private void writeUtf8(String value, int length) {
+        ensureCapacity(length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';  // 与 String.getBytes 一致, 不成对的代理字符写为 '?'
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 2;  // 代理对共 4 字节, 两个 char 已计 2
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            } else if (c >= 0x80) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,12 @@
+package com.city.infra.redis.serializer;
+
+/**
+ * ObjectRedisAccessor 使用的序列化接口, 直接写入复用的输出缓冲区, 直接从响应的字节数组读取, 不经过 String 中转.
+ * 作为 Redis value 时 read 的输入就是完整的 value; 用作 list/map 的元素时必须自定界, 即能够从输入中读出恰好一个值.
+ */
+public interface Serializer<T> {
+
+    void write(T value, BufferOutput out);
+
+    T read(BufferInput in);
+}
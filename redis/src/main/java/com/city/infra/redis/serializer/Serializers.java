@@ -0,0 +1,192 @@
+package com.city.infra.redis.serializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内置的序列化实现.
+ * STRING, LONG, INTEGER, DOUBLE, BOOLEAN 和 BYTES 与 RedisAccessor 写入的字符串格式兼容, 只能用作完整的 value;
+ * VAR_INT, VAR_LONG, COMPACT_STRING, COMPACT_DOUBLE 及 list/map 是自定界的紧凑二进制格式, 可以互相组合.
+ */
+public final class Serializers {
+
+    public static final Serializer<String> STRING = new Serializer<String>() {
+        @Override
+        public void write(String value, BufferOutput out) {
+            out.writeUtf8(value);
+        }
+
+        @Override
+        public String read(BufferInput in) {
+            return in.readRemainingUtf8();
+        }
+    };
+
+    public static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        @Override
+        public void write(byte[] value, BufferOutput out) {
+            out.writeBytes(value);
+        }
+
+        @Override
+        public byte[] read(BufferInput in) {
+            return in.readRemainingBytes();
+        }
+    };
+
+    public static final Serializer<Long> LONG = new Serializer<Long>() {
+        @Override
+        public void write(Long value, BufferOutput out) {
+            out.writeAsciiLong(value);
+        }
+
+        @Override
+        public Long read(BufferInput in) {
+            return in.readAsciiLong();
+        }
+    };
+
+    public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        @Override
+        public void write(Integer value, BufferOutput out) {
+            out.writeAsciiLong(value);
+        }
+
+        @Override
+        public Integer read(BufferInput in) {
+            long value = in.readAsciiLong();
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Integer overflow: " + value);
+            }
+            return (int) value;
+        }
+    };
+
+    public static final Serializer<Double> DOUBLE = new Serializer<Double>() {
+        @Override
+        public void write(Double value, BufferOutput out) {
+            out.writeUtf8(Double.toString(value));
+        }
+
+        @Override
+        public Double read(BufferInput in) {
+            return Double.valueOf(in.readRemainingUtf8());
+        }
+    };
+
+    public static final Serializer<Boolean> BOOLEAN = new Serializer<Boolean>() {
+        @Override
+        public void write(Boolean value, BufferOutput out) {
+            out.writeByte(value ? '1' : '0');
+        }
+
+        @Override
+        public Boolean read(BufferInput in) {
+            return in.readByte() == '1';
+        }
+    };
+
+    public static final Serializer<Integer> VAR_INT = new Serializer<Integer>() {
+        @Override
+        public void write(Integer value, BufferOutput out) {
+            out.writeVarLong(value);
+        }
+
+        @Override
+        public Integer read(BufferInput in) {
+            return (int) in.readVarLong();
+        }
+    };
+
+    public static final Serializer<Long> VAR_LONG = new Serializer<Long>() {
+        @Override
+        public void write(Long value, BufferOutput out) {
+            out.writeVarLong(value);
+        }
+
+        @Override
+        public Long read(BufferInput in) {
+            return in.readVarLong();
+        }
+    };
+
+    public static final Serializer<Double> COMPACT_DOUBLE = new Serializer<Double>() {
+        @Override
+        public void write(Double value, BufferOutput out) {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double read(BufferInput in) {
+            return in.readDouble();
+        }
+    };
+
+    public static final Serializer<String> COMPACT_STRING = new Serializer<String>() {
+        @Override
+        public void write(String value, BufferOutput out) {
+            out.writeString(value);
+        }
+
+        @Override
+        public String read(BufferInput in) {
+            return in.readString();
+        }
+    };
+
+    private Serializers() {
+    }
+
+    /**
+     * 元素个数 (varint) 加依次写入的元素, element 必须是自定界的序列化实现.
+     */
+    public static <E> Serializer<List<E>> list(final Serializer<E> element) {
+        return new Serializer<List<E>>() {
+            @Override
+            public void write(List<E> value, BufferOutput out) {
+                out.writeVarInt(value.size());
+                for (E e : value) {
+                    element.write(e, out);
+                }
+            }
+
+            @Override
+            public List<E> read(BufferInput in) {
+                int size = in.readVarInt();
+                List<E> value = new ArrayList<>(Math.min(size, in.remaining()));
+                for (int i = 0; i < size; i++) {
+                    value.add(element.read(in));
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * 条目个数 (varint) 加依次写入的 key 和 value, 读取时保持写入顺序.
+     */
+    public static <K, V> Serializer<Map<K, V>> map(final Serializer<K> key, final Serializer<V> value) {
+        return new Serializer<Map<K, V>>() {
+            @Override
+            public void write(Map<K, V> map, BufferOutput out) {
+                out.writeVarInt(map.size());
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    key.write(entry.getKey(), out);
+                    value.write(entry.getValue(), out);
+                }
+            }
+
+            @Override
+            public Map<K, V> read(BufferInput in) {
+                int size = in.readVarInt();
+                Map<K, V> map = new LinkedHashMap<>(Math.min(size, in.remaining()) * 2);
+                for (int i = 0; i < size; i++) {
+                    map.put(key.read(in), value.read(in));
+                }
+                return map;
+            }
+        };
+    }
+}
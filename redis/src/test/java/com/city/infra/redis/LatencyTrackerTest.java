@@ -0,0 +1,30 @@
+package com.city.infra.redis;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyTrackerTest extends TestCase {
+
+    @Test
+    public void testPercentile() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(0.95);
+        Assert.assertEquals(-1, tracker.getPercentileNanos());
+        for (int i = 1; i <= 1024; i++) {
+            tracker.record(i);
+        }
+        Assert.assertEquals(973, tracker.getPercentileNanos());
+    }
+
+    @Test
+    public void testRecentSamplesOnly() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(0.5);
+        for (int i = 0; i < 4096; i++) {
+            tracker.record(1000000);
+        }
+        for (int i = 0; i < 1024; i++) {
+            tracker.record(10);
+        }
+        Assert.assertEquals(10, tracker.getPercentileNanos());
+    }
+}
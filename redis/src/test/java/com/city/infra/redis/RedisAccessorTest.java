@@ -42,6 +42,41 @@ public class RedisAccessorTest extends TestCase {
         Assert.assertNull(redisAccessor.get("test_get_key2", null));
     }
 
+    @Test
+    public void testMget() throws Exception {
+        RedisAccessor redisAccessor = clusterFactory.createRedisAccessor(prefix);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            redisAccessor.set("test_mget_key" + i, "value" + i, 3600);
+            keys.add("test_mget_key" + i);
+        }
+        keys.add("test_mget_missing");
+        List<String> values = redisAccessor.mget(keys, "default_value");
+        Assert.assertEquals(101, values.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("value" + i, values.get(i));
+        }
+        Assert.assertEquals("default_value", values.get(100));
+    }
+
+    @Test
+    public void testHmgetAndHgetAll() throws Exception {
+        RedisAccessor redisAccessor = clusterFactory.createRedisAccessor(prefix);
+        redisAccessor.hset("test_hmget_key1", "field1", "value1", 3600);
+        redisAccessor.hset("test_hmget_key2", "field2", "value2", 3600);
+        List<String> keys = Arrays.asList("test_hmget_key1", "test_hmget_key2", "test_hmget_key3");
+
+        List<List<String>> values = redisAccessor.hmget(keys, "field1", "field2");
+        Assert.assertEquals(Arrays.asList("value1", null), values.get(0));
+        Assert.assertEquals(Arrays.asList(null, "value2"), values.get(1));
+        Assert.assertEquals(Arrays.asList(null, null), values.get(2));
+
+        List<Map<String, String>> hashes = redisAccessor.hgetAll(keys);
+        Assert.assertEquals(Collections.singletonMap("field1", "value1"), hashes.get(0));
+        Assert.assertEquals(Collections.singletonMap("field2", "value2"), hashes.get(1));
+        Assert.assertTrue(hashes.get(2).isEmpty());
+    }
+
     @Test
     public void testSet() throws Exception {
         RedisAccessor redisAccessor = clusterFactory.createRedisAccessor(prefix);
@@ -0,0 +1,244 @@
+package com.city.infra.redis.cache;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientTrackingInvalidatorTest extends TestCase {
+
+    private StubNode node;
+
+    private ClientTrackingInvalidator invalidator;
+
+    /**
+     * 只实现 CLIENT ID、SUBSCRIBE 和 CLIENT TRACKING 的 Redis 节点, 可以向订阅连接推送失效通知.
+     */
+    private static class StubNode implements Runnable {
+
+        final ServerSocket server;
+
+        final List<Socket> subscribers = new CopyOnWriteArrayList<>();
+
+        final List<List<String>> trackingCommands = new CopyOnWriteArrayList<>();
+
+        final AtomicInteger openConnections = new AtomicInteger();
+
+        final AtomicInteger clientIds = new AtomicInteger();
+
+        StubNode() throws IOException {
+            server = new ServerSocket(0);
+            Thread acceptor = new Thread(this, "stub-redis-node");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        HostAndPort getHostAndPort() {
+            return new HostAndPort("127.0.0.1", server.getLocalPort());
+        }
+
+        @Override
+        public void run() {
+            while (!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void publish(String key) throws IOException {
+            String message = "*3\r\n" + bulk("message") + bulk("__redis__:invalidate") + "*1\r\n" + bulk(key);
+            for (Socket subscriber : subscribers) {
+                write(subscriber, message);
+            }
+        }
+
+        void close() throws IOException {
+            server.close();
+        }
+
+        private void serve(Socket socket) {
+            openConnections.incrementAndGet();
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                List<String> command;
+                while ((command = readCommand(in)) != null) {
+                    String name = command.get(0).toUpperCase();
+                    if ("CLIENT".equals(name) && "ID".equalsIgnoreCase(command.get(1))) {
+                        write(socket, ":" + clientIds.incrementAndGet() + "\r\n");
+                    } else if ("CLIENT".equals(name)) {
+                        trackingCommands.add(command);
+                        write(socket, "+OK\r\n");
+                    } else if ("SUBSCRIBE".equals(name)) {
+                        subscribers.add(socket);
+                        write(socket, "*3\r\n" + bulk("subscribe") + bulk(command.get(1)) + ":1\r\n");
+                    } else {
+                        write(socket, "-ERR unknown command\r\n");
+                    }
+                }
+            } catch (IOException e) {
+                // 客户端关闭连接
+            } finally {
+                subscribers.remove(socket);
+                openConnections.decrementAndGet();
+            }
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            int count = Integer.parseInt(line.substring(1));
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] data = new byte[length + 2];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+                args.add(new String(data, 0, length, StandardCharsets.UTF_8));
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    return line.substring(0, line.length() - 1);
+                }
+                line.append((char) c);
+            }
+            return null;
+        }
+
+        private static String bulk(String value) {
+            return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+        }
+
+        private static void write(Socket socket, String reply) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            synchronized (socket) {
+                out.write(reply.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        node = new StubNode();
+        invalidator = new ClientTrackingInvalidator("prefix:");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        invalidator.close();
+        node.close();
+    }
+
+    @Test
+    public void testInvalidateSharedNearCaches() throws Exception {
+        NearCache cache1 = new NearCache(1024);
+        NearCache cache2 = new NearCache(1024);
+        invalidator.register(cache1);
+        invalidator.register(cache2);
+        long version = cache1.getVersion();
+
+        invalidator.updateNodes(Collections.singletonList(node.getHostAndPort()));
+        // updateNodes 和建立跟踪连接后各清空一次近端缓存
+        waitUntilVersion(cache1, version + 2);
+        Assert.assertEquals(1, node.trackingCommands.size());
+        Assert.assertEquals("prefix:", node.trackingCommands.get(0).get(node.trackingCommands.get(0).size() - 1));
+        Assert.assertEquals(2, node.openConnections.get());
+
+        cache1.put("prefix:key", null, "value", 60000, cache1.getVersion());
+        cache2.put("prefix:key", null, "value", 60000, cache2.getVersion());
+        cache2.put("prefix:other", null, "value", 60000, cache2.getVersion());
+        node.publish("prefix:key");
+
+        waitUntilVersion(cache2, cache2.getVersion() + 1);
+        Assert.assertNull(cache1.get("prefix:key", null));
+        Assert.assertNull(cache2.get("prefix:key", null));
+        Assert.assertEquals("value", cache2.get("prefix:other", null));
+    }
+
+    @Test
+    public void testUpdateNodesStopsRemovedNode() throws Exception {
+        NearCache cache = new NearCache(1024);
+        invalidator.register(cache);
+        long version = cache.getVersion();
+        invalidator.updateNodes(Collections.singletonList(node.getHostAndPort()));
+        waitUntilVersion(cache, version + 2);
+
+        invalidator.updateNodes(Collections.<HostAndPort>emptyList());
+        Assert.assertTrue(invalidator.getNodes().isEmpty());
+        waitUntilClosed();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        NearCache cache = new NearCache(1024);
+        invalidator.register(cache);
+        long version = cache.getVersion();
+        invalidator.updateNodes(Collections.singletonList(node.getHostAndPort()));
+        waitUntilVersion(cache, version + 2);
+
+        invalidator.close();
+        waitUntilClosed();
+
+        // 关闭后不再跟踪新节点
+        invalidator.updateNodes(Collections.singletonList(node.getHostAndPort()));
+        Assert.assertTrue(invalidator.getNodes().isEmpty());
+        Thread.sleep(100);
+        Assert.assertEquals(0, node.openConnections.get());
+    }
+
+    private static void waitUntilVersion(NearCache cache, long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getVersion() < version && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(cache.getVersion() >= version);
+    }
+
+    private void waitUntilClosed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (node.openConnections.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, node.openConnections.get());
+    }
+}
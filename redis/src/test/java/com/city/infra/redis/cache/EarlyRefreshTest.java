@@ -0,0 +1,35 @@
+package com.city.infra.redis.cache;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EarlyRefreshTest extends TestCase {
+
+    @Test
+    public void testShouldRefresh() throws Exception {
+        EarlyRefresh refresh = new EarlyRefresh(1.0, 100);
+        // -ln(1 - 0.5) * 100ms 约为 69ms
+        Assert.assertTrue(refresh.shouldRefresh(50, 0.5));
+        Assert.assertFalse(refresh.shouldRefresh(100, 0.5));
+        Assert.assertTrue(refresh.shouldRefresh(100, 0.9));
+        Assert.assertFalse(refresh.shouldRefresh(60000, 0.9));
+        Assert.assertFalse(refresh.shouldRefresh(-1, 0.99));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        EarlyRefresh refresh = new EarlyRefresh(0, 100);
+        Assert.assertFalse(refresh.shouldRefresh(0, 0.99));
+    }
+
+    @Test
+    public void testRecordLoad() throws Exception {
+        EarlyRefresh refresh = new EarlyRefresh(1.0, 100);
+        refresh.recordLoad(1000 * 1000000L);
+        Assert.assertEquals(1000, refresh.getDeltaMillis());
+        refresh.recordLoad(200 * 1000000L);
+        Assert.assertEquals(900, refresh.getDeltaMillis());
+        Assert.assertTrue(refresh.shouldRefresh(500, 0.5));
+    }
+}
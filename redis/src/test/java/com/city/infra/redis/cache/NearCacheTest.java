@@ -0,0 +1,65 @@
+package com.city.infra.redis.cache;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NearCacheTest extends TestCase {
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        NearCache cache = new NearCache(1024);
+        Assert.assertNull(cache.get("prefix:key", null));
+        cache.put("prefix:key", null, "value", 60000, cache.getVersion());
+        cache.put("prefix:hash", "field", "value1", 60000, cache.getVersion());
+        Assert.assertEquals("value", cache.get("prefix:key", null));
+        Assert.assertEquals("value1", cache.get("prefix:hash", "field"));
+        Assert.assertNull(cache.get("prefix:hash", "field2"));
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        NearCache cache = new NearCache(1024);
+        cache.put("prefix:hash", "field1", "value1", 60000, cache.getVersion());
+        cache.put("prefix:hash", "field2", "value2", 60000, cache.getVersion());
+        cache.invalidate("prefix:hash");
+        Assert.assertNull(cache.get("prefix:hash", "field1"));
+        Assert.assertNull(cache.get("prefix:hash", "field2"));
+        Assert.assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testStalePutIsDropped() throws Exception {
+        NearCache cache = new NearCache(1024);
+        long version = cache.getVersion();
+        cache.invalidate("prefix:key");
+        cache.put("prefix:key", null, "stale", 60000, version);
+        Assert.assertNull(cache.get("prefix:key", null));
+
+        version = cache.getVersion();
+        cache.invalidate("prefix:other");
+        cache.replace("prefix:key", null, "written", 60000, version);
+        Assert.assertNull(cache.get("prefix:key", null));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        NearCache cache = new NearCache(1024);
+        cache.put("prefix:key", null, "value", 50, cache.getVersion());
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("prefix:key", null));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        NearCache cache = new NearCache(16 * 4);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("prefix:key" + i, null, "value" + i, 60000, cache.getVersion());
+        }
+        Assert.assertEquals(10000 - 16 * 4, cache.getEvictionCount());
+        Assert.assertEquals("value9999", cache.get("prefix:key9999", null));
+        Assert.assertNull(cache.get("prefix:key0", null));
+    }
+}
@@ -0,0 +1,40 @@
+package com.city.infra.redis.cache;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NegativeLookupCacheTest extends TestCase {
+
+    @Test
+    public void testPutAndContains() throws Exception {
+        NegativeLookupCache cache = new NegativeLookupCache(1024, 60000);
+        Assert.assertFalse(cache.contains("prefix:key1", null));
+        cache.put("prefix:key1", null);
+        cache.put("prefix:key2", "field1");
+        Assert.assertTrue(cache.contains("prefix:key1", null));
+        Assert.assertTrue(cache.contains("prefix:key2", "field1"));
+        Assert.assertFalse(cache.contains("prefix:key2", "field2"));
+        Assert.assertFalse(cache.contains("prefix:key2", null));
+        Assert.assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        NegativeLookupCache cache = new NegativeLookupCache(1024, 60000);
+        cache.put("prefix:key", "field1");
+        cache.put("prefix:key", "field2");
+        cache.invalidate("prefix:key");
+        Assert.assertFalse(cache.contains("prefix:key", "field1"));
+        Assert.assertFalse(cache.contains("prefix:key", "field2"));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        NegativeLookupCache cache = new NegativeLookupCache(1024, 50);
+        cache.put("prefix:key", null);
+        Assert.assertTrue(cache.contains("prefix:key", null));
+        Thread.sleep(100);
+        Assert.assertFalse(cache.contains("prefix:key", null));
+    }
+}
@@ -0,0 +1,116 @@
+package com.city.infra.redis.cache;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest extends TestCase {
+
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger shared = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        final CountDownLatch joined = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    SingleFlight.Call<String> call = singleFlight.join("foo");
+                    joined.countDown();
+                    if (!call.isLeader()) {
+                        shared.incrementAndGet();
+                        return call.await();
+                    }
+                    loads.incrementAndGet();
+                    // 等待其余线程加入后再返回结果
+                    joined.await(5, TimeUnit.SECONDS);
+                    release.await(5, TimeUnit.SECONDS);
+                    call.complete("bar");
+                    return "bar";
+                }
+            }));
+        }
+        Assert.assertTrue(joined.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Future<String> future : futures) {
+            Assert.assertEquals("bar", future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(threads - 1, shared.get());
+        Assert.assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testCompletedCallNotReused() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Call<String> first = singleFlight.join("foo");
+        Assert.assertTrue(first.isLeader());
+        first.complete("bar");
+        SingleFlight.Call<String> second = singleFlight.join("foo");
+        Assert.assertTrue(second.isLeader());
+        Assert.assertNotSame(first, second);
+        second.complete(null);
+        Assert.assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testSameThreadRejoinIsFollower() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Call<String> leader = singleFlight.join("foo");
+        SingleFlight.Call<String> rejoined = singleFlight.join("foo");
+        Assert.assertTrue(leader.isLeader());
+        Assert.assertFalse(rejoined.isLeader());
+        try {
+            rejoined.complete("baz");
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        leader.complete("bar");
+        Assert.assertEquals("bar", rejoined.await());
+        Assert.assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void testFailurePropagated() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        SingleFlight.Call<String> leader = singleFlight.join("foo");
+        final SingleFlight.Call<?>[] follower = new SingleFlight.Call<?>[1];
+        final boolean[] followerLeads = new boolean[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                follower[0] = singleFlight.join("foo");
+                followerLeads[0] = follower[0].isLeader();
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertFalse(followerLeads[0]);
+
+        leader.fail(new IllegalStateException("boom"));
+        try {
+            follower[0].await();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("boom", e.getMessage());
+        }
+        Assert.assertEquals(0, singleFlight.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.city.infra.redis.codec;
+
+import com.city.infra.redis.serializer.BufferOutput;
+import com.city.infra.redis.serializer.Serializers;
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DeflateValueCodecTest extends TestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testSmallValueNotCompressed() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(1024);
+        byte[] value = "foo".getBytes(UTF8);
+        Assert.assertSame(value, codec.encode(value));
+        Assert.assertSame(value, codec.decode(value));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(16);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("城市-").append(i % 10);
+        }
+        byte[] value = builder.toString().getBytes(UTF8);
+        byte[] encoded = codec.encode(value);
+        Assert.assertEquals(DeflateValueCodec.MAGIC, encoded[0]);
+        Assert.assertTrue(encoded.length < value.length / 4);
+        Assert.assertArrayEquals(value, codec.decode(encoded));
+        // 复用线程内的 Deflater 和缓冲区后结果不变
+        Assert.assertArrayEquals(encoded, codec.encode(value));
+    }
+
+    @Test
+    public void testIncompressibleValueKeptRaw() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(16);
+        byte[] value = new byte[4096];
+        new Random(1).nextBytes(value);
+        value[0] = 'x';
+        Assert.assertSame(value, codec.encode(value));
+        Assert.assertSame(value, codec.decode(value));
+    }
+
+    @Test
+    public void testRawValueStartingWithMagic() throws Exception {
+        // 193 个元素的列表以 varint 0xC1 0x01 开头, 未达到压缩阈值时原样存储
+        List<Long> list = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 193; i++) {
+            list.add(8192L + random.nextInt(1 << 19));
+        }
+        BufferOutput out = new BufferOutput();
+        Serializers.list(Serializers.VAR_LONG).write(list, out);
+        byte[] value = out.toByteArray();
+        Assert.assertTrue(value.length < 1024);
+        Assert.assertEquals(DeflateValueCodec.MAGIC, value[0]);
+        Assert.assertEquals(0x01, value[1]);
+
+        DeflateValueCodec codec = new DeflateValueCodec(1024);
+        byte[] encoded = codec.encode(value);
+        Assert.assertEquals(value.length + 2, encoded.length);
+        Assert.assertEquals(DeflateValueCodec.MAGIC, encoded[0]);
+        Assert.assertEquals(0x00, encoded[1]);
+        Assert.assertArrayEquals(value, codec.decode(encoded));
+
+        // 压缩无效而原样存储时同样加头
+        byte[] incompressible = new byte[4096];
+        random.nextBytes(incompressible);
+        incompressible[0] = DeflateValueCodec.MAGIC;
+        encoded = new DeflateValueCodec(16).encode(incompressible);
+        Assert.assertEquals(0x00, encoded[1]);
+        Assert.assertArrayEquals(incompressible, codec.decode(encoded));
+    }
+
+    @Test
+    public void testInvalidLengthRejected() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(16);
+        byte[] encoded = codec.encode(new String(new char[1000]).replace('\0', 'a').getBytes(UTF8));
+        encoded[2] = 0x7F;
+        try {
+            codec.decode(encoded);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testMixedData() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(16);
+        byte[] plain = "写入时还未开启压缩的旧数据, 写入时还未开启压缩的旧数据".getBytes(UTF8);
+        Assert.assertArrayEquals(plain, codec.decode(plain));
+    }
+
+    @Test
+    public void testCorruptedValue() throws Exception {
+        DeflateValueCodec codec = new DeflateValueCodec(16);
+        byte[] encoded = codec.encode(new String(new char[1000]).replace('\0', 'a').getBytes(UTF8));
+        byte[] truncated = new byte[encoded.length - 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        try {
+            codec.decode(truncated);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.city.infra.redis.health;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class CircuitBreakerTest extends TestCase {
+
+    private final List<CircuitState> transitions = new ArrayList<>();
+
+    private final CircuitBreaker.Listener listener = new CircuitBreaker.Listener() {
+        @Override
+        public void onStateChange(CircuitBreaker breaker, CircuitState state) {
+            transitions.add(state);
+        }
+    };
+
+    private static CircuitBreakerConfig config() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumCalls(10);
+        config.setFailureRateThreshold(0.5);
+        config.setSlowCallMillis(100);
+        config.setWindowSize(20);
+        return config;
+    }
+
+    @Test
+    public void testOpenOnFailureRate() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("127.0.0.1:6379", config(), listener);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(1000, true);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.record(1000, false);
+        }
+        // 调用数不足 minimumCalls 时不熔断
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.record(1000, false);
+        Assert.assertFalse(breaker.allowRequest());
+        Assert.assertEquals(CircuitState.OPEN, breaker.getState());
+        Assert.assertEquals(1, transitions.size());
+    }
+
+    @Test
+    public void testSlowCallCountsAsFailure() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(null, config(), listener);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(TimeUnit.MILLISECONDS.toNanos(200), true);
+        }
+        Assert.assertEquals(CircuitState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testStayClosedBelowThreshold() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(null, config(), listener);
+        for (int i = 0; i < 100; i++) {
+            breaker.record(1000, i % 3 != 0);
+        }
+        Assert.assertEquals(CircuitState.CLOSED, breaker.getState());
+        Assert.assertTrue(transitions.isEmpty());
+    }
+
+    @Test
+    public void testOldCallsLeaveWindow() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(null, config(), listener);
+        for (int i = 0; i < 9; i++) {
+            breaker.record(1000, false);
+        }
+        // 之后的成功调用把早期失败挤出窗口
+        for (int i = 0; i < 40; i++) {
+            breaker.record(1000, true);
+        }
+        for (int i = 0; i < 9; i++) {
+            breaker.record(1000, false);
+        }
+        Assert.assertEquals(CircuitState.CLOSED, breaker.getState());
+        breaker.record(1000, false);
+        Assert.assertEquals(CircuitState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testCloseResetsWindow() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(null, config(), listener);
+        breaker.open();
+        breaker.open();
+        // OPEN 期间的记录被忽略
+        breaker.record(1000, false);
+        breaker.close();
+        Assert.assertTrue(breaker.allowRequest());
+        for (int i = 0; i < 9; i++) {
+            breaker.record(1000, false);
+        }
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertEquals(2, transitions.size());
+        Assert.assertEquals(CircuitState.OPEN, transitions.get(0));
+        Assert.assertEquals(CircuitState.CLOSED, transitions.get(1));
+    }
+}
@@ -0,0 +1,50 @@
+package com.city.infra.redis.metrics;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest extends TestCase {
+
+    @Test
+    public void testBucketBounds() throws Exception {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assert.assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+            if (value < Long.MAX_VALUE && index + 1 < 488) {
+                Assert.assertTrue(LatencyHistogram.bucketLowerBound(index + 1) > value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentile() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1000000, snapshot.getMaxNanos());
+        Assert.assertEquals(500500, snapshot.getMeanNanos(), 0.001);
+        long p99 = snapshot.getPercentileNanos(0.99);
+        Assert.assertTrue(p99 >= 990000 && p99 <= 990000 * 1.125);
+        long p50 = snapshot.getPercentileNanos(0.5);
+        Assert.assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125);
+    }
+
+    @Test
+    public void testOperationStats() throws Exception {
+        OperationStats stats = new OperationStats();
+        stats.record(OperationType.READ, 1000, 10, true);
+        stats.record(OperationType.READ, 2000, 0, false);
+        stats.record(OperationType.WRITE, 3000, 5, true);
+        OperationStats.Snapshot snapshot = stats.snapshot();
+        Assert.assertEquals(2, snapshot.getCount(OperationType.READ));
+        Assert.assertEquals(10, snapshot.getBytes(OperationType.READ));
+        Assert.assertEquals(1, snapshot.getErrors(OperationType.READ));
+        Assert.assertEquals(1, snapshot.getCount(OperationType.WRITE));
+        Assert.assertEquals(0, snapshot.getCount(OperationType.PIPELINE));
+    }
+}
@@ -0,0 +1,24 @@
+package com.city.infra.redis.pipeline;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+public class ClusterSlotTest extends TestCase {
+
+    @Test
+    public void testSameAsJedis() throws Exception {
+        String[] keys = {"", "a", "prefix:key", "{user1000}.following", "foo{}{bar}", "foo{{bar}}zap",
+                "foo{bar}{zap}", "{", "}", "中文键", "emoji😀"};
+        for (String key : keys) {
+            Assert.assertEquals(key, JedisClusterCRC16.getSlot(key), ClusterSlot.getSlot(key));
+            Assert.assertEquals(key, JedisClusterCRC16.getSlot(SafeEncoder.encode(key)), ClusterSlot.getSlot(SafeEncoder.encode(key)));
+        }
+        for (int i = 0; i < 10000; i++) {
+            String key = "prefix:" + i;
+            Assert.assertEquals(key, JedisClusterCRC16.getSlot(key), ClusterSlot.getSlot(key));
+        }
+    }
+}
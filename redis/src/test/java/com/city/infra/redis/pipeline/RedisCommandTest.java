@@ -0,0 +1,36 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.RedisScript;
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+public class RedisCommandTest extends TestCase {
+
+    @Test
+    public void testExpireOnCreateUsesScript() throws Exception {
+        RedisCommand<Long> hincrby = RedisCommand.hincrby("hash", "field", 3, 3600).expireOnCreate(true);
+        Assert.assertTrue(hincrby.isScript());
+        Assert.assertSame(RedisScript.HINCRBY_EXPIRE, hincrby.getScript());
+        byte[][] args = hincrby.scriptArgs();
+        Assert.assertEquals(4, args.length);
+        Assert.assertEquals("3600", SafeEncoder.encode(args[0]));
+        Assert.assertEquals("1", SafeEncoder.encode(args[1]));
+        Assert.assertEquals("field", SafeEncoder.encode(args[2]));
+        Assert.assertEquals("3", SafeEncoder.encode(args[3]));
+
+        RedisCommand<Long> sadd = RedisCommand.sadd("set", 60, "a", "b").expireOnCreate(true);
+        Assert.assertSame(RedisScript.SADD_EXPIRE, sadd.getScript());
+        Assert.assertEquals(4, sadd.scriptArgs().length);
+    }
+
+    @Test
+    public void testExpireOnCreateIgnoredWithoutScript() throws Exception {
+        Assert.assertFalse(RedisCommand.incrby("counter", 1, 3600).expireOnCreate(false).isScript());
+        // 没有过期时间时不需要脚本
+        Assert.assertFalse(RedisCommand.incrby("counter", 1, 0).expireOnCreate(true).isScript());
+        Assert.assertFalse(new RedisCommand<String>(Protocol.Command.SETEX, "key", "value", 3600).expireOnCreate(true).isScript());
+    }
+}
@@ -0,0 +1,59 @@
+package com.city.infra.redis.pipeline;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RedisFutureTest extends TestCase {
+
+    @Test
+    public void testCompleteOnce() throws Exception {
+        final AtomicInteger notified = new AtomicInteger();
+        RedisFuture<String> future = new RedisFuture<>();
+        future.addListener(new RedisFuture.Listener<String>() {
+            @Override
+            public void onComplete(RedisFuture<String> future) {
+                notified.incrementAndGet();
+            }
+        });
+        Assert.assertFalse(future.isDone());
+        Assert.assertTrue(future.complete("OK"));
+        Assert.assertFalse(future.complete("FAIL"));
+        Assert.assertFalse(future.fail(new RuntimeException()));
+        Assert.assertEquals("OK", future.get());
+        Assert.assertEquals(1, notified.get());
+
+        // 已完成时添加的监听器立即回调
+        future.addListener(new RedisFuture.Listener<String>() {
+            @Override
+            public void onComplete(RedisFuture<String> future) {
+                notified.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(2, notified.get());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        RedisFuture<Long> future = new RedisFuture<>();
+        try {
+            future.get(1, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (TimeoutException ignored) {
+        }
+        future.fail(new IllegalStateException("error"));
+        Assert.assertNull(future.getNow());
+        Assert.assertTrue(future.getError() instanceof IllegalStateException);
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
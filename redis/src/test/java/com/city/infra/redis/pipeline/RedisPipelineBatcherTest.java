@@ -0,0 +1,113 @@
+package com.city.infra.redis.pipeline;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RedisPipelineBatcherTest extends TestCase {
+
+    private static final long LONG_LINGER_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    /**
+     * 不访问 Redis 的批处理器, 记录每批的命令数, 所有命令返回 OK.
+     */
+    private static RedisPipelineBatcher newBatcher(final List<Integer> batches, int maxBatchSize, long maxBatchBytes,
+                                                   long lingerMicros, int queueSize) {
+        return new RedisPipelineBatcher(null, null, null, null, maxBatchSize, maxBatchBytes, lingerMicros, queueSize) {
+            @Override
+            List<Response<?>> executePipeline(List<RedisCommand> commands) {
+                batches.add(commands.size());
+                List<Response<?>> responses = new ArrayList<>(commands.size());
+                for (int i = 0; i < commands.size(); i++) {
+                    Response<String> response = new Response<>(BuilderFactory.STRING);
+                    response.set(SafeEncoder.encode("OK"));
+                    responses.add(response);
+                }
+                return responses;
+            }
+        };
+    }
+
+    private static RedisCommand<String> setex(String key, String value) {
+        return new RedisCommand<>(Protocol.Command.SETEX, key, value, 3600);
+    }
+
+    @Test
+    public void testFlushOnBatchSize() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        RedisPipelineBatcher batcher = newBatcher(batches, 10, Long.MAX_VALUE, LONG_LINGER_MICROS, 100);
+        List<RedisFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batcher.submit(setex("key" + i, "value")));
+        }
+        for (RedisFuture<String> future : futures) {
+            Assert.assertEquals("OK", future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(10, batches.get(0).intValue());
+        batcher.shutdown(1000);
+    }
+
+    @Test
+    public void testFlushOnBatchBytes() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        RedisPipelineBatcher batcher = newBatcher(batches, 1000, 1000, LONG_LINGER_MICROS, 100);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            value.append('v');
+        }
+        List<RedisFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(batcher.submit(setex("key" + i, value.toString())));
+        }
+        for (RedisFuture<String> future : futures) {
+            Assert.assertEquals("OK", future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(4, batches.get(0).intValue());
+        batcher.shutdown(1000);
+    }
+
+    @Test
+    public void testFlushOnLinger() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        RedisPipelineBatcher batcher = newBatcher(batches, 1000, Long.MAX_VALUE, TimeUnit.MILLISECONDS.toMicros(50), 100);
+        long start = System.nanoTime();
+        RedisFuture<String> first = batcher.submit(setex("key1", "value"));
+        RedisFuture<String> second = batcher.submit(setex("key2", "value"));
+        Assert.assertEquals("OK", first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("OK", second.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(2, batches.get(0).intValue());
+        batcher.shutdown(1000);
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        RedisPipelineBatcher batcher = newBatcher(batches, 1000, Long.MAX_VALUE, LONG_LINGER_MICROS, 2);
+        RedisFuture<String> first = batcher.submit(setex("key1", "value"));
+        RedisFuture<String> second = batcher.submit(setex("key2", "value"));
+        RedisFuture<String> rejected = batcher.submit(setex("key3", "value"));
+        Assert.assertTrue(rejected.isDone());
+        Assert.assertTrue(rejected.getError() instanceof RejectedExecutionException);
+        Assert.assertEquals(1, batcher.getRejectedCount());
+        Assert.assertEquals(2, batcher.getPendingCount());
+
+        // 关闭时执行队列中剩余的命令
+        batcher.shutdown(5000);
+        Assert.assertEquals("OK", first.getNow());
+        Assert.assertEquals("OK", second.getNow());
+        Assert.assertEquals(2, batches.get(0).intValue());
+    }
+}
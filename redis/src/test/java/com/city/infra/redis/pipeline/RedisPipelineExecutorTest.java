@@ -0,0 +1,317 @@
+package com.city.infra.redis.pipeline;
+
+import com.city.infra.redis.health.CircuitBreakerConfig;
+import com.city.infra.redis.health.CircuitState;
+import com.city.infra.redis.health.ClusterHealth;
+import com.city.infra.redis.metrics.ClusterRole;
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RedisPipelineExecutorTest extends TestCase {
+
+    private static final HostAndPort TARGET = new HostAndPort("127.0.0.1", 7000);
+
+    private final Response<?> response = new Response<>(BuilderFactory.STRING);
+
+    /**
+     * 两个节点的 Redis 集群替身, CLUSTER SLOTS 中节点 0 负责 0-8191, 节点 1 负责 8192-16383.
+     * moved 中的 key 已迁移: 节点 0 对其返回 MOVED 到节点 1, 模拟路由表还没有刷新的情况. 只实现 SETEX.
+     */
+    private static class StubCluster {
+
+        final ServerSocket[] servers = {new ServerSocket(0), new ServerSocket(0)};
+
+        final AtomicInteger[] commands = {new AtomicInteger(), new AtomicInteger()};
+
+        final Set<String> moved = new CopyOnWriteArraySet<>();
+
+        StubCluster() throws IOException {
+            for (int i = 0; i < servers.length; i++) {
+                final int index = i;
+                Thread acceptor = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        accept(index);
+                    }
+                }, "stub-redis-node-" + i);
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+        }
+
+        HostAndPort getHostAndPort(int index) {
+            return new HostAndPort("127.0.0.1", servers[index].getLocalPort());
+        }
+
+        void close() throws IOException {
+            for (ServerSocket server : servers) {
+                server.close();
+            }
+        }
+
+        private void accept(final int index) {
+            while (!servers[index].isClosed()) {
+                try {
+                    final Socket socket = servers[index].accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(index, socket);
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(int index, Socket socket) {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                List<String> command;
+                while ((command = readCommand(in)) != null) {
+                    out.write(execute(index, command).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // 客户端关闭连接
+            }
+        }
+
+        private String execute(int index, List<String> command) {
+            String name = command.get(0).toUpperCase();
+            if ("CLUSTER".equals(name) && "SLOTS".equalsIgnoreCase(command.get(1))) {
+                return "*2\r\n" + slots(0, 8191, 0) + slots(8192, 16383, 1);
+            } else if ("CLUSTER".equals(name) && "INFO".equalsIgnoreCase(command.get(1))) {
+                return bulk("cluster_state:ok\r\ncluster_current_epoch:1\r\n");
+            } else if ("SETEX".equals(name)) {
+                commands[index].incrementAndGet();
+                String key = command.get(1);
+                if (index == 0 && moved.contains(key)) {
+                    return "-MOVED " + ClusterSlot.getSlot(key) + " " + getHostAndPort(1) + "\r\n";
+                }
+                return "+OK\r\n";
+            }
+            return "-ERR unknown command '" + name + "'\r\n";
+        }
+
+        private String slots(int start, int end, int index) {
+            return "*3\r\n:" + start + "\r\n:" + end + "\r\n*2\r\n" + bulk("127.0.0.1")
+                    + ":" + servers[index].getLocalPort() + "\r\n";
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            int count = Integer.parseInt(line.substring(1));
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] data = new byte[length + 2];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+                args.add(new String(data, 0, length, StandardCharsets.UTF_8));
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    return line.substring(0, line.length() - 1);
+                }
+                line.append((char) c);
+            }
+            return null;
+        }
+
+        private static String bulk(String value) {
+            return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+        }
+    }
+
+    @Test
+    public void testMovedCommandSentToTargetNode() throws Exception {
+        StubCluster cluster = new StubCluster();
+        JedisCluster client = new JedisCluster(cluster.getHostAndPort(0));
+        JedisPoolAccessor jedisPoolAccessor = new JedisPoolAccessor(client);
+        try {
+            jedisPoolAccessor.refresh();
+            String movedKey = keyInSlots(0, 8191, "moved");
+            String stayKey = keyInSlots(0, 8191, "stay");
+            cluster.moved.add(movedKey);
+
+            RedisPipelineExecutor executor = new RedisPipelineExecutor(jedisPoolAccessor);
+            List<Response<?>> responses = executor.execute(Arrays.asList(
+                    new RedisCommand<String>(Protocol.Command.SETEX, movedKey, "value", 3600),
+                    new RedisCommand<String>(Protocol.Command.SETEX, stayKey, "value", 3600)));
+
+            Assert.assertEquals("OK", responses.get(0).get());
+            Assert.assertEquals("OK", responses.get(1).get());
+            // 路由表仍指向节点 0, 重定向的命令直接发往 MOVED 指定的节点 1, 一轮完成
+            Assert.assertEquals(1, executor.getMovedCount());
+            Assert.assertEquals(2, cluster.commands[0].get());
+            Assert.assertEquals(1, cluster.commands[1].get());
+        } finally {
+            jedisPoolAccessor.close();
+            client.close();
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testLoadAccessorInCurrentThread() throws Exception {
+        StubCluster cluster = new StubCluster();
+        JedisCluster client = new JedisCluster(cluster.getHostAndPort(0));
+        try {
+            // 临时创建的路由表在返回前已加载, 第一批命令即可按节点 pipeline 发送
+            JedisPoolAccessor jedisPoolAccessor = JedisPoolAccessor.load(client);
+            Assert.assertEquals(1, jedisPoolAccessor.getEpoch());
+            Assert.assertEquals(cluster.getHostAndPort(0).toString(), jedisPoolAccessor.getNode(0).getName());
+            Assert.assertEquals(cluster.getHostAndPort(1).toString(), jedisPoolAccessor.getNode(16383).getName());
+            Assert.assertEquals(2, jedisPoolAccessor.getMasterNodes().size());
+        } finally {
+            client.close();
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testSkipNodeWithOpenCircuit() throws Exception {
+        StubCluster cluster = new StubCluster();
+        JedisCluster client = new JedisCluster(cluster.getHostAndPort(0));
+        JedisPoolAccessor jedisPoolAccessor = new JedisPoolAccessor(client);
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumCalls(2);
+        config.setWindowSize(10);
+        config.setProbeIntervalMillis(60000);
+        ClusterHealth health = new ClusterHealth(ClusterRole.PRIMARY, jedisPoolAccessor, config, null);
+        try {
+            jedisPoolAccessor.refresh();
+            String node0 = cluster.getHostAndPort(0).toString();
+            String node1 = cluster.getHostAndPort(1).toString();
+            for (int i = 0; i < 3; i++) {
+                health.record(node1, 1000, true);
+            }
+            health.record(node0, 1000, false);
+            health.record(node0, 1000, false);
+            Assert.assertEquals(CircuitState.OPEN, health.getNodeStates().get(node0));
+            Assert.assertEquals(CircuitState.CLOSED, health.getState());
+
+            RedisCommand<String> rejected = new RedisCommand<>(Protocol.Command.SETEX, keyInSlots(0, 8191, "a"), "value", 3600);
+            RedisCommand<String> sent = new RedisCommand<>(Protocol.Command.SETEX, keyInSlots(8192, 16383, "b"), "value", 3600);
+            List<Response<?>> responses = new RedisPipelineExecutor(jedisPoolAccessor, null, null, health)
+                    .execute(Arrays.asList(rejected, sent));
+
+            // 熔断节点的命令不发送, 也不回退到普通方式执行
+            Assert.assertEquals(0, cluster.commands[0].get());
+            try {
+                RedisPipelineExecutor.getOrRetry(client, rejected, responses.get(0));
+                Assert.fail();
+            } catch (JedisDataException expected) {
+            }
+            Assert.assertEquals(0, cluster.commands[0].get());
+            Assert.assertEquals("OK", responses.get(1).get());
+            Assert.assertEquals(1, cluster.commands[1].get());
+        } finally {
+            health.close();
+            jedisPoolAccessor.close();
+            client.close();
+            cluster.close();
+        }
+    }
+
+    private static String keyInSlots(int start, int end, String base) {
+        for (int i = 0; ; i++) {
+            int slot = ClusterSlot.getSlot(base + i);
+            if (slot >= start && slot <= end) {
+                return base + i;
+            }
+        }
+    }
+
+    @Test
+    public void testRetryCommandsNotExecuted() throws Exception {
+        RedisCommand<Long> incrby = RedisCommand.incrby("counter", 1, 3600);
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(incrby, null, null));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(incrby, response, new JedisMovedDataException("MOVED", TARGET, 1)));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(incrby, response, new JedisAskDataException("ASK", TARGET, 1)));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(incrby, response,
+                new JedisDataException("TRYAGAIN Multiple keys request during rehashing of slot")));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(incrby.expireOnCreate(true), response,
+                new JedisDataException("NOSCRIPT No matching script. Please use EVAL.")));
+    }
+
+    @Test
+    public void testRetryIdempotentCommands() throws Exception {
+        JedisConnectionException timeout = new JedisConnectionException("Read timed out");
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(RedisCommand.get("key"), response, timeout));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(
+                new RedisCommand<String>(Protocol.Command.SETEX, "key", "value", 3600), response, timeout));
+        Assert.assertTrue(RedisPipelineExecutor.canRetry(
+                new RedisCommand<Long>(Protocol.Command.DEL, "key", null, 0), response, timeout));
+    }
+
+    @Test
+    public void testNoRetryNonIdempotentCommandsWithUnknownResult() throws Exception {
+        JedisConnectionException timeout = new JedisConnectionException("Read timed out");
+        Assert.assertFalse(RedisPipelineExecutor.canRetry(RedisCommand.incrby("counter", 1, 3600), response, timeout));
+        Assert.assertFalse(RedisPipelineExecutor.canRetry(RedisCommand.hincrby("hash", "field", 1, 3600), response, timeout));
+        Assert.assertFalse(RedisPipelineExecutor.canRetry(RedisCommand.sadd("set", 3600, "a"), response, timeout));
+        // 未 sync 完成的响应
+        Assert.assertFalse(RedisPipelineExecutor.canRetry(RedisCommand.incrby("counter", 1, 0), response,
+                new JedisDataException("Please close pipeline or multi block before calling this method.")));
+    }
+
+    @Test
+    public void testGetOrRetryFailsNonIdempotentCommand() throws Exception {
+        Response<Long> unknown = new Response<>(BuilderFactory.LONG);
+        try {
+            RedisPipelineExecutor.getOrRetry(null, RedisCommand.incrby("counter", 1, 3600), unknown);
+            Assert.fail();
+        } catch (JedisDataException expected) {
+            // sync 失败, 结果未知, 不重新执行
+        }
+
+        Response<Long> done = new Response<>(BuilderFactory.LONG);
+        done.set(5L);
+        Assert.assertEquals(5L, RedisPipelineExecutor.getOrRetry(null, RedisCommand.incrby("counter", 1, 3600), done));
+    }
+}
@@ -0,0 +1,85 @@
+package com.city.infra.redis.pool;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NodePoolTest extends TestCase {
+
+    private static PoolSizingConfig config() {
+        PoolSizingConfig config = new PoolSizingConfig();
+        config.setMinTotal(4);
+        config.setMaxTotal(12);
+        config.setMinIdle(2);
+        config.setStep(4);
+        config.setShrinkIntervals(3);
+        return config;
+    }
+
+    private static JedisPool pool(int port, int maxTotal) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(maxTotal);
+        return new JedisPool(poolConfig, "127.0.0.1", port, 100);
+    }
+
+    @Test
+    public void testGrowWhenExhausted() throws Exception {
+        // 只建立 TCP 连接, 不需要响应命令
+        try (ServerSocket server = new ServerSocket(0, 64, InetAddress.getByName("127.0.0.1"))) {
+            JedisPool pool = pool(server.getLocalPort(), 4);
+            NodePool nodePool = new NodePool("127.0.0.1:" + server.getLocalPort(), pool);
+            nodePool.warmUp(config());
+            Assert.assertEquals(2, nodePool.snapshot().getIdle());
+
+            List<Jedis> borrowed = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                borrowed.add(pool.getResource());
+            }
+            Assert.assertEquals(8, nodePool.adjust(config()));
+            for (int i = 0; i < 4; i++) {
+                borrowed.add(pool.getResource());
+            }
+            Assert.assertEquals(12, nodePool.adjust(config()));
+            for (int i = 0; i < 4; i++) {
+                borrowed.add(pool.getResource());
+            }
+            // 已达到上限
+            Assert.assertEquals(-1, nodePool.adjust(config()));
+            NodePool.Snapshot snapshot = nodePool.snapshot();
+            Assert.assertEquals(12, snapshot.getMaxTotal());
+            Assert.assertEquals(12, snapshot.getActive());
+            for (Jedis jedis : borrowed) {
+                jedis.close();
+            }
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testShrinkWhenIdle() throws Exception {
+        JedisPool pool = pool(1, 12);
+        NodePool nodePool = new NodePool("127.0.0.1:1", pool);
+        PoolSizingConfig config = config();
+        Assert.assertEquals(-1, nodePool.adjust(config));
+        Assert.assertEquals(-1, nodePool.adjust(config));
+        Assert.assertEquals(8, nodePool.adjust(config));
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(-1, nodePool.adjust(config));
+        }
+        Assert.assertEquals(4, nodePool.adjust(config));
+        // 不低于下限
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals(-1, nodePool.adjust(config));
+        }
+        Assert.assertEquals(4, nodePool.snapshot().getMaxTotal());
+        pool.close();
+    }
+}
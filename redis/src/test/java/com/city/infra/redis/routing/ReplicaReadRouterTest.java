@@ -0,0 +1,112 @@
+package com.city.infra.redis.routing;
+
+import com.city.infra.redis.ReadRouting;
+import com.city.infra.redis.pipeline.ClusterNode;
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ReplicaReadRouterTest extends TestCase {
+
+    private static final ClusterNode MASTER = new ClusterNode("10.0.0.1:6379", null,
+            Arrays.asList("10.0.0.2:6379", "10.0.0.3:6379"));
+
+    private static String info(String state, long offset, int lag) {
+        return "# Replication\r\nrole:master\r\nconnected_slaves:2\r\n"
+                + "slave0:ip=10.0.0.2,port=6379,state=" + state + ",offset=" + offset + ",lag=" + lag + "\r\n"
+                + "slave1:ip=10.0.0.3,port=6379,state=online,offset=1000,lag=0\r\n"
+                + "master_repl_offset:1000\r\n";
+    }
+
+    private static ReplicaReadRouter router() {
+        // 测试中不连接集群, 后台探测失败不影响结果
+        return new ReplicaReadRouter(null, new JedisPoolConfig(), 100);
+    }
+
+    @Test
+    public void testUnprobedReplicaNotUsed() throws Exception {
+        ReplicaReadRouter router = router();
+        Assert.assertNull(router.choose(MASTER, ReadRouting.PREFER_REPLICA, 0));
+        Assert.assertNull(router.choose(MASTER, ReadRouting.MASTER, 0));
+        router.close();
+    }
+
+    @Test
+    public void testPreferReplica() throws Exception {
+        ReplicaReadRouter router = router();
+        router.updateReplicas(info("online", 1000, 0), "10.0.0.1");
+        Set<String> chosen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            chosen.add(router.choose(MASTER, ReadRouting.PREFER_REPLICA, 0));
+        }
+        Assert.assertEquals(new HashSet<>(MASTER.getReplicas()), chosen);
+        router.close();
+    }
+
+    @Test
+    public void testLaggingReplicaSkipped() throws Exception {
+        ReplicaReadRouter router = router();
+        router.updateReplicas(info("online", 900, 0), "10.0.0.1");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("10.0.0.3:6379", router.choose(MASTER, ReadRouting.PREFER_REPLICA, 10));
+        }
+        // 落后 100 字节在阈值内
+        Assert.assertNotNull(router.choose(MASTER, ReadRouting.PREFER_REPLICA, 100));
+
+        router.updateReplicas(info("wait_bgsave", 1000, 0), "10.0.0.1");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("10.0.0.3:6379", router.choose(MASTER, ReadRouting.PREFER_REPLICA, 10));
+        }
+        router.updateReplicas(info("online", 1000, 5), "10.0.0.1");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("10.0.0.3:6379", router.choose(MASTER, ReadRouting.PREFER_REPLICA, 10));
+        }
+        router.close();
+    }
+
+    @Test
+    public void testErrorBackoff() throws Exception {
+        ReplicaReadRouter router = router();
+        router.updateReplicas(info("online", 1000, 0), "10.0.0.1");
+        router.record("10.0.0.2:6379", 1000, false);
+        router.record("10.0.0.3:6379", 1000, false);
+        Assert.assertNull(router.choose(MASTER, ReadRouting.PREFER_REPLICA, 0));
+        router.close();
+    }
+
+    @Test
+    public void testLowestLatency() throws Exception {
+        ReplicaReadRouter router = router();
+        router.updateReplicas(info("online", 1000, 0), "10.0.0.1");
+        router.record("10.0.0.1:6379", 100000, true);
+        router.record("10.0.0.2:6379", 300000, true);
+        router.record("10.0.0.3:6379", 50000, true);
+        int fastest = 0;
+        for (int i = 0; i < 1000; i++) {
+            if ("10.0.0.3:6379".equals(router.choose(MASTER, ReadRouting.LOWEST_LATENCY, 0))) {
+                fastest++;
+            }
+        }
+        // 少量读取随机探索其他节点
+        Assert.assertTrue(fastest > 900);
+
+        // EWMA 逐渐跟随新的延迟
+        for (int i = 0; i < 50; i++) {
+            router.record("10.0.0.3:6379", 1000000, true);
+        }
+        Assert.assertTrue(router.getLatency("10.0.0.3:6379") > 900000);
+        int master = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (router.choose(MASTER, ReadRouting.LOWEST_LATENCY, 0) == null) {
+                master++;
+            }
+        }
+        Assert.assertTrue(master > 900);
+        router.close();
+    }
+}
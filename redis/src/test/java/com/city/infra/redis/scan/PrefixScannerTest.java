@@ -0,0 +1,333 @@
+package com.city.infra.redis.scan;
+
+import com.city.infra.redis.RedisClusterFactory;
+import com.city.infra.redis.metrics.ClusterRole;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PrefixScannerTest extends TestCase {
+
+    private static final byte[] BINARY_KEY = {'t', 'm', 'p', ':', (byte) 0xFF, (byte) 0xFE, 0};
+
+    private StubNode node;
+
+    private RedisClusterFactory clusterFactory;
+
+    /**
+     * 负责全部 slot 的单节点 Redis 集群, 只实现 CLUSTER SLOTS/INFO、SCAN、EVAL (UNLINK)、DEL、DUMP 和 PTTL.
+     * key 按 ISO-8859-1 解码后保存, 可以还原出原始字节.
+     */
+    private static class StubNode implements Runnable {
+
+        final ServerSocket server;
+
+        final NavigableMap<String, Long> keys = new ConcurrentSkipListMap<>();  // key -> 剩余过期毫秒数
+
+        final AtomicInteger scans = new AtomicInteger();
+
+        final AtomicInteger unlinks = new AtomicInteger();
+
+        final AtomicInteger dels = new AtomicInteger();
+
+        volatile boolean unlinkUnsupported;
+
+        StubNode() throws IOException {
+            server = new ServerSocket(0);
+            Thread acceptor = new Thread(this, "stub-redis-node");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        HostAndPort getHostAndPort() {
+            return new HostAndPort("127.0.0.1", server.getLocalPort());
+        }
+
+        void add(byte[] key, long ttl) {
+            keys.put(new String(key, StandardCharsets.ISO_8859_1), ttl);
+        }
+
+        boolean contains(byte[] key) {
+            return keys.containsKey(new String(key, StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public void run() {
+            while (!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void close() throws IOException {
+            server.close();
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                List<String> command;
+                while ((command = readCommand(in)) != null) {
+                    out.write(execute(command).getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // 客户端关闭连接
+            }
+        }
+
+        private String execute(List<String> command) {
+            String name = command.get(0).toUpperCase();
+            if ("CLUSTER".equals(name) && "SLOTS".equalsIgnoreCase(command.get(1))) {
+                return "*1\r\n*3\r\n:0\r\n:16383\r\n*2\r\n" + bulk("127.0.0.1") + ":" + server.getLocalPort() + "\r\n";
+            } else if ("CLUSTER".equals(name) && "INFO".equalsIgnoreCase(command.get(1))) {
+                return bulk("cluster_state:ok\r\ncluster_current_epoch:1\r\n");
+            } else if ("PING".equals(name)) {
+                return "+PONG\r\n";
+            } else if ("SCAN".equals(name)) {
+                return scan(command);
+            } else if ("EVAL".equals(name)) {
+                if (unlinkUnsupported) {
+                    return "-ERR Error running script (call to f_0): @user_script:1: @user_script: 1: "
+                            + "Unknown Redis command called from Lua script\r\n";
+                }
+                unlinks.incrementAndGet();
+                return ":" + (keys.remove(command.get(3)) != null ? 1 : 0) + "\r\n";
+            } else if ("DEL".equals(name)) {
+                dels.incrementAndGet();
+                return ":" + (keys.remove(command.get(1)) != null ? 1 : 0) + "\r\n";
+            } else if ("DUMP".equals(name)) {
+                return keys.containsKey(command.get(1)) ? bulk("dump-" + command.get(1)) : "$-1\r\n";
+            } else if ("PTTL".equals(name)) {
+                Long ttl = keys.get(command.get(1));
+                return ":" + (ttl != null ? ttl : -2) + "\r\n";
+            }
+            return "-ERR unknown command '" + name + "'\r\n";
+        }
+
+        /**
+         * 游标为已检查的 key 数, 每次检查 COUNT 个 key 并返回其中前缀匹配的 key.
+         */
+        private String scan(List<String> command) {
+            scans.incrementAndGet();
+            int cursor = Integer.parseInt(command.get(1));
+            String pattern = "*";
+            int count = 10;
+            for (int i = 2; i + 1 < command.size(); i += 2) {
+                if ("MATCH".equalsIgnoreCase(command.get(i))) {
+                    pattern = command.get(i + 1);
+                } else if ("COUNT".equalsIgnoreCase(command.get(i))) {
+                    count = Integer.parseInt(command.get(i + 1));
+                }
+            }
+            String prefix = pattern.substring(0, pattern.length() - 1);
+            List<String> all = new ArrayList<>(keys.keySet());
+            int end = Math.min(all.size(), cursor + count);
+            List<String> matched = new ArrayList<>();
+            for (String key : all.subList(Math.min(cursor, end), end)) {
+                if (key.startsWith(prefix)) {
+                    matched.add(key);
+                }
+            }
+            StringBuilder reply = new StringBuilder("*2\r\n").append(bulk(end >= all.size() ? "0" : String.valueOf(end)));
+            reply.append("*").append(matched.size()).append("\r\n");
+            for (String key : matched) {
+                reply.append(bulk(key));
+            }
+            return reply.toString();
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            int count = Integer.parseInt(line.substring(1));
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] data = new byte[length + 2];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+                args.add(new String(data, 0, length, StandardCharsets.ISO_8859_1));
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    return line.substring(0, line.length() - 1);
+                }
+                line.append((char) c);
+            }
+            return null;
+        }
+
+        private static String bulk(String value) {
+            return "$" + value.length() + "\r\n" + value + "\r\n";
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        node = new StubNode();
+        clusterFactory = new RedisClusterFactory();
+        clusterFactory.setJedisClusterNodes(Collections.singleton(node.getHostAndPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clusterFactory.close();
+        node.close();
+    }
+
+    @Test
+    public void testMatchPattern() throws Exception {
+        Assert.assertEquals("user:*", PrefixScanner.matchPattern("user:"));
+        Assert.assertEquals("a\\*b\\?c\\[d\\]e\\\\*", PrefixScanner.matchPattern("a*b?c[d]e\\"));
+        Assert.assertEquals("*", PrefixScanner.matchPattern(""));
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            node.add(("tmp:" + i).getBytes(StandardCharsets.UTF_8), -1);
+            node.add(("other:" + i).getBytes(StandardCharsets.UTF_8), -1);
+        }
+        final List<String> visited = new CopyOnWriteArrayList<>();
+        PrefixScanProgress progress = clusterFactory.createPrefixScanner("tmp:", config(10, 0)).scan(new KeyVisitor() {
+            @Override
+            public void visit(ClusterRole cluster, String nodeName, List<String> keys) {
+                Assert.assertEquals(ClusterRole.PRIMARY, cluster);
+                visited.addAll(keys);
+            }
+        });
+        Assert.assertEquals(25, visited.size());
+        Assert.assertEquals(25, progress.getScannedKeys());
+        Assert.assertEquals(1, progress.getFinishedNodes());
+        Assert.assertEquals(5, node.scans.get());
+    }
+
+    @Test
+    public void testDeleteWithUnlink() throws Exception {
+        node.add("tmp:a".getBytes(StandardCharsets.UTF_8), -1);
+        node.add(BINARY_KEY, -1);
+        node.add("other:a".getBytes(StandardCharsets.UTF_8), -1);
+
+        PrefixScanProgress progress = clusterFactory.createPrefixScanner("tmp:", config(10, 0)).delete();
+        Assert.assertEquals(2, progress.getProcessedKeys());
+        Assert.assertFalse(node.contains(BINARY_KEY));
+        Assert.assertTrue(node.contains("other:a".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(2, node.unlinks.get());
+        Assert.assertEquals(0, node.dels.get());
+    }
+
+    @Test
+    public void testDeleteFallsBackToDel() throws Exception {
+        node.unlinkUnsupported = true;
+        node.add("tmp:a".getBytes(StandardCharsets.UTF_8), -1);
+        node.add(BINARY_KEY, -1);
+
+        PrefixScanProgress progress = clusterFactory.createPrefixScanner("tmp:", config(10, 0)).delete();
+        Assert.assertEquals(2, progress.getProcessedKeys());
+        Assert.assertTrue(node.keys.isEmpty());
+        Assert.assertEquals(2, node.dels.get());
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        node.add(BINARY_KEY, 60000);
+        node.add("other:a".getBytes(StandardCharsets.UTF_8), -1);
+        File file = File.createTempFile("prefix-export", ".dump");
+        try {
+            PrefixScanProgress progress = clusterFactory.createPrefixScanner("tmp:", config(10, 0)).export(file);
+            Assert.assertEquals(1, progress.getProcessedKeys());
+
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                Assert.assertEquals(0, in.readByte());
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                Assert.assertArrayEquals(BINARY_KEY, key);
+                Assert.assertEquals(60000, in.readLong());
+                byte[] dump = new byte[in.readInt()];
+                in.readFully(dump);
+                Assert.assertEquals("dump-" + new String(BINARY_KEY, StandardCharsets.ISO_8859_1),
+                        new String(dump, StandardCharsets.ISO_8859_1));
+                Assert.assertEquals(-1, in.read());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRateLimitPerScanCall() throws Exception {
+        // 没有匹配前缀的 key 时 SCAN 同样按 COUNT 限速: 5 次 SCAN 各 10 个许可, 每秒 100 个许可
+        for (int i = 0; i < 50; i++) {
+            node.add(("other:" + i).getBytes(StandardCharsets.UTF_8), -1);
+        }
+        long start = System.nanoTime();
+        PrefixScanProgress progress = clusterFactory.createPrefixScanner("tmp:", config(10, 100)).scan(new KeyVisitor() {
+            @Override
+            public void visit(ClusterRole cluster, String nodeName, List<String> keys) {
+                Assert.fail();
+            }
+        });
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assert.assertEquals(0, progress.getScannedKeys());
+        Assert.assertEquals(5, node.scans.get());
+        Assert.assertTrue("elapsed " + elapsedMillis + "ms", elapsedMillis >= 350);
+    }
+
+    private static PrefixScanConfig config(int scanCount, int keysPerSecond) {
+        PrefixScanConfig config = new PrefixScanConfig();
+        config.setScanCount(scanCount);
+        config.setKeysPerSecond(keysPerSecond);
+        return config;
+    }
+}
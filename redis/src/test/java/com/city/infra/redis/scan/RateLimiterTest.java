@@ -0,0 +1,38 @@
+package com.city.infra.redis.scan;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest extends TestCase {
+
+    @Test
+    public void testReserve() throws Exception {
+        RateLimiter limiter = new RateLimiter(1000);
+        Assert.assertEquals(0, limiter.reserve(500));
+        // 前 500 个许可需要 500ms 发放完
+        long waitNanos = limiter.reserve(1);
+        Assert.assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(400));
+        Assert.assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+        RateLimiter limiter = new RateLimiter(100);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(10);
+        }
+        // 第三次获取需等待前两次的 20 个许可, 即 200ms
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        RateLimiter limiter = new RateLimiter(0);
+        Assert.assertEquals(0, limiter.reserve(1000000));
+        Assert.assertEquals(0, limiter.reserve(1000000));
+    }
+}
@@ -0,0 +1,114 @@
+package com.city.infra.redis.scan;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScanIteratorTest extends TestCase {
+
+    /**
+     * 游标为页号, 最后一页返回游标 "0".
+     */
+    private static class PagedSource implements ScanSource<String> {
+
+        private final List<List<String>> pages;
+
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        PagedSource(List<List<String>> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public ScanResult<String> fetch(String cursor) {
+            fetches.incrementAndGet();
+            int page = Integer.parseInt(cursor);
+            String next = page + 1 < pages.size() ? String.valueOf(page + 1) : "0";
+            return new ScanResult<>(next, pages.get(page));
+        }
+    }
+
+    @Test
+    public void testIterate() throws Exception {
+        PagedSource source = new PagedSource(Arrays.asList(Arrays.asList("a", "b"), Collections.<String>emptyList(),
+                Arrays.asList("c"), Arrays.asList("d", "e")));
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            List<String> values = new ArrayList<>();
+            ScanIterator<String> iterator = new ScanIterator<>(source, executorService);
+            while (iterator.hasNext()) {
+                values.add(iterator.next());
+            }
+            Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e"), values);
+            Assert.assertEquals(4, source.fetches.get());
+            Assert.assertFalse(iterator.hasNext());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testWithoutExecutor() throws Exception {
+        PagedSource source = new PagedSource(Arrays.asList(Arrays.asList("a"), Arrays.asList("b")));
+        ScanIterator<String> iterator = new ScanIterator<>(source, null);
+        Assert.assertEquals("a", iterator.next());
+        Assert.assertEquals("b", iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        final CountDownLatch secondPage = new CountDownLatch(1);
+        ScanSource<String> source = new ScanSource<String>() {
+            @Override
+            public ScanResult<String> fetch(String cursor) {
+                if ("1".equals(cursor)) {
+                    secondPage.countDown();
+                    return new ScanResult<>("0", Arrays.asList("b"));
+                }
+                return new ScanResult<>("1", Arrays.asList("a"));
+            }
+        };
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            ScanIterator<String> iterator = new ScanIterator<>(source, executorService);
+            Assert.assertEquals("a", iterator.next());
+            // 第二页在调用方消费第一页时已经开始读取
+            Assert.assertTrue(secondPage.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals("b", iterator.next());
+            iterator.close();
+            Assert.assertFalse(iterator.hasNext());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        ScanSource<String> source = new ScanSource<String>() {
+            @Override
+            public ScanResult<String> fetch(String cursor) {
+                throw new IllegalArgumentException(cursor);
+            }
+        };
+        ScanIterator<String> iterator = new ScanIterator<>(source, null);
+        try {
+            iterator.hasNext();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("0", e.getMessage());
+        }
+        Assert.assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,88 @@
+package com.city.infra.redis.serializer;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SerializersTest extends TestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static <T> byte[] write(Serializer<T> serializer, T value) {
+        BufferOutput out = BufferOutput.local();
+        serializer.write(value, out);
+        return out.toByteArray();
+    }
+
+    private static <T> T roundTrip(Serializer<T> serializer, T value) {
+        return serializer.read(new BufferInput(write(serializer, value)));
+    }
+
+    @Test
+    public void testAsciiLong() throws Exception {
+        long[] values = {0, 1, -1, 9, 10, 123456789L, -987654321L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            byte[] bytes = write(Serializers.LONG, value);
+            Assert.assertEquals(String.valueOf(value), new String(bytes, UTF8));
+            Assert.assertEquals(value, (long) Serializers.LONG.read(new BufferInput(bytes)));
+        }
+        try {
+            Serializers.LONG.read(new BufferInput("9223372036854775808".getBytes(UTF8)));
+            Assert.fail();
+        } catch (NumberFormatException expected) {
+        }
+        try {
+            Serializers.LONG.read(new BufferInput("12a".getBytes(UTF8)));
+            Assert.fail();
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    @Test
+    public void testUtf8MatchesString() throws Exception {
+        String[] values = {"", "foo", "城市", "emoji 😀", "bad \uD800 surrogate", "é߿ࠀ￿"};
+        for (String value : values) {
+            Assert.assertArrayEquals(value.getBytes(UTF8), write(Serializers.STRING, value));
+            Assert.assertEquals(new String(value.getBytes(UTF8), UTF8), roundTrip(Serializers.STRING, value));
+        }
+    }
+
+    @Test
+    public void testCompactValues() throws Exception {
+        long[] values = {0, 1, -1, 63, -64, 64, 300, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            Assert.assertEquals(value, (long) roundTrip(Serializers.VAR_LONG, value));
+        }
+        Assert.assertEquals(1, write(Serializers.VAR_LONG, -1L).length);
+        Assert.assertEquals(Integer.MIN_VALUE, (int) roundTrip(Serializers.VAR_INT, Integer.MIN_VALUE));
+        Assert.assertEquals(3.25, roundTrip(Serializers.COMPACT_DOUBLE, 3.25), 0);
+        Assert.assertEquals(true, roundTrip(Serializers.BOOLEAN, true));
+        Assert.assertEquals(1.5, roundTrip(Serializers.DOUBLE, 1.5), 0);
+    }
+
+    @Test
+    public void testComposite() throws Exception {
+        Map<String, List<Long>> value = new LinkedHashMap<>();
+        value.put("城市", Arrays.asList(1L, -2L, 300000L));
+        value.put("", Arrays.<Long>asList());
+        Serializer<Map<String, List<Long>>> serializer =
+                Serializers.map(Serializers.COMPACT_STRING, Serializers.list(Serializers.VAR_LONG));
+        Assert.assertEquals(value, roundTrip(serializer, value));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] bytes = write(Serializers.list(Serializers.COMPACT_STRING), Arrays.asList("foo", "bar"));
+        try {
+            Serializers.list(Serializers.COMPACT_STRING).read(new BufferInput(bytes, 0, bytes.length - 1));
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}